@@ -0,0 +1,112 @@
+package src.benchmarks;
+
+import src.Record;
+import src.core.config.CacheConfigConstants;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Data directories and generated records shared by the benchmarks. Everything is derived from a fixed seed,
+ * so runs on different commits work on the same keys and values.
+ */
+final class BenchmarkData {
+
+    static final long SEED = 0x5EED_2048L;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates an empty data directory and points the storage configuration to it.
+     */
+    static Path createDataDirectory(int segmentSizeInKilobytes, String writeDurability) throws IOException {
+        final Path dataDirectory = Files.createTempDirectory("kv-benchmark-");
+        System.setProperty(CacheConfigConstants.DATA_DIRECTORY_LOCATION, dataDirectory.toString());
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, String.valueOf(segmentSizeInKilobytes));
+        System.setProperty(CacheConfigConstants.MAX_DATA_FILES_AMOUNT, String.valueOf(Integer.MAX_VALUE));
+        System.setProperty(CacheConfigConstants.WRITE_DURABILITY, writeDurability);
+        return dataDirectory;
+    }
+
+    static void deleteDataDirectory(Path dataDirectory) throws IOException {
+        if (dataDirectory == null || !Files.exists(dataDirectory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dataDirectory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    static String key(int keyNumber, int keySize) {
+        final StringBuilder key = new StringBuilder(keySize).append("key-").append(keyNumber);
+        while (key.length() < keySize) {
+            key.append('k');
+        }
+        return key.toString();
+    }
+
+    static String[] keys(int keyCount, int keySize) {
+        final String[] keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = key(i, keySize);
+        }
+        return keys;
+    }
+
+    static List<Record> records(String[] keys, ValueSizes valueSizes, SplittableRandom random) {
+        final List<Record> records = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            records.add(new Record(key, value(valueSizes.next(random), random)));
+        }
+        return records;
+    }
+
+    static byte[] value(int valueSize, SplittableRandom random) {
+        final byte[] value = new byte[valueSize];
+        for (int i = 0; i < valueSize; i++) {
+            value[i] = (byte) ('a' + random.nextInt(26));
+        }
+        return value;
+    }
+
+    /**
+     * Distribution of value sizes around a mean, given as {@code fixed:<size>} or {@code uniform:<min>-<max>}.
+     */
+    static final class ValueSizes {
+
+        private final int min;
+        private final int max;
+
+        private ValueSizes(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        static ValueSizes parse(String distribution) {
+            final String[] parts = distribution.split(":");
+            if (parts[0].equals("fixed")) {
+                final int size = Integer.parseInt(parts[1]);
+                return new ValueSizes(size, size);
+            }
+            if (parts[0].equals("uniform")) {
+                final String[] bounds = parts[1].split("-");
+                return new ValueSizes(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]));
+            }
+            throw new IllegalArgumentException("Unknown value size distribution : " + distribution);
+        }
+
+        int next(SplittableRandom random) {
+            return min == max ? min : min + random.nextInt(max - min + 1);
+        }
+    }
+}
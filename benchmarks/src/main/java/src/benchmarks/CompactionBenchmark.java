@@ -0,0 +1,106 @@
+package src.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.Record;
+import src.core.index.IndexType;
+import src.core.storage.HashIndexStorage;
+import src.core.storage.StorageMode;
+import src.files.DataFilesProcessingHelper;
+import src.files.HintFileManager;
+import src.files.IoRateLimiter;
+import src.files.SegmentCompactor;
+import src.files.exception.FileInvalidFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Merge of all sealed segments of a directory in which every key was overwritten a number of times,
+ * so {@code 1 - 1 / versionsPerKey} of the merged bytes are garbage.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompactionBenchmark {
+
+    @Param({"100000"})
+    public int keyCount;
+
+    @Param({"16"})
+    public int keySize;
+
+    @Param({"fixed:100", "uniform:16-1024"})
+    public String valueSizes;
+
+    @Param({"2", "5"})
+    public int versionsPerKey;
+
+    @Param({"4096"})
+    public int segmentSizeInKilobytes;
+
+    private Path dataDirectory;
+    private HashIndexStorage storage;
+    private HintFileManager hintFileManager;
+    private List<File> sealedSegments;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class CompactedBytes {
+        public long mergedBytes;
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        dataDirectory = BenchmarkData.createDataDirectory(segmentSizeInKilobytes, "none");
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP);
+        storage.load();
+        final String[] keys = BenchmarkData.keys(keyCount, keySize);
+        final BenchmarkData.ValueSizes valueSizeDistribution = BenchmarkData.ValueSizes.parse(valueSizes);
+        final SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        for (int version = 0; version < versionsPerKey; version++) {
+            final List<Record> records = BenchmarkData.records(keys, valueSizeDistribution, random);
+            for (int i = 0; i < records.size(); i += 1000) {
+                storage.put(records.subList(i, Math.min(i + 1000, records.size()))).join();
+            }
+        }
+        final File activeSegment = storage.getActiveSegment();
+        sealedSegments = new DataFilesProcessingHelper().listSortedDataFiles(dataDirectory.toFile()).stream()
+                .filter(segment -> !segment.getName().equals(activeSegment.getName()))
+                .collect(Collectors.toList());
+        hintFileManager = new HintFileManager();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        hintFileManager.close();
+        storage.close();
+        BenchmarkData.deleteDataDirectory(dataDirectory);
+    }
+
+    @Benchmark
+    public void compact(CompactedBytes compactedBytes) throws IOException, FileInvalidFormatException {
+        compactedBytes.mergedBytes += sealedSegments.stream().mapToLong(File::length).sum();
+        new SegmentCompactor(storage, hintFileManager, new IoRateLimiter(0)).compact(sealedSegments, key -> false);
+    }
+}
@@ -0,0 +1,98 @@
+package src.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.lsm.LsmStorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point reads of present and absent keys and range scans against the sorted tables of the lsm engine.
+ * The data is flushed before measuring, so reads go to the tables and absent keys are answered by the bloom filters.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LsmBenchmark {
+
+    @Param({"100000"})
+    public int keyCount;
+
+    @Param({"16"})
+    public int keySize;
+
+    @Param({"fixed:100", "uniform:16-1024"})
+    public String valueSizes;
+
+    @Param({"4096"})
+    public int memtableSizeInKilobytes;
+
+    @Param({"100"})
+    public int scanLength;
+
+    private Path dataDirectory;
+    private LsmStorage storage;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDirectory = BenchmarkData.createDataDirectory(65536, "none");
+        System.setProperty(CacheConfigConstants.LSM_MEMTABLE_MAX_KILOBYTES, String.valueOf(memtableSizeInKilobytes));
+        storage = new LsmStorage(dataDirectory.toFile());
+        storage.load();
+        keys = BenchmarkData.keys(keyCount, keySize);
+        final List<Record> records = BenchmarkData.records(keys, BenchmarkData.ValueSizes.parse(valueSizes), new SplittableRandom(BenchmarkData.SEED));
+        for (int i = 0; i < records.size(); i += 1000) {
+            storage.put(records.subList(i, Math.min(i + 1000, records.size()))).join();
+        }
+        storage.snapshot().join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.close();
+        BenchmarkData.deleteDataDirectory(dataDirectory);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        private final SplittableRandom random = new SplittableRandom(BenchmarkData.SEED + Thread.currentThread().getId());
+    }
+
+    @Benchmark
+    public ByteBuffer get(ThreadRandom threadRandom) throws IOException {
+        return storage.get(keys[threadRandom.random.nextInt(keyCount)]);
+    }
+
+    @Benchmark
+    public ByteBuffer getAbsent(ThreadRandom threadRandom) throws IOException {
+        return storage.get(keys[threadRandom.random.nextInt(keyCount)] + "-absent");
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, ByteBuffer>> scan(ThreadRandom threadRandom) throws IOException {
+        return storage.scan(keys[threadRandom.random.nextInt(keyCount)], "", scanLength);
+    }
+}
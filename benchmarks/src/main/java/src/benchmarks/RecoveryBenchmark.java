@@ -0,0 +1,117 @@
+package src.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.Record;
+import src.core.config.InMemoryMapPopulator;
+import src.core.index.IndexType;
+import src.core.index.RecordIndex;
+import src.core.storage.HashIndexStorage;
+import src.core.storage.StorageMode;
+import src.files.HintFileManager;
+import src.files.SegmentRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to rebuild the index from a data directory, by the size of the directory, with or without hint files
+ * and with or without a snapshot of all but the active segment.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int keyCount;
+
+    @Param({"16"})
+    public int keySize;
+
+    @Param({"fixed:100", "uniform:16-1024"})
+    public String valueSizes;
+
+    @Param({"true", "false"})
+    public boolean hintFiles;
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    @Param({"heap", "offheap"})
+    public String indexType;
+
+    @Param({"16384"})
+    public int segmentSizeInKilobytes;
+
+    private Path dataDirectory;
+    private HintFileManager hintFileManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDirectory = BenchmarkData.createDataDirectory(segmentSizeInKilobytes, "none");
+        final HashIndexStorage storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP);
+        storage.load();
+        final List<Record> records = BenchmarkData.records(
+                BenchmarkData.keys(keyCount, keySize),
+                BenchmarkData.ValueSizes.parse(valueSizes),
+                new SplittableRandom(BenchmarkData.SEED)
+        );
+        for (int i = 0; i < records.size(); i += 1000) {
+            storage.put(records.subList(i, Math.min(i + 1000, records.size()))).join();
+        }
+        if (snapshot) {
+            storage.snapshot();
+        }
+        storage.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws IOException {
+        hintFileManager = new HintFileManager();
+        if (!hintFiles) {
+            try (Stream<Path> files = Files.list(dataDirectory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (file.getFileName().toString().endsWith("." + HintFileManager.HINT_FILE_EXTENSION)) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        hintFileManager.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteDataDirectory(dataDirectory);
+    }
+
+    @Benchmark
+    public RecordIndex recover() {
+        return new InMemoryMapPopulator(hintFileManager)
+                .populateIndexWithDataFromDirectory(new SegmentRegistry(), IndexType.fromProperty(indexType).createIndex(keyCount));
+    }
+}
@@ -0,0 +1,135 @@
+package src.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+import src.core.storage.ShardedStorage;
+import src.core.storage.StorageMode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET and PUT against real segment files, from one thread and from several concurrent ones.
+ * Throughput and sampled latency percentiles are reported for every combination of the parameters.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+
+    private static final int CONCURRENT_THREADS = 8;
+    private static final int VALUE_POOL_SIZE = 1024;
+
+    @Param({"100000"})
+    public int keyCount;
+
+    @Param({"16"})
+    public int keySize;
+
+    @Param({"fixed:100", "fixed:4096", "uniform:16-1024"})
+    public String valueSizes;
+
+    @Param({"offset", "heap", "cache"})
+    public String storageMode;
+
+    @Param({"heap", "offheap"})
+    public String indexType;
+
+    @Param({"none"})
+    public String writeDurability;
+
+    @Param({"none"})
+    public String valueCompression;
+
+    @Param({"65536"})
+    public int segmentSizeInKilobytes;
+
+    @Param({"1", "4"})
+    public int shards;
+
+    private Path dataDirectory;
+    private ShardedStorage storage;
+    private String[] keys;
+    private byte[][] values;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDirectory = BenchmarkData.createDataDirectory(segmentSizeInKilobytes, writeDurability);
+        System.setProperty(CacheConfigConstants.VALUE_COMPRESSION, valueCompression);
+        storage = new ShardedStorage(StorageMode.fromProperty(storageMode), IndexType.fromProperty(indexType), dataDirectory.toFile(), shards);
+        storage.load();
+        keys = BenchmarkData.keys(keyCount, keySize);
+        final BenchmarkData.ValueSizes valueSizeDistribution = BenchmarkData.ValueSizes.parse(valueSizes);
+        final SplittableRandom random = new SplittableRandom(BenchmarkData.SEED);
+        values = new byte[VALUE_POOL_SIZE][];
+        for (int i = 0; i < VALUE_POOL_SIZE; i++) {
+            values[i] = BenchmarkData.value(valueSizeDistribution.next(random), random);
+        }
+        final List<Record> records = BenchmarkData.records(keys, valueSizeDistribution, random);
+        for (int i = 0; i < records.size(); i += 1000) {
+            storage.put(records.subList(i, Math.min(i + 1000, records.size()))).join();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.close();
+        BenchmarkData.deleteDataDirectory(dataDirectory);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadRandom {
+        private final SplittableRandom random = new SplittableRandom(BenchmarkData.SEED + Thread.currentThread().getId());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ByteBuffer get(ThreadRandom threadRandom) throws IOException {
+        return storage.get(keys[threadRandom.random.nextInt(keyCount)]);
+    }
+
+    @Benchmark
+    @Threads(CONCURRENT_THREADS)
+    public ByteBuffer getConcurrent(ThreadRandom threadRandom) throws IOException {
+        return storage.get(keys[threadRandom.random.nextInt(keyCount)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void put(ThreadRandom threadRandom) {
+        put(threadRandom.random);
+    }
+
+    @Benchmark
+    @Threads(CONCURRENT_THREADS)
+    public void putConcurrent(ThreadRandom threadRandom) {
+        put(threadRandom.random);
+    }
+
+    private void put(SplittableRandom random) {
+        final Record record = new Record(keys[random.nextInt(keyCount)], values[random.nextInt(VALUE_POOL_SIZE)]);
+        storage.put(List.of(record)).join();
+    }
+}
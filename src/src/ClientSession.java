@@ -0,0 +1,31 @@
+package src;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public class ClientSession {
+
+    private final Executor executor;
+    private final RespFrame respFrame = new RespFrame();
+    private CompletableFuture<?> lastWrite = CompletableFuture.completedFuture(null);
+
+    public ClientSession(Executor executor) {
+        this.executor = executor;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    RespFrame getRespFrame() {
+        return respFrame;
+    }
+
+    public CompletableFuture<?> getLastWrite() {
+        return lastWrite;
+    }
+
+    public void setLastWrite(CompletableFuture<?> lastWrite) {
+        this.lastWrite = lastWrite;
+    }
+}
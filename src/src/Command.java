@@ -0,0 +1,53 @@
+package src;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class Command {
+    private final CommandType type;
+    private final Protocol protocol;
+    private final List<String> keys;
+    private final List<Record> records;
+    private final int limit;
+
+    public Command(CommandType type, Protocol protocol, List<String> keys, List<Record> records) {
+        this(type, protocol, keys, records, 0);
+    }
+
+    public Command(CommandType type, Protocol protocol, List<String> keys, List<Record> records, int limit) {
+        this.type = type;
+        this.protocol = protocol;
+        this.keys = keys;
+        this.records = records;
+        this.limit = limit;
+    }
+
+    public CommandType getType() {
+        return type;
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public List<Record> getRecords() {
+        return records;
+    }
+
+    /**
+     * @return maximum number of entries a SCAN replies with
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        final List<String> commandKeys = records.isEmpty() ? keys : records.stream().map(Record::getKey).collect(Collectors.toList());
+        return type.getCommand() + " " + commandKeys;
+    }
+}
@@ -0,0 +1,154 @@
+package src;
+
+import src.core.storage.Storage;
+import src.exception.InvalidCommandException;
+import src.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class CommandProcessor {
+
+    private static final String READ_ONLY_REPLICA = "Writes are not accepted by a read-only replica";
+
+    private final InputParser inputParser = new InputParser();
+    private final Storage storage;
+
+    public CommandProcessor(Storage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Executes the next complete command of the input buffer. Writes are queued right away, so commands of
+     * a pipeline complete out of order and the caller is expected to send the replies in command order.
+     *
+     * @return future of the reply or {@code null} if the buffer holds no complete command
+     * @throws ProtocolException if the input is malformed and the connection has to be closed
+     */
+    public CompletableFuture<ByteBuffer[]> process(ByteBuffer input, ClientSession session) throws ProtocolException {
+        final Command command;
+        try {
+            command = inputParser.parse(input, session.getRespFrame());
+        } catch (InvalidCommandException e) {
+            return CompletableFuture.completedFuture(e.getProtocol().error(e.getMessage()));
+        }
+        if (command == null) {
+            return null;
+        }
+        Metrics.COMMANDS.increment();
+        switch (command.getType()) {
+            case GET:
+                return afterPrecedingWrites(command, session, () -> command.getProtocol().value(storage.get(command.getKeys().get(0))));
+            case MGET:
+                return afterPrecedingWrites(command, session, () -> {
+                    final List<ByteBuffer> values = new ArrayList<>(command.getKeys().size());
+                    for (String key : command.getKeys()) {
+                        values.add(storage.get(key));
+                    }
+                    return command.getProtocol().values(values);
+                });
+            case EXISTS:
+                return afterPrecedingWrites(command, session, () -> {
+                    long existingKeys = 0;
+                    for (String key : command.getKeys()) {
+                        if (storage.containsKey(key)) {
+                            existingKeys++;
+                        }
+                    }
+                    return command.getProtocol().integer(existingKeys);
+                });
+            case SCAN:
+                return afterPrecedingWrites(command, session, () -> command.getProtocol().entries(
+                        storage.scan(command.getKeys().get(0), command.getKeys().get(1), command.getLimit())
+                ));
+            case DEL:
+                return processDelete(command, session);
+            case STATS:
+                return CompletableFuture.completedFuture(command.getProtocol().properties(getStats()));
+            case SNAPSHOT:
+                return processSnapshot(command);
+            case PUT:
+            case MPUT:
+                return processPut(command, session);
+            default:
+                throw new IllegalStateException("Unhandled command " + command.getType());
+        }
+    }
+
+    private CompletableFuture<ByteBuffer[]> processPut(Command command, ClientSession session) {
+        if (storage.isReadOnly()) {
+            return CompletableFuture.completedFuture(command.getProtocol().error(READ_ONLY_REPLICA));
+        }
+        final List<Record> records = command.getRecords();
+        final CompletableFuture<Void> write = storage.put(records);
+        session.setLastWrite(write);
+        return write.handle((ignored, throwable) -> {
+            if (throwable != null) {
+                return toErrorResponse(command.getProtocol(), throwable);
+            }
+            return command.getProtocol().ok(records.size());
+        });
+    }
+
+    private CompletableFuture<ByteBuffer[]> processDelete(Command command, ClientSession session) {
+        if (storage.isReadOnly()) {
+            return CompletableFuture.completedFuture(command.getProtocol().error(READ_ONLY_REPLICA));
+        }
+        final CompletableFuture<Integer> write = storage.delete(command.getKeys());
+        session.setLastWrite(write);
+        return write.handle((deletedKeys, throwable) -> throwable != null
+                ? toErrorResponse(command.getProtocol(), throwable)
+                : command.getProtocol().integer(deletedKeys));
+    }
+
+    private CompletableFuture<ByteBuffer[]> processSnapshot(Command command) {
+        if (storage.isReadOnly()) {
+            return CompletableFuture.completedFuture(command.getProtocol().error(READ_ONLY_REPLICA));
+        }
+        return storage.snapshot().handle((snapshotRecords, throwable) -> throwable != null
+                ? toErrorResponse(command.getProtocol(), throwable)
+                : command.getProtocol().integer(snapshotRecords));
+    }
+
+    private Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.putAll(storage.getStats());
+        stats.putAll(Metrics.snapshot());
+        return stats;
+    }
+
+    /**
+     * Runs the read once the preceding writes of the session are applied. A read that has to wait is handed to the
+     * event loop of the session, rather than run on the writer thread that completes the writes.
+     */
+    private CompletableFuture<ByteBuffer[]> afterPrecedingWrites(Command command, ClientSession session, StorageRead read) {
+        final CompletableFuture<?> precedingWrites = session.getLastWrite();
+        if (precedingWrites.isDone()) {
+            return CompletableFuture.completedFuture(executeRead(command, read));
+        }
+        return precedingWrites.handleAsync((ignored, throwable) -> executeRead(command, read), session.getExecutor());
+    }
+
+    private ByteBuffer[] executeRead(Command command, StorageRead read) {
+        try {
+            return read.execute();
+        } catch (IOException | RuntimeException e) {
+            return toErrorResponse(command.getProtocol(), e);
+        }
+    }
+
+    private ByteBuffer[] toErrorResponse(Protocol protocol, Throwable throwable) {
+        throwable.printStackTrace();
+        return protocol.error(throwable.getMessage());
+    }
+
+    private interface StorageRead {
+        ByteBuffer[] execute() throws IOException;
+    }
+}
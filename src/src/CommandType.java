@@ -1,16 +1,54 @@
 package src;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public enum CommandType {
     GET("GET"),
-    PUT("PUT");
+    MGET("MGET"),
+    PUT("PUT"),
+    MPUT("MPUT"),
+    DEL("DEL"),
+    EXISTS("EXISTS"),
+    STATS("STATS"),
+    SNAPSHOT("SNAPSHOT"),
+    SCAN("SCAN");
 
     final String command;
+    private final byte[] commandBytes;
 
     CommandType(String command) {
         this.command = command;
+        this.commandBytes = command.getBytes(StandardCharsets.US_ASCII);
     }
 
     public String getCommand() {
         return command;
     }
+
+    /**
+     * Matches the command name case-insensitively, straight from the request bytes.
+     *
+     * @return matching command or {@code null} if there is none
+     */
+    public static CommandType fromBytes(ByteBuffer buffer, int start, int length) {
+        for (CommandType commandType : values()) {
+            if (commandType.matches(buffer, start, length)) {
+                return commandType;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(ByteBuffer buffer, int start, int length) {
+        if (length != commandBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((buffer.get(start + i) & 0xDF) != commandBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -1,27 +1,372 @@
 package src;
 
+import src.exception.InvalidCommandException;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class InputParser {
 
-    public CommandType extractCommand(String rawInput) {
-        if (rawInput.split(" ")[0].equals(CommandType.GET.getCommand())) {
-            return CommandType.GET;
+    private static final int MAX_INLINE_LENGTH = 64 * 1024 * 1024;
+    private static final int MAX_BULK_LENGTH = 512 * 1024 * 1024;
+    private static final int MAX_ARGUMENTS = 1024 * 1024;
+    private static final int MAX_HEADER_LENGTH = 32;
+    private static final long MAX_EXPIRE_SECONDS = 100L * 365 * 24 * 60 * 60;
+    private static final int MAX_SCAN_LIMIT = 100_000;
+    private static final byte[] EXPIRE_OPTION = "EX".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * @return the next command or {@code null} if the buffer holds no complete one
+     */
+    public Command parse(ByteBuffer input, RespFrame respFrame) throws InvalidCommandException, ProtocolException {
+        while (input.hasRemaining()) {
+            final int start = input.position();
+            if (respFrame.isStarted() || input.get(start) == '*') {
+                return parseResp(input, start, respFrame);
+            }
+            final int lineEnd = indexOf(input, start, input.limit(), (byte) '\n');
+            if (lineEnd < 0) {
+                if (input.remaining() > MAX_INLINE_LENGTH) {
+                    throw new ProtocolException("Inline command is too long");
+                }
+                return null;
+            }
+            input.position(lineEnd + 1);
+            final int end = lineEnd > start && input.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            final Command command = parseInline(input, start, end);
+            if (command != null) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    private Command parseInline(ByteBuffer input, int start, int end) throws InvalidCommandException {
+        final int commandStart = skipSpaces(input, start, end);
+        if (commandStart == end) {
+            return null;
+        }
+        final int commandEnd = skipNonSpaces(input, commandStart, end);
+        final CommandType commandType = getCommandType(input, commandStart, commandEnd, Protocol.INLINE);
+        final int argumentsStart = skipSpaces(input, commandEnd, end);
+        final int argumentsEnd = trimEnd(input, argumentsStart, end);
+        switch (commandType) {
+            case GET:
+                if (argumentsStart == argumentsEnd) {
+                    throw wrongNumberOfArguments(commandType, Protocol.INLINE);
+                }
+                return new Command(commandType, Protocol.INLINE, List.of(decodeString(input, argumentsStart, argumentsEnd)), List.of());
+            case PUT:
+            case MPUT:
+                return new Command(commandType, Protocol.INLINE, List.of(), parseInlineRecords(input, argumentsStart, argumentsEnd));
+            case STATS:
+            case SNAPSHOT:
+                return new Command(commandType, Protocol.INLINE, List.of(), List.of());
+            case SCAN:
+                final List<String> scanArguments = parseInlineKeys(input, argumentsStart, argumentsEnd);
+                if (scanArguments.size() != 3) {
+                    throw wrongNumberOfArguments(commandType, Protocol.INLINE);
+                }
+                return new Command(commandType, Protocol.INLINE, scanArguments.subList(0, 2), List.of(),
+                        parseScanLimit(scanArguments.get(2), Protocol.INLINE));
+            default:
+                final List<String> keys = parseInlineKeys(input, argumentsStart, argumentsEnd);
+                if (keys.isEmpty()) {
+                    throw wrongNumberOfArguments(commandType, Protocol.INLINE);
+                }
+                return new Command(commandType, Protocol.INLINE, keys, List.of());
+        }
+    }
+
+    private List<String> parseInlineKeys(ByteBuffer input, int start, int end) {
+        final List<String> keys = new ArrayList<>();
+        int keyStart = start;
+        while (keyStart < end) {
+            final int keyEnd = skipNonSpaces(input, keyStart, end);
+            keys.add(decodeString(input, keyStart, keyEnd));
+            keyStart = skipSpaces(input, keyEnd, end);
+        }
+        return keys;
+    }
+
+    private List<Record> parseInlineRecords(ByteBuffer input, int start, int end) throws InvalidCommandException {
+        final List<Record> records = new ArrayList<>();
+        int recordStart = start;
+        while (recordStart < end) {
+            int recordEnd = indexOf(input, recordStart, end, (byte) ';');
+            recordEnd = recordEnd < 0 ? end : recordEnd;
+            final int keyStart = skipSpaces(input, recordStart, recordEnd);
+            if (keyStart < recordEnd) {
+                final int separator = indexOf(input, keyStart, recordEnd, (byte) ',');
+                if (separator < 0) {
+                    throw new InvalidCommandException(Protocol.INLINE, "PUT expects key,value pairs separated by ';'");
+                }
+                int valueEnd = indexOf(input, separator + 1, recordEnd, (byte) ',');
+                valueEnd = valueEnd < 0 ? recordEnd : valueEnd;
+                final int valueStart = skipSpaces(input, separator + 1, valueEnd);
+                final Record record = new Record(
+                        decodeString(input, keyStart, trimEnd(input, keyStart, separator)),
+                        copyBytes(input, valueStart, trimEnd(input, valueStart, valueEnd))
+                );
+                if (valueEnd < recordEnd) {
+                    final int optionStart = skipSpaces(input, valueEnd + 1, recordEnd);
+                    final int optionEnd = skipNonSpaces(input, optionStart, recordEnd);
+                    if (!equalsIgnoreCase(input, optionStart, optionEnd, EXPIRE_OPTION)) {
+                        throw new InvalidCommandException(Protocol.INLINE, "PUT expects key,value or key,value,EX seconds");
+                    }
+                    final int secondsStart = skipSpaces(input, optionEnd, recordEnd);
+                    record.setExpiresAtMillis(parseExpiresAt(input, secondsStart, trimEnd(input, secondsStart, recordEnd), Protocol.INLINE));
+                }
+                records.add(record);
+            }
+            recordStart = recordEnd + 1;
+        }
+        if (records.isEmpty()) {
+            throw wrongNumberOfArguments(CommandType.PUT, Protocol.INLINE);
+        }
+        return records;
+    }
+
+    private Command parseResp(ByteBuffer input, int start, RespFrame frame) throws InvalidCommandException, ProtocolException {
+        final int limit = input.limit();
+        if (!frame.isStarted()) {
+            final int lineEnd = indexOfLineEnd(input, start + 1, limit);
+            if (lineEnd < 0) {
+                return null;
+            }
+            final long argumentCount = parseLong(input, start + 1, lineEnd);
+            if (argumentCount < 1 || argumentCount > MAX_ARGUMENTS) {
+                throw new ProtocolException("Invalid number of arguments : " + argumentCount);
+            }
+            frame.start((int) argumentCount, lineEnd + 2 - start);
+        }
+        while (!frame.isComplete()) {
+            final int position = start + frame.getNextHeader();
+            if (position >= limit) {
+                return null;
+            }
+            if (input.get(position) != '$') {
+                throw new ProtocolException("Expected '$' but got '" + (char) input.get(position) + "'");
+            }
+            final int lineEnd = indexOfLineEnd(input, position + 1, limit);
+            if (lineEnd < 0) {
+                return null;
+            }
+            final long bulkLength = parseLong(input, position + 1, lineEnd);
+            if (bulkLength < 0 || bulkLength > MAX_BULK_LENGTH) {
+                throw new ProtocolException("Invalid bulk length : " + bulkLength);
+            }
+            if (lineEnd + 2 + bulkLength + 2 > limit) {
+                return null;
+            }
+            final int argumentEnd = lineEnd + 2 + (int) bulkLength;
+            if (input.get(argumentEnd) != '\r' || input.get(argumentEnd + 1) != '\n') {
+                throw new ProtocolException("Bulk string is not terminated by CRLF");
+            }
+            frame.addArgument(lineEnd + 2 - start, argumentEnd - start);
+        }
+        input.position(start + frame.getNextHeader());
+        final int[] argumentStarts = frame.getArgumentStarts();
+        final int[] argumentEnds = frame.getArgumentEnds();
+        frame.reset();
+        for (int i = 0; i < argumentStarts.length; i++) {
+            argumentStarts[i] += start;
+            argumentEnds[i] += start;
+        }
+        final CommandType commandType = getCommandType(input, argumentStarts[0], argumentEnds[0], Protocol.RESP);
+        final int arguments = argumentStarts.length - 1;
+        switch (commandType) {
+            case GET:
+                if (arguments != 1) {
+                    throw wrongNumberOfArguments(commandType, Protocol.RESP);
+                }
+                return new Command(commandType, Protocol.RESP, List.of(decodeString(input, argumentStarts[1], argumentEnds[1])), List.of());
+            case PUT:
+                // a single pair only, several pairs go through MPUT, so "PUT k v EX n" can not be read as two pairs
+                if (arguments != 2 && arguments != 4) {
+                    throw new InvalidCommandException(Protocol.RESP, "PUT expects key value [EX seconds], use MPUT for several pairs");
+                }
+                final Record record = new Record(
+                        decodeString(input, argumentStarts[1], argumentEnds[1]),
+                        copyBytes(input, argumentStarts[2], argumentEnds[2])
+                );
+                if (arguments == 4) {
+                    if (!equalsIgnoreCase(input, argumentStarts[3], argumentEnds[3], EXPIRE_OPTION)) {
+                        throw new InvalidCommandException(Protocol.RESP, "PUT expects key value [EX seconds], use MPUT for several pairs");
+                    }
+                    record.setExpiresAtMillis(parseExpiresAt(input, argumentStarts[4], argumentEnds[4], Protocol.RESP));
+                }
+                return new Command(commandType, Protocol.RESP, Collections.emptyList(), List.of(record));
+            case MPUT:
+                if (arguments == 0 || arguments % 2 != 0) {
+                    throw wrongNumberOfArguments(commandType, Protocol.RESP);
+                }
+                final List<Record> records = new ArrayList<>(arguments / 2);
+                for (int i = 1; i < argumentStarts.length; i += 2) {
+                    records.add(new Record(
+                            decodeString(input, argumentStarts[i], argumentEnds[i]),
+                            copyBytes(input, argumentStarts[i + 1], argumentEnds[i + 1])
+                    ));
+                }
+                return new Command(commandType, Protocol.RESP, Collections.emptyList(), records);
+            case STATS:
+            case SNAPSHOT:
+                return new Command(commandType, Protocol.RESP, List.of(), List.of());
+            case SCAN:
+                if (arguments != 3) {
+                    throw wrongNumberOfArguments(commandType, Protocol.RESP);
+                }
+                return new Command(commandType, Protocol.RESP,
+                        List.of(decodeString(input, argumentStarts[1], argumentEnds[1]), decodeString(input, argumentStarts[2], argumentEnds[2])),
+                        List.of(), parseScanLimit(decodeString(input, argumentStarts[3], argumentEnds[3]), Protocol.RESP));
+            default:
+                if (arguments == 0) {
+                    throw wrongNumberOfArguments(commandType, Protocol.RESP);
+                }
+                final List<String> keys = new ArrayList<>(arguments);
+                for (int i = 1; i < argumentStarts.length; i++) {
+                    keys.add(decodeString(input, argumentStarts[i], argumentEnds[i]));
+                }
+                return new Command(commandType, Protocol.RESP, keys, List.of());
         }
-        return CommandType.PUT;
     }
 
-    public List<Record> parsePut(String dataOnlyInput) {
-        final String[] recordsAsStringArray = dataOnlyInput.split(";");
-        return Arrays.stream(recordsAsStringArray)
-                .map(s -> s.split(","))
-                .map(values -> new Record(values[0].trim(), values[1].trim()))
-                .collect(Collectors.toList());
+    private CommandType getCommandType(ByteBuffer input, int start, int end, Protocol protocol) throws InvalidCommandException {
+        final CommandType commandType = CommandType.fromBytes(input, start, end - start);
+        if (commandType == null) {
+            throw new InvalidCommandException(protocol, "Unknown command '" + decodeString(input, start, end) + "'");
+        }
+        return commandType;
     }
 
-    public String parseGet(String dataOnlyInput) {
-        return dataOnlyInput.trim();
+    private long parseExpiresAt(ByteBuffer input, int start, int end, Protocol protocol) throws InvalidCommandException {
+        long seconds = 0;
+        for (int i = start; i < end && seconds <= MAX_EXPIRE_SECONDS; i++) {
+            final byte digit = input.get(i);
+            if (digit < '0' || digit > '9') {
+                throw new InvalidCommandException(protocol, "Expire time is not an integer");
+            }
+            seconds = seconds * 10 + (digit - '0');
+        }
+        if (start == end || seconds <= 0 || seconds > MAX_EXPIRE_SECONDS) {
+            throw new InvalidCommandException(protocol, "Invalid expire time, expected 1 to " + MAX_EXPIRE_SECONDS + " seconds");
+        }
+        return System.currentTimeMillis() + seconds * 1000;
+    }
+
+    private int parseScanLimit(String limit, Protocol protocol) throws InvalidCommandException {
+        try {
+            final int scanLimit = Integer.parseInt(limit);
+            if (scanLimit > 0 && scanLimit <= MAX_SCAN_LIMIT) {
+                return scanLimit;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new InvalidCommandException(protocol, "Invalid limit, expected 1 to " + MAX_SCAN_LIMIT + " entries");
+    }
+
+    private boolean equalsIgnoreCase(ByteBuffer input, int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((input.get(start + i) & 0xDF) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private InvalidCommandException wrongNumberOfArguments(CommandType commandType, Protocol protocol) {
+        return new InvalidCommandException(protocol, "Wrong number of arguments for " + commandType.getCommand());
+    }
+
+    private long parseLong(ByteBuffer input, int start, int end) throws ProtocolException {
+        final boolean negative = end > start && input.get(start) == '-';
+        if (end == start || end - start > 18 || (negative && end - start == 1)) {
+            throw new ProtocolException("Invalid length");
+        }
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            final byte digit = input.get(i);
+            if (digit < '0' || digit > '9') {
+                throw new ProtocolException("Invalid length");
+            }
+            value = value * 10 + (digit - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private int indexOfLineEnd(ByteBuffer input, int start, int limit) throws ProtocolException {
+        final int lineFeed = indexOf(input, start, Math.min(limit, start + MAX_HEADER_LENGTH), (byte) '\n');
+        if (lineFeed < 0) {
+            if (limit - start >= MAX_HEADER_LENGTH) {
+                throw new ProtocolException("Header line is too long");
+            }
+            return -1;
+        }
+        if (lineFeed == start || input.get(lineFeed - 1) != '\r') {
+            throw new ProtocolException("Header line is not terminated by CRLF");
+        }
+        return lineFeed - 1;
+    }
+
+    private int indexOf(ByteBuffer input, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (input.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipSpaces(ByteBuffer input, int start, int end) {
+        int position = start;
+        while (position < end && isSpace(input.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private int skipNonSpaces(ByteBuffer input, int start, int end) {
+        int position = start;
+        while (position < end && !isSpace(input.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private int trimEnd(ByteBuffer input, int start, int end) {
+        int position = end;
+        while (position > start && isSpace(input.get(position - 1))) {
+            position--;
+        }
+        return position;
+    }
+
+    private boolean isSpace(byte value) {
+        return value == ' ' || value == '\t';
+    }
+
+    private String decodeString(ByteBuffer input, int start, int end) {
+        if (input.hasArray()) {
+            return new String(input.array(), input.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        }
+        return new String(copyBytes(input, start, end), StandardCharsets.UTF_8);
+    }
+
+    private byte[] copyBytes(ByteBuffer input, int start, int end) {
+        if (input.hasArray()) {
+            return Arrays.copyOfRange(input.array(), input.arrayOffset() + start, input.arrayOffset() + end);
+        }
+        final byte[] bytes = new byte[end - start];
+        input.get(start, bytes);
+        return bytes;
     }
 }
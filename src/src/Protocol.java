@@ -0,0 +1,153 @@
+package src;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reply is encoded in the protocol of its command. Values are not copied into the reply buffers.
+ */
+public enum Protocol {
+    INLINE {
+        @Override
+        public ByteBuffer[] ok(int records) {
+            return new ByteBuffer[]{ascii("OK " + records + "\n")};
+        }
+
+        @Override
+        public ByteBuffer[] value(ByteBuffer value) {
+            return value == null ? new ByteBuffer[]{NIL_LINE.duplicate()} : new ByteBuffer[]{value, NEW_LINE.duplicate()};
+        }
+
+        @Override
+        public ByteBuffer[] values(List<ByteBuffer> values) {
+            final ByteBuffer[] reply = new ByteBuffer[values.size() * 2];
+            for (int i = 0; i < values.size(); i++) {
+                final ByteBuffer value = values.get(i);
+                reply[2 * i] = value == null ? NIL_LINE.duplicate() : value;
+                reply[2 * i + 1] = value == null ? EMPTY.duplicate() : NEW_LINE.duplicate();
+            }
+            return reply;
+        }
+
+        @Override
+        public ByteBuffer[] integer(long integer) {
+            return new ByteBuffer[]{ascii(integer + "\n")};
+        }
+
+        @Override
+        public ByteBuffer[] error(String message) {
+            return new ByteBuffer[]{ByteBuffer.wrap(("ERROR " + singleLine(message) + "\n").getBytes(StandardCharsets.UTF_8))};
+        }
+
+        @Override
+        public ByteBuffer[] entries(List<Map.Entry<String, ByteBuffer>> entries) {
+            final ByteBuffer[] reply = new ByteBuffer[entries.size() * 3 + 1];
+            for (int i = 0; i < entries.size(); i++) {
+                reply[3 * i] = ByteBuffer.wrap((entries.get(i).getKey() + ",").getBytes(StandardCharsets.UTF_8));
+                reply[3 * i + 1] = entries.get(i).getValue();
+                reply[3 * i + 2] = NEW_LINE.duplicate();
+            }
+            reply[reply.length - 1] = END_LINE.duplicate();
+            return reply;
+        }
+
+        @Override
+        public ByteBuffer[] properties(Map<String, Object> properties) {
+            final StringBuilder reply = new StringBuilder();
+            properties.forEach((name, value) -> reply.append(name).append(':').append(value).append('\n'));
+            return new ByteBuffer[]{ascii(reply.append("END\n").toString())};
+        }
+    },
+    RESP {
+        @Override
+        public ByteBuffer[] ok(int records) {
+            return new ByteBuffer[]{RESP_OK.duplicate()};
+        }
+
+        @Override
+        public ByteBuffer[] value(ByteBuffer value) {
+            return value == null
+                    ? new ByteBuffer[]{RESP_NIL.duplicate()}
+                    : new ByteBuffer[]{ascii("$" + value.remaining() + "\r\n"), value, CRLF.duplicate()};
+        }
+
+        @Override
+        public ByteBuffer[] values(List<ByteBuffer> values) {
+            final ByteBuffer[] reply = new ByteBuffer[1 + values.size() * 3];
+            reply[0] = ascii("*" + values.size() + "\r\n");
+            for (int i = 0; i < values.size(); i++) {
+                final ByteBuffer value = values.get(i);
+                reply[1 + 3 * i] = value == null ? RESP_NIL.duplicate() : ascii("$" + value.remaining() + "\r\n");
+                reply[2 + 3 * i] = value == null ? EMPTY.duplicate() : value;
+                reply[3 + 3 * i] = value == null ? EMPTY.duplicate() : CRLF.duplicate();
+            }
+            return reply;
+        }
+
+        @Override
+        public ByteBuffer[] integer(long integer) {
+            return new ByteBuffer[]{ascii(":" + integer + "\r\n")};
+        }
+
+        @Override
+        public ByteBuffer[] error(String message) {
+            return new ByteBuffer[]{ByteBuffer.wrap(("-ERR " + singleLine(message) + "\r\n").getBytes(StandardCharsets.UTF_8))};
+        }
+
+        @Override
+        public ByteBuffer[] entries(List<Map.Entry<String, ByteBuffer>> entries) {
+            final ByteBuffer[] reply = new ByteBuffer[1 + entries.size() * 4];
+            reply[0] = ascii("*" + entries.size() * 2 + "\r\n");
+            for (int i = 0; i < entries.size(); i++) {
+                final byte[] key = entries.get(i).getKey().getBytes(StandardCharsets.UTF_8);
+                final ByteBuffer value = entries.get(i).getValue();
+                final ByteBuffer keyBulk = ByteBuffer.allocate(key.length + 16);
+                keyBulk.put(("$" + key.length + "\r\n").getBytes(StandardCharsets.US_ASCII)).put(key).put(CRLF.duplicate());
+                reply[1 + 4 * i] = keyBulk.flip();
+                reply[2 + 4 * i] = ascii("$" + value.remaining() + "\r\n");
+                reply[3 + 4 * i] = value;
+                reply[4 + 4 * i] = CRLF.duplicate();
+            }
+            return reply;
+        }
+
+        @Override
+        public ByteBuffer[] properties(Map<String, Object> properties) {
+            final StringBuilder text = new StringBuilder();
+            properties.forEach((name, value) -> text.append(name).append(':').append(value).append("\r\n"));
+            return value(ascii(text.toString()));
+        }
+    };
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+    private static final ByteBuffer NEW_LINE = ascii("\n").asReadOnlyBuffer();
+    private static final ByteBuffer NIL_LINE = ascii("NIL\n").asReadOnlyBuffer();
+    private static final ByteBuffer END_LINE = ascii("END\n").asReadOnlyBuffer();
+    private static final ByteBuffer CRLF = ascii("\r\n").asReadOnlyBuffer();
+    private static final ByteBuffer RESP_OK = ascii("+OK\r\n").asReadOnlyBuffer();
+    private static final ByteBuffer RESP_NIL = ascii("$-1\r\n").asReadOnlyBuffer();
+
+    public abstract ByteBuffer[] ok(int records);
+
+    public abstract ByteBuffer[] value(ByteBuffer value);
+
+    public abstract ByteBuffer[] values(List<ByteBuffer> values);
+
+    public abstract ByteBuffer[] integer(long integer);
+
+    public abstract ByteBuffer[] error(String message);
+
+    public abstract ByteBuffer[] entries(List<Map.Entry<String, ByteBuffer>> entries);
+
+    public abstract ByteBuffer[] properties(Map<String, Object> properties);
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String singleLine(String message) {
+        return String.valueOf(message).replace('\r', ' ').replace('\n', ' ');
+    }
+}
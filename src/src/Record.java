@@ -2,16 +2,26 @@ package src;
 
 public class Record {
     private String key;
-    private String value;
+    private byte[] value;
+    private boolean tombstone;
+    private long expiresAtMillis;
+    private boolean compressed;
+    private long timestampMillis;
 
     public Record() {
     }
 
-    public Record(String key, String value) {
+    public Record(String key, byte[] value) {
         this.key = key;
         this.value = value;
     }
 
+    public static Record tombstone(String key) {
+        final Record record = new Record(key, new byte[0]);
+        record.setTombstone(true);
+        return record;
+    }
+
     public String getKey() {
         return key;
     }
@@ -20,11 +30,52 @@ public class Record {
         this.key = key;
     }
 
-    public String getValue() {
+    public byte[] getValue() {
         return value;
     }
 
-    public void setValue(String value) {
+    public void setValue(byte[] value) {
         this.value = value;
     }
+
+    public boolean isTombstone() {
+        return tombstone;
+    }
+
+    public void setTombstone(boolean tombstone) {
+        this.tombstone = tombstone;
+    }
+
+    /**
+     * @return expiry time in epoch millis or {@code 0} if the record never expires
+     */
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public void setExpiresAtMillis(long expiresAtMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /**
+     * @return whether the value holds the compressed form of the value, see {@link src.files.ValueCompression}
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * @return time in epoch millis the record was written to the log, {@code 0} before it is written
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public void setTimestampMillis(long timestampMillis) {
+        this.timestampMillis = timestampMillis;
+    }
 }
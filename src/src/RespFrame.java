@@ -0,0 +1,57 @@
+package src;
+
+/**
+ * Partially received RESP command, so the next read resumes at the next argument header.
+ * Offsets are relative to the start of the command.
+ */
+class RespFrame {
+
+    private int argumentCount;
+    private int parsedArguments;
+    private int[] argumentStarts;
+    private int[] argumentEnds;
+    private int nextHeader;
+
+    boolean isStarted() {
+        return argumentCount > 0;
+    }
+
+    void start(int argumentCount, int firstHeader) {
+        this.argumentCount = argumentCount;
+        this.parsedArguments = 0;
+        this.argumentStarts = new int[argumentCount];
+        this.argumentEnds = new int[argumentCount];
+        this.nextHeader = firstHeader;
+    }
+
+    boolean isComplete() {
+        return parsedArguments == argumentCount;
+    }
+
+    int getNextHeader() {
+        return nextHeader;
+    }
+
+    void addArgument(int start, int end) {
+        argumentStarts[parsedArguments] = start;
+        argumentEnds[parsedArguments] = end;
+        parsedArguments++;
+        nextHeader = end + 2;
+    }
+
+    int[] getArgumentStarts() {
+        return argumentStarts;
+    }
+
+    int[] getArgumentEnds() {
+        return argumentEnds;
+    }
+
+    void reset() {
+        argumentCount = 0;
+        parsedArguments = 0;
+        argumentStarts = null;
+        argumentEnds = null;
+        nextHeader = 0;
+    }
+}
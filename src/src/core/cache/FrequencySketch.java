@@ -0,0 +1,97 @@
+package src.core.cache;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often keys were accessed recently. Counters are halved
+ * once the number of increments reaches ten times the table size, so old popularity fades away.
+ * Counters are updated with compare-and-set, as every reading thread increments them, and only one thread
+ * at a time halves them.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MIN_TABLE_SIZE = 64;
+    private static final int MAX_TABLE_SIZE = 1 << 22;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+    private final AtomicBoolean resetting = new AtomicBoolean();
+
+    FrequencySketch(long expectedEntries) {
+        final int tableSize = (int) Math.min(MAX_TABLE_SIZE, Math.max(MIN_TABLE_SIZE, Long.highestOneBit(Math.max(expectedEntries - 1, 1)) << 1));
+        this.table = new AtomicLongArray(tableSize);
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * tableSize;
+    }
+
+    void increment(String key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            added |= incrementAt(indexOf(hash, row), counterOf(hash, row));
+        }
+        if (added && additions.incrementAndGet() >= sampleSize && resetting.compareAndSet(false, true)) {
+            try {
+                reset();
+            } finally {
+                resetting.set(false);
+            }
+        }
+    }
+
+    /**
+     * @return estimated number of recent accesses of the key, at most 15
+     */
+    int frequency(String key) {
+        final int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < SEEDS.length; row++) {
+            final int shift = counterOf(hash, row) << 2;
+            frequency = Math.min(frequency, (int) ((table.get(indexOf(hash, row)) >>> shift) & 0xF));
+        }
+        return frequency;
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        final int shift = counter << 2;
+        final long mask = 0xFL << shift;
+        while (true) {
+            final long counters = table.get(index);
+            if ((counters & mask) == mask) {
+                return false;
+            }
+            if (table.compareAndSet(index, counters, counters + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            table.getAndUpdate(i, counters -> (counters >>> 1) & RESET_MASK);
+        }
+        additions.updateAndGet(count -> count >>> 1);
+    }
+
+    private int indexOf(int hash, int row) {
+        long index = (hash + SEEDS[row]) * SEEDS[row];
+        index += index >>> 32;
+        return (int) index & tableMask;
+    }
+
+    private int counterOf(int hash, int row) {
+        return (hash >>> (row << 3)) & 0xF;
+    }
+
+    private int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -0,0 +1,216 @@
+package src.core.cache;
+
+import src.files.RecordCodec;
+import src.metrics.Metrics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Values of hot keys, bounded by an approximate number of heap bytes. Eviction follows CLOCK: entries are kept
+ * in insertion order and an entry read since the hand last passed it gets a second chance instead of being evicted.
+ * A new key is only admitted if it was accessed more often than the entry it would evict (TinyLFU), so a scan
+ * over cold keys does not flush the hot ones. Hits take no lock, insertions and removals are serialized.
+ * <p>
+ * Cached buffers are never handed out directly: {@link #get} returns a duplicate, and a buffer passed
+ * to the cache must not be consumed by the caller afterwards.
+ */
+public class ValueCache {
+
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int ESTIMATED_ENTRY_WEIGHT = 256;
+
+    private final long maxWeight;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final FrequencySketch frequencySketch;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Entry> clock = new ArrayDeque<>();
+    private long weight;
+    private int removedEntriesInClock;
+
+    public ValueCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+        this.frequencySketch = new FrequencySketch(maxWeight / ESTIMATED_ENTRY_WEIGHT);
+    }
+
+    /**
+     * @return value of the key or {@code null} if it is not cached
+     */
+    public ByteBuffer get(String key) {
+        frequencySketch.increment(key);
+        final Entry entry = entries.get(key);
+        final ByteBuffer value = entry == null ? null : entry.value;
+        if (value == null) {
+            Metrics.CACHE_MISSES.increment();
+            return null;
+        }
+        entry.referenced = true;
+        Metrics.CACHE_HITS.increment();
+        return value.duplicate();
+    }
+
+    /**
+     * Caches the value of a key read from the log, unless the key is cached already.
+     *
+     * @return whether the value was cached
+     */
+    public boolean putIfAbsent(String key, ByteBuffer value) {
+        lock.lock();
+        try {
+            return !entries.containsKey(key) && admit(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches the new value of a written key, replacing the cached one.
+     */
+    public void put(String key, ByteBuffer value) {
+        frequencySketch.increment(key);
+        lock.lock();
+        try {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                admit(key, value);
+                return;
+            }
+            final int entryWeight = weigh(key, value);
+            if (entryWeight > maxWeight) {
+                removeEntry(entry);
+                return;
+            }
+            weight += entryWeight - entry.weight;
+            entry.weight = entryWeight;
+            entry.value = value;
+            entry.referenced = true;
+            evictWhileOverweight();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(String key) {
+        lock.lock();
+        try {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                removeEntry(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the key only if it is still cached with the given buffer, i.e. it was not written since.
+     */
+    public void remove(String key, ByteBuffer expectedValue) {
+        lock.lock();
+        try {
+            final Entry entry = entries.get(key);
+            if (entry != null && entry.value == expectedValue) {
+                removeEntry(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getWeight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean admit(String key, ByteBuffer value) {
+        final int entryWeight = weigh(key, value);
+        if (entryWeight > maxWeight) {
+            return false;
+        }
+        if (weight + entryWeight > maxWeight) {
+            final Entry victim = nextVictim();
+            if (victim != null && frequencySketch.frequency(key) <= frequencySketch.frequency(victim.key)) {
+                return false;
+            }
+        }
+        final Entry entry = new Entry(key, value, entryWeight);
+        entries.put(key, entry);
+        clock.addLast(entry);
+        weight += entryWeight;
+        evictWhileOverweight();
+        return true;
+    }
+
+    private void evictWhileOverweight() {
+        while (weight > maxWeight) {
+            final Entry victim = nextVictim();
+            if (victim == null) {
+                return;
+            }
+            clock.pollFirst();
+            entries.remove(victim.key, victim);
+            weight -= victim.weight;
+            victim.value = null;
+            Metrics.CACHE_EVICTIONS.increment();
+        }
+    }
+
+    /**
+     * Moves the hand past removed entries and entries read since the last pass, clearing their reference bit.
+     *
+     * @return entry under the hand or {@code null} if the cache is empty
+     */
+    private Entry nextVictim() {
+        Entry entry;
+        while ((entry = clock.peekFirst()) != null) {
+            if (entry.value == null) {
+                clock.pollFirst();
+                removedEntriesInClock--;
+            } else if (entry.referenced) {
+                entry.referenced = false;
+                clock.addLast(clock.pollFirst());
+            } else {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void removeEntry(Entry entry) {
+        entries.remove(entry.key, entry);
+        weight -= entry.weight;
+        entry.value = null;
+        if (++removedEntriesInClock > entries.size()) {
+            clock.removeIf(clockEntry -> clockEntry.value == null);
+            removedEntriesInClock = 0;
+        }
+    }
+
+    /**
+     * A value read from the log keeps the whole record alive, so the record header is counted as well.
+     */
+    private int weigh(String key, ByteBuffer value) {
+        return ENTRY_OVERHEAD + RecordCodec.RECORD_HEADER_SIZE + 2 * key.length() + value.remaining();
+    }
+
+    private static class Entry {
+
+        private final String key;
+        private volatile ByteBuffer value;
+        private volatile boolean referenced;
+        private int weight;
+
+        Entry(String key, ByteBuffer value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
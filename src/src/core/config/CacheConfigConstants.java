@@ -3,10 +3,32 @@ package src.core.config;
 public class CacheConfigConstants {
 
     public static final String DATA_FILE_NAME_PREFIX = "cache-data";
-    public static final String CURRENT_LOG_FILE_NAME = "currentLogFile";
 
     public static final String DATA_DIRECTORY_LOCATION = "data.directory.location";
     public static final String DATA_FILES_EXTENSION = "data.files.extension";
     public static final String MAX_DATA_FILES_AMOUNT = "data.files.max.amount";
     public static final String DATA_FILES_MAX_SIZE_IN_KILOBYTES = "data.files.max.kilobytes.size";
+    public static final String STORAGE_MODE = "storage.mode";
+    public static final String STORAGE_SHARDS = "storage.shards";
+    public static final String STORAGE_ENGINE = "storage.engine";
+    public static final String LSM_MEMTABLE_MAX_KILOBYTES = "lsm.memtable.max.kilobytes";
+    public static final String LSM_COMPACTION_TABLES = "lsm.compaction.tables";
+    public static final String VALUE_CACHE_MAX_MEGABYTES = "value.cache.max.megabytes";
+    public static final String VALUE_COMPRESSION = "value.compression";
+    public static final String VALUE_COMPRESSION_MIN_BYTES = "value.compression.min.bytes";
+    public static final String SERVER_PORT = "server.port";
+    public static final String SERVER_IO_THREADS = "server.io.threads";
+    public static final String WRITE_DURABILITY = "write.durability";
+    public static final String WRITE_FSYNC_INTERVAL_MILLIS = "write.fsync.interval.millis";
+    public static final String RECOVERY_THREADS = "recovery.threads";
+    public static final String INDEX_TYPE = "index.type";
+    public static final String INDEX_INITIAL_CAPACITY = "index.initial.capacity";
+    public static final String METRICS_JMX_ENABLED = "metrics.jmx.enabled";
+    public static final String EXPIRY_SWEEP_INTERVAL_MILLIS = "expiry.sweep.interval.millis";
+    public static final String COMPACTION_CHECK_INTERVAL_MILLIS = "compaction.check.interval.millis";
+    public static final String COMPACTION_GARBAGE_RATIO = "compaction.garbage.ratio";
+    public static final String COMPACTION_MAX_BYTES_PER_SECOND = "compaction.max.bytes.per.second";
+    public static final String REPLICATION_ROLE = "replication.role";
+    public static final String REPLICATION_PORT = "replication.port";
+    public static final String REPLICATION_LEADER_HOST = "replication.leader.host";
 }
\ No newline at end of file
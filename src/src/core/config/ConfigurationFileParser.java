@@ -11,11 +11,15 @@ public class ConfigurationFileParser {
     private final String CONFIGURATION_FILE_PATH = "/home/misha/designing_data_instensive_applications/3/" + CONFIG_FILE_NAME;
 
     public void parseConfiguration() throws IOException {
-        try (final InputStreamReader reader = new InputStreamReader(new FileInputStream(CONFIGURATION_FILE_PATH))) {
+        parseConfiguration(CONFIGURATION_FILE_PATH);
+    }
+
+    public void parseConfiguration(String configurationFilePath) throws IOException {
+        try (final InputStreamReader reader = new InputStreamReader(new FileInputStream(configurationFilePath))) {
             final Properties properties = new Properties();
             properties.load(reader);
             logReadProperties(properties);
-            System.setProperties(properties);
+            System.getProperties().putAll(properties);
         }
     }
 
@@ -25,6 +29,29 @@ public class ConfigurationFileParser {
         System.out.println(CacheConfigConstants.DATA_DIRECTORY_LOCATION + " : " + properties.getProperty(CacheConfigConstants.DATA_DIRECTORY_LOCATION));
         System.out.println(CacheConfigConstants.MAX_DATA_FILES_AMOUNT + " : " + properties.getProperty(CacheConfigConstants.MAX_DATA_FILES_AMOUNT));
         System.out.println(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES + " : " + properties.getProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES));
+        System.out.println(CacheConfigConstants.STORAGE_MODE + " : " + properties.getProperty(CacheConfigConstants.STORAGE_MODE));
+        System.out.println(CacheConfigConstants.STORAGE_SHARDS + " : " + properties.getProperty(CacheConfigConstants.STORAGE_SHARDS));
+        System.out.println(CacheConfigConstants.STORAGE_ENGINE + " : " + properties.getProperty(CacheConfigConstants.STORAGE_ENGINE));
+        System.out.println(CacheConfigConstants.LSM_MEMTABLE_MAX_KILOBYTES + " : " + properties.getProperty(CacheConfigConstants.LSM_MEMTABLE_MAX_KILOBYTES));
+        System.out.println(CacheConfigConstants.LSM_COMPACTION_TABLES + " : " + properties.getProperty(CacheConfigConstants.LSM_COMPACTION_TABLES));
+        System.out.println(CacheConfigConstants.VALUE_CACHE_MAX_MEGABYTES + " : " + properties.getProperty(CacheConfigConstants.VALUE_CACHE_MAX_MEGABYTES));
+        System.out.println(CacheConfigConstants.VALUE_COMPRESSION + " : " + properties.getProperty(CacheConfigConstants.VALUE_COMPRESSION));
+        System.out.println(CacheConfigConstants.VALUE_COMPRESSION_MIN_BYTES + " : " + properties.getProperty(CacheConfigConstants.VALUE_COMPRESSION_MIN_BYTES));
+        System.out.println(CacheConfigConstants.SERVER_PORT + " : " + properties.getProperty(CacheConfigConstants.SERVER_PORT));
+        System.out.println(CacheConfigConstants.SERVER_IO_THREADS + " : " + properties.getProperty(CacheConfigConstants.SERVER_IO_THREADS));
+        System.out.println(CacheConfigConstants.WRITE_DURABILITY + " : " + properties.getProperty(CacheConfigConstants.WRITE_DURABILITY));
+        System.out.println(CacheConfigConstants.WRITE_FSYNC_INTERVAL_MILLIS + " : " + properties.getProperty(CacheConfigConstants.WRITE_FSYNC_INTERVAL_MILLIS));
+        System.out.println(CacheConfigConstants.RECOVERY_THREADS + " : " + properties.getProperty(CacheConfigConstants.RECOVERY_THREADS));
+        System.out.println(CacheConfigConstants.INDEX_TYPE + " : " + properties.getProperty(CacheConfigConstants.INDEX_TYPE));
+        System.out.println(CacheConfigConstants.INDEX_INITIAL_CAPACITY + " : " + properties.getProperty(CacheConfigConstants.INDEX_INITIAL_CAPACITY));
+        System.out.println(CacheConfigConstants.METRICS_JMX_ENABLED + " : " + properties.getProperty(CacheConfigConstants.METRICS_JMX_ENABLED));
+        System.out.println(CacheConfigConstants.EXPIRY_SWEEP_INTERVAL_MILLIS + " : " + properties.getProperty(CacheConfigConstants.EXPIRY_SWEEP_INTERVAL_MILLIS));
+        System.out.println(CacheConfigConstants.COMPACTION_CHECK_INTERVAL_MILLIS + " : " + properties.getProperty(CacheConfigConstants.COMPACTION_CHECK_INTERVAL_MILLIS));
+        System.out.println(CacheConfigConstants.COMPACTION_GARBAGE_RATIO + " : " + properties.getProperty(CacheConfigConstants.COMPACTION_GARBAGE_RATIO));
+        System.out.println(CacheConfigConstants.COMPACTION_MAX_BYTES_PER_SECOND + " : " + properties.getProperty(CacheConfigConstants.COMPACTION_MAX_BYTES_PER_SECOND));
+        System.out.println(CacheConfigConstants.REPLICATION_ROLE + " : " + properties.getProperty(CacheConfigConstants.REPLICATION_ROLE));
+        System.out.println(CacheConfigConstants.REPLICATION_PORT + " : " + properties.getProperty(CacheConfigConstants.REPLICATION_PORT));
+        System.out.println(CacheConfigConstants.REPLICATION_LEADER_HOST + " : " + properties.getProperty(CacheConfigConstants.REPLICATION_LEADER_HOST));
         System.out.println("----------------------------------------End----------------------------------------");
     }
 }
\ No newline at end of file
@@ -1,65 +1,245 @@
 package src.core.config;
 
-import src.Record;
+import src.core.index.Expiration;
+import src.core.index.RecordIndex;
+import src.core.index.RecordLocation;
 import src.files.DataFilesProcessingHelper;
 import src.files.FileProcessingHelper;
+import src.files.HintFileManager;
+import src.files.RecordCodec;
+import src.files.SegmentRegistry;
+import src.files.SegmentScanner;
+import src.files.exception.FileInvalidFormatException;
+import src.metrics.Metrics;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class InMemoryMapPopulator {
 
     private final FileProcessingHelper fileProcessingHelper;
     private final DataFilesProcessingHelper dataFilesProcessingHelper;
+    private final SegmentScanner segmentScanner;
+    private final HintFileManager hintFileManager;
 
-    public InMemoryMapPopulator() {
+    public InMemoryMapPopulator(HintFileManager hintFileManager) {
         this.fileProcessingHelper = new FileProcessingHelper();
         this.dataFilesProcessingHelper = new DataFilesProcessingHelper();
+        this.segmentScanner = new SegmentScanner();
+        this.hintFileManager = hintFileManager;
     }
 
-    public ConcurrentMap<String, String> populateLocalCacheWithDataFromDirectory() {
-        final String dataDirectoryAbsolutePath = System.getProperty(CacheConfigConstants.DATA_DIRECTORY_LOCATION);
-        final File dataDirectory = new File(dataDirectoryAbsolutePath);
+    public RecordIndex populateIndexWithDataFromDirectory(SegmentRegistry segmentRegistry, RecordIndex index) {
+        return populateIndexWithDataFromDirectory(new File(System.getProperty(CacheConfigConstants.DATA_DIRECTORY_LOCATION)),
+                segmentRegistry, index, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param expirations filled with the expiry of every recovered key having one, keys already expired are left out of the index
+     */
+    public RecordIndex populateIndexWithDataFromDirectory(File dataDirectory, SegmentRegistry segmentRegistry, RecordIndex index,
+                                                          ConcurrentMap<String, Expiration> expirations) {
+        final String dataDirectoryAbsolutePath = dataDirectory.getAbsolutePath();
         if (dataDirectory.isDirectory()) {
             if (dataDirectory.listFiles() == null) {
                 System.out.printf("Found 0 data files in directory %s\n", dataDirectoryAbsolutePath);
-                return new ConcurrentHashMap<>();
+                return index;
             } else {
-                return createInMemoryMapFromFilesInDirectory(dataDirectory);
+                return createIndexFromFilesInDirectory(dataDirectory, segmentRegistry, index, expirations);
             }
         } else {
             throw new RuntimeException(dataDirectoryAbsolutePath + " must point to a directory");
         }
     }
 
-    public ConcurrentMap<String ,String> createInMemoryMapFromFilesInDirectory(File dataDirectory) {
-        ConcurrentMap<String, String> completeLocalCacheMap = new ConcurrentHashMap<>();
-        Arrays.stream(dataDirectory.listFiles())
+    /**
+     * Scans all segments in parallel and merges their records straight into the index. Segments are registered
+     * in sequence order first, so a higher segment id (or a higher offset within one segment) means a newer record.
+     * Sealed segments having a hint file are recovered from it without touching their values.
+     * <p>
+     * A snapshot is registered before all segments and bulk loaded first, only the segments from its cutoff on are replayed.
+     */
+    public RecordIndex createIndexFromFilesInDirectory(File dataDirectory, SegmentRegistry segmentRegistry, RecordIndex index,
+                                                       ConcurrentMap<String, Expiration> expirations) {
+        final long startNanos = System.nanoTime();
+        final File snapshotFile = dataFilesProcessingHelper.findSnapshotFile(dataDirectory);
+        if (snapshotFile != null) {
+            deleteFilesFoldedIntoSnapshot(dataDirectory, snapshotFile);
+        }
+        final List<File> dataFiles = Arrays.stream(dataDirectory.listFiles())
                 .filter(file -> fileProcessingHelper.getFileExtension(file).equals(System.getProperty(CacheConfigConstants.DATA_FILES_EXTENSION)))
                 .sorted(dataFilesProcessingHelper.getDataFilesComparator())
-                .map(this::readValuesMapFromFile)
-                .forEach(completeLocalCacheMap::putAll);
-        System.out.printf("Found %s records in log file\n", completeLocalCacheMap.size());
-        return completeLocalCacheMap;
+                .collect(Collectors.toList());
+        final int snapshotSegmentId = snapshotFile == null ? 0 : segmentRegistry.register(snapshotFile);
+        final int[] segmentIds = dataFiles.stream().mapToInt(segmentRegistry::register).toArray();
+        final ConcurrentMap<String, RecordLocation> tombstones = new ConcurrentHashMap<>();
+        final LongAdder recoveredRecords = new LongAdder();
+        if (snapshotFile != null) {
+            loadSnapshot(snapshotFile, snapshotSegmentId, index, expirations, recoveredRecords);
+        }
+        final LongAdder recoveredBytes = new LongAdder();
+        final LongAdder hintedSegments = new LongAdder();
+        final ForkJoinPool recoveryPool = new ForkJoinPool(getRecoveryThreads());
+        try {
+            recoveryPool.submit(() -> IntStream.range(0, dataFiles.size()).parallel().forEach(i -> {
+                final File dataFile = dataFiles.get(i);
+                final boolean sealed = i < dataFiles.size() - 1;
+                final HintFileManager.HintVisitor hintVisitor = (key, location, timestamp, tombstone, expiresAt) -> {
+                    mergeRecoveredLocation(key, location, tombstone, expiresAt, index, tombstones, expirations);
+                    recoveredRecords.increment();
+                };
+                if (sealed && hintFileManager.readHintFile(dataFile, segmentIds[i], hintVisitor)) {
+                    hintedSegments.increment();
+                } else {
+                    recoveredBytes.add(recoverRecordLocations(dataFile, segmentIds[i], !sealed, index, tombstones, expirations, recoveredRecords));
+                    if (sealed) {
+                        hintFileManager.writeHintFileAsync(dataFile);
+                    }
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Recovery of " + dataDirectory + " was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Recovery of " + dataDirectory + " failed", e.getCause());
+        } finally {
+            recoveryPool.shutdown();
+        }
+        tombstones.forEach((key, tombstone) -> {
+            final RecordLocation location = index.get(key);
+            if (location != null && isNewer(tombstone, location)) {
+                index.remove(key, location);
+            }
+        });
+        removeExpiredRecords(index, expirations);
+        final long elapsedMillis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+        System.out.printf("Recovered %s records from %s segments (%s from hint files, %s bytes scanned) in %s ms, %s records/sec\n",
+                recoveredRecords.sum(), dataFiles.size(), hintedSegments.sum(), recoveredBytes.sum(), elapsedMillis, recoveredRecords.sum() * 1000 / elapsedMillis);
+        System.out.printf("Found %s records in log file\n", index.size());
+        Metrics.recordRecovery(elapsedMillis, recoveredRecords.sum());
+        return index;
     }
 
-    public ConcurrentMap<String, String> readValuesMapFromFile(File dataFile) {
-        ConcurrentMap<String, String> concurrentMap = new ConcurrentHashMap<>();
-        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(dataFile))) {
-            String recordAsString;
-            while ((recordAsString = bufferedReader.readLine()) != null) {
-                final String[] keyValueArray = recordAsString.split(":");
-                final Record record = new Record(keyValueArray[0], keyValueArray[1]);
-                concurrentMap.put(record.getKey(), record.getValue());
+    /**
+     * Snapshot keys are unique and no segment is loaded yet, so records are put into the index without any merging.
+     */
+    private void loadSnapshot(File snapshotFile, int segmentId, RecordIndex index, ConcurrentMap<String, Expiration> expirations,
+                              LongAdder recoveredRecords) {
+        final long startNanos = System.nanoTime();
+        final long validLength;
+        try {
+            validLength = segmentScanner.scan(snapshotFile, segmentId, (buffer, recordPosition, location) -> {
+                final String key = RecordCodec.decodeKey(buffer, recordPosition);
+                index.put(key, location);
+                final long expiresAt = RecordCodec.getExpiresAt(buffer, recordPosition);
+                if (expiresAt != 0) {
+                    expirations.put(key, new Expiration(location, expiresAt));
+                }
+                recoveredRecords.increment();
+            });
+        } catch (IOException | FileInvalidFormatException e) {
+            throw new RuntimeException(snapshotFile.getName() + " could not be loaded", e);
+        }
+        if (validLength != snapshotFile.length()) {
+            throw new RuntimeException(snapshotFile.getName() + " is corrupted after " + validLength + " bytes");
+        }
+        System.out.printf("Loaded snapshot '%s' of %s records in %s ms\n", snapshotFile.getName(), index.size(), (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    /**
+     * Removes older snapshots and segments older than the snapshot cutoff, left behind if the server stopped
+     * right after the snapshot was written.
+     */
+    private void deleteFilesFoldedIntoSnapshot(File dataDirectory, File snapshotFile) {
+        final List<File> foldedFiles = dataFilesProcessingHelper.listSortedDataFiles(dataDirectory).stream()
+                .filter(dataFile -> dataFilesProcessingHelper.getDataFilesComparator().compare(dataFile, snapshotFile) < 0)
+                .collect(Collectors.toList());
+        dataFilesProcessingHelper.listSortedSnapshotFiles(dataDirectory).stream()
+                .filter(olderSnapshot -> !olderSnapshot.equals(snapshotFile))
+                .forEach(foldedFiles::add);
+        for (File foldedFile : foldedFiles) {
+            System.out.printf("Deleting '%s' included in snapshot '%s'\n", foldedFile.getName(), snapshotFile.getName());
+            hintFileManager.deleteHintFile(foldedFile);
+            try {
+                Files.deleteIfExists(foldedFile.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }
+    }
+
+    private long recoverRecordLocations(File dataFile, int segmentId, boolean activeSegment, RecordIndex index,
+                                        ConcurrentMap<String, RecordLocation> tombstones, ConcurrentMap<String, Expiration> expirations,
+                                        LongAdder recoveredRecords) {
+        try {
+            return segmentScanner.recover(dataFile, segmentId, activeSegment, (buffer, recordPosition, location) -> {
+                final String key = RecordCodec.decodeKey(buffer, recordPosition);
+                mergeRecoveredLocation(key, location, RecordCodec.isTombstone(buffer, recordPosition),
+                        RecordCodec.getExpiresAt(buffer, recordPosition), index, tombstones, expirations);
+                recoveredRecords.increment();
+            });
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(dataFile.getName() + " could not be recovered", e);
+        } catch (FileInvalidFormatException e) {
+            throw new RuntimeException(dataFile.getName() + " is not a valid data segment", e);
         }
-        return concurrentMap;
+    }
+
+    private void mergeRecoveredLocation(String key, RecordLocation location, boolean tombstone, long expiresAt, RecordIndex index,
+                                        ConcurrentMap<String, RecordLocation> tombstones, ConcurrentMap<String, Expiration> expirations) {
+        if (tombstone) {
+            tombstones.merge(key, location, this::newerLocation);
+        } else {
+            index.merge(key, location, this::newerLocation);
+            if (expiresAt != 0) {
+                expirations.merge(key, new Expiration(location, expiresAt),
+                        (current, recovered) -> isNewer(recovered.getLocation(), current.getLocation()) ? recovered : current);
+            }
+        }
+    }
+
+    /**
+     * Keeps the expiry of keys whose latest record has one and drops the keys that expired while the server was down.
+     */
+    private void removeExpiredRecords(RecordIndex index, ConcurrentMap<String, Expiration> expirations) {
+        final long nowMillis = System.currentTimeMillis();
+        expirations.entrySet().removeIf(entry -> {
+            final Expiration expiration = entry.getValue();
+            if (!expiration.getLocation().equals(index.get(entry.getKey()))) {
+                return true;
+            }
+            if (expiration.isExpired(nowMillis)) {
+                index.remove(entry.getKey(), expiration.getLocation());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private RecordLocation newerLocation(RecordLocation current, RecordLocation recovered) {
+        return isNewer(recovered, current) ? recovered : current;
+    }
+
+    private boolean isNewer(RecordLocation location, RecordLocation other) {
+        if (location.getSegmentId() != other.getSegmentId()) {
+            return location.getSegmentId() > other.getSegmentId();
+        }
+        return location.getOffset() > other.getOffset();
+    }
+
+    private int getRecoveryThreads() {
+        final String recoveryThreads = System.getProperty(CacheConfigConstants.RECOVERY_THREADS);
+        return recoveryThreads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(recoveryThreads.trim());
     }
 }
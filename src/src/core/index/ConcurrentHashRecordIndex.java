@@ -0,0 +1,60 @@
+package src.core.index;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+
+public class ConcurrentHashRecordIndex implements RecordIndex {
+
+    private final ConcurrentMap<String, RecordLocation> locations;
+
+    public ConcurrentHashRecordIndex(int initialCapacity) {
+        this.locations = new ConcurrentHashMap<>(initialCapacity);
+    }
+
+    @Override
+    public RecordLocation get(String key) {
+        return locations.get(key);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return locations.containsKey(key);
+    }
+
+    @Override
+    public RecordLocation put(String key, RecordLocation location) {
+        return locations.put(key, location);
+    }
+
+    @Override
+    public RecordLocation remove(String key) {
+        return locations.remove(key);
+    }
+
+    @Override
+    public boolean remove(String key, RecordLocation expectedLocation) {
+        return locations.remove(key, expectedLocation);
+    }
+
+    @Override
+    public boolean replace(String key, RecordLocation expectedLocation, RecordLocation location) {
+        return locations.replace(key, expectedLocation, location);
+    }
+
+    @Override
+    public void merge(String key, RecordLocation location, BinaryOperator<RecordLocation> remappingFunction) {
+        locations.merge(key, location, remappingFunction);
+    }
+
+    @Override
+    public int size() {
+        return locations.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, RecordLocation> action) {
+        locations.forEach(action);
+    }
+}
@@ -0,0 +1,31 @@
+package src.core.index;
+
+/**
+ * Expiry time of the record at a location. Tied to the location, so it no longer applies once the key is rewritten.
+ */
+public final class Expiration {
+
+    private final RecordLocation location;
+    private final long expiresAtMillis;
+
+    public Expiration(RecordLocation location, long expiresAtMillis) {
+        this.location = location;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public RecordLocation getLocation() {
+        return location;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return expiresAtMillis <= nowMillis;
+    }
+
+    public Expiration relocate(RecordLocation location) {
+        return new Expiration(location, expiresAtMillis);
+    }
+}
@@ -0,0 +1,32 @@
+package src.core.index;
+
+public enum IndexType {
+    HEAP("heap"),
+    OFF_HEAP("offheap");
+
+    final String type;
+
+    IndexType(String type) {
+        this.type = type;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public RecordIndex createIndex(int initialCapacity) {
+        return this == OFF_HEAP ? new OffHeapRecordIndex(initialCapacity) : new ConcurrentHashRecordIndex(initialCapacity);
+    }
+
+    public static IndexType fromProperty(String property) {
+        if (property == null) {
+            return HEAP;
+        }
+        for (IndexType indexType : values()) {
+            if (indexType.type.equalsIgnoreCase(property.trim())) {
+                return indexType;
+            }
+        }
+        throw new IllegalArgumentException("Unknown index type : " + property);
+    }
+}
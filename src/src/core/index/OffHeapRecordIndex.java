@@ -0,0 +1,405 @@
+package src.core.index;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+
+/**
+ * Open-addressing hash index keeping keys and locations in direct memory, so the GC sees a few hundred buffers
+ * instead of a String, a node and a location per key. The table is split into stripes, each guarded by its own
+ * lock: writers lock their stripe, readers run lock-free on an optimistic stamp and only take the read lock
+ * if a writer got in between.
+ * <pre>
+ * slot        : | key reference (8) | segment id (24 bits) and offset (40 bits) (8) | record length (4) | key hash (4) |
+ * key storage : | key length (4) | key |
+ * </pre>
+ * Removed keys leave a deleted slot and dead key bytes behind, both are reclaimed when the stripe is rehashed.
+ */
+public class OffHeapRecordIndex implements RecordIndex {
+
+    private static final int STRIPES = 64;
+    private static final int STRIPE_SHIFT = 58;
+    private static final int SLOT_SIZE = 24;
+    private static final int LOCATION_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 16;
+    private static final int HASH_OFFSET = 20;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+    private static final int OFFSET_BITS = 40;
+    private static final long MAX_OFFSET = (1L << OFFSET_BITS) - 1;
+    private static final int MAX_SEGMENT_ID = (1 << (Long.SIZE - OFFSET_BITS)) - 1;
+    private static final double LOAD_FACTOR = 0.75;
+    private static final int MIN_STRIPE_CAPACITY = 16;
+    private static final int MAX_STRIPE_CAPACITY = 1 << 26;
+    private static final int MIN_KEY_STORAGE_SIZE = 4096;
+    private static final int MAX_KEY_STORAGE_SIZE = Integer.MAX_VALUE - 8;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public OffHeapRecordIndex(int initialCapacity) {
+        final long slotsPerStripe = (long) (Math.max(initialCapacity, 1) / LOAD_FACTOR) / STRIPES + 1;
+        int stripeCapacity = MIN_STRIPE_CAPACITY;
+        while (stripeCapacity < slotsPerStripe && stripeCapacity < MAX_STRIPE_CAPACITY) {
+            stripeCapacity <<= 1;
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    @Override
+    public RecordLocation get(String key) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(keyBytes);
+        return stripeOf(hash).get(keyBytes, (int) hash);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public RecordLocation put(String key, RecordLocation location) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(keyBytes);
+        return stripeOf(hash).update(keyBytes, (int) hash, location, null, (current, ignored) -> location);
+    }
+
+    @Override
+    public RecordLocation remove(String key) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(keyBytes);
+        return stripeOf(hash).remove(keyBytes, (int) hash, null);
+    }
+
+    @Override
+    public boolean remove(String key, RecordLocation expectedLocation) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(keyBytes);
+        return stripeOf(hash).remove(keyBytes, (int) hash, expectedLocation) != null;
+    }
+
+    @Override
+    public boolean replace(String key, RecordLocation expectedLocation, RecordLocation location) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(keyBytes);
+        final boolean[] replaced = new boolean[1];
+        stripeOf(hash).update(keyBytes, (int) hash, null, expectedLocation, (current, ignored) -> {
+            replaced[0] = true;
+            return location;
+        });
+        return replaced[0];
+    }
+
+    @Override
+    public void merge(String key, RecordLocation location, BinaryOperator<RecordLocation> remappingFunction) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(keyBytes);
+        stripeOf(hash).update(keyBytes, (int) hash, location, null, (current, ignored) -> remappingFunction.apply(current, location));
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    /**
+     * The action must not modify the index, the stripe it is called for is read-locked meanwhile.
+     */
+    @Override
+    public void forEach(BiConsumer<String, RecordLocation> action) {
+        for (Stripe stripe : stripes) {
+            stripe.forEach(action);
+        }
+    }
+
+    private Stripe stripeOf(long hash) {
+        return stripes[(int) (hash >>> STRIPE_SHIFT)];
+    }
+
+    /**
+     * 64-bit FNV-1a finished with the MurmurHash3 mixer, whose high bits pick the stripe and low bits the slot.
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte keyByte : key) {
+            hash ^= keyByte;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long pack(RecordLocation location) {
+        if (location.getSegmentId() < 0 || location.getSegmentId() > MAX_SEGMENT_ID || location.getOffset() < 0 || location.getOffset() > MAX_OFFSET) {
+            throw new IllegalArgumentException("Location does not fit into the off-heap index : segment "
+                    + location.getSegmentId() + ", offset " + location.getOffset());
+        }
+        return ((long) location.getSegmentId() << OFFSET_BITS) | location.getOffset();
+    }
+
+    private static final class Stripe {
+
+        private final StampedLock lock = new StampedLock();
+        private ByteBuffer slots;
+        private int capacity;
+        private ByteBuffer keys;
+        private int keysPosition;
+        private long liveKeyBytes;
+        private volatile int size;
+        private int deleted;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+            this.keys = ByteBuffer.allocateDirect(MIN_KEY_STORAGE_SIZE);
+        }
+
+        RecordLocation get(byte[] key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    final RecordLocation location = read(key, hash);
+                    if (lock.validate(stamp)) {
+                        return location;
+                    }
+                } catch (RuntimeException e) {
+                    // the stripe changed under the optimistic read, it is repeated under the read lock
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return read(key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Sets the location computed by the update function from the current one. An absent key gets
+         * {@code absentLocation} unless it is {@code null}, a present one is only updated if its location
+         * equals {@code expectedLocation} unless that is {@code null}.
+         *
+         * @return previous location of the key
+         */
+        RecordLocation update(byte[] key, int hash, RecordLocation absentLocation, RecordLocation expectedLocation,
+                              BinaryOperator<RecordLocation> updateFunction) {
+            final long stamp = lock.writeLock();
+            try {
+                final int slot = findSlot(slots, capacity, keys, key, hash);
+                if (slot < 0) {
+                    if (absentLocation != null) {
+                        insert(key, hash, absentLocation);
+                    }
+                    return null;
+                }
+                final RecordLocation currentLocation = locationAt(slots, slot);
+                if (expectedLocation == null || expectedLocation.equals(currentLocation)) {
+                    writeLocation(slot, updateFunction.apply(currentLocation, expectedLocation));
+                }
+                return currentLocation;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @return removed location or {@code null} if the key is absent or not at the expected location
+         */
+        RecordLocation remove(byte[] key, int hash, RecordLocation expectedLocation) {
+            final long stamp = lock.writeLock();
+            try {
+                final int slot = findSlot(slots, capacity, keys, key, hash);
+                if (slot < 0) {
+                    return null;
+                }
+                final RecordLocation currentLocation = locationAt(slots, slot);
+                if (expectedLocation != null && !expectedLocation.equals(currentLocation)) {
+                    return null;
+                }
+                slots.putLong(slot * SLOT_SIZE, DELETED);
+                liveKeyBytes -= Integer.BYTES + key.length;
+                size--;
+                deleted++;
+                return currentLocation;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void forEach(BiConsumer<String, RecordLocation> action) {
+            final long stamp = lock.readLock();
+            try {
+                for (int slot = 0; slot < capacity; slot++) {
+                    final long keyReference = slots.getLong(slot * SLOT_SIZE);
+                    if (keyReference != EMPTY && keyReference != DELETED) {
+                        action.accept(keyAt(keys, (int) (keyReference - 1)), locationAt(slots, slot));
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private RecordLocation read(byte[] key, int hash) {
+            final ByteBuffer currentSlots = slots;
+            final int slot = findSlot(currentSlots, capacity, keys, key, hash);
+            return slot < 0 ? null : locationAt(currentSlots, slot);
+        }
+
+        private void insert(byte[] key, int hash, RecordLocation location) {
+            final long packedLocation = pack(location);
+            if (size + deleted + 1 > capacity * LOAD_FACTOR) {
+                rehash(size + 1 > capacity * LOAD_FACTOR / 2 ? capacity * 2 : capacity, 0);
+            }
+            final int keyReference = appendKey(key);
+            final int mask = capacity - 1;
+            int slot = hash & mask;
+            while (true) {
+                final long currentReference = slots.getLong(slot * SLOT_SIZE);
+                if (currentReference == EMPTY || currentReference == DELETED) {
+                    if (currentReference == DELETED) {
+                        deleted--;
+                    }
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            final int base = slot * SLOT_SIZE;
+            slots.putLong(base + LOCATION_OFFSET, packedLocation);
+            slots.putInt(base + LENGTH_OFFSET, location.getLength());
+            slots.putInt(base + HASH_OFFSET, hash);
+            slots.putLong(base, keyReference + 1L);
+            liveKeyBytes += Integer.BYTES + key.length;
+            size++;
+        }
+
+        private void writeLocation(int slot, RecordLocation location) {
+            final int base = slot * SLOT_SIZE;
+            slots.putLong(base + LOCATION_OFFSET, pack(location));
+            slots.putInt(base + LENGTH_OFFSET, location.getLength());
+        }
+
+        private int appendKey(byte[] key) {
+            final int required = Integer.BYTES + key.length;
+            if (keys.capacity() - keysPosition < required) {
+                growKeyStorage(required);
+            }
+            final int keyReference = keysPosition;
+            keys.putInt(keyReference, key.length);
+            keys.put(keyReference + Integer.BYTES, key);
+            keysPosition += required;
+            return keyReference;
+        }
+
+        /**
+         * Dead key bytes are dropped by rehashing if they make up most of the key storage, otherwise it is doubled.
+         */
+        private void growKeyStorage(int required) {
+            final long usedKeyBytes = keysPosition;
+            if (usedKeyBytes - liveKeyBytes >= liveKeyBytes) {
+                rehash(capacity, required);
+                if (keys.capacity() - keysPosition >= required) {
+                    return;
+                }
+            }
+            final long grownSize = Math.min(Math.max((long) keys.capacity() * 2, (long) keysPosition + required), MAX_KEY_STORAGE_SIZE);
+            if (grownSize - keysPosition < required) {
+                throw new IllegalStateException("Key storage of the off-heap index stripe is full");
+            }
+            final ByteBuffer grownKeys = ByteBuffer.allocateDirect((int) grownSize);
+            grownKeys.put(0, keys, 0, keysPosition);
+            keys = grownKeys;
+        }
+
+        /**
+         * Rebuilds the stripe with the given capacity, dropping deleted slots and dead key bytes.
+         */
+        private void rehash(int newCapacity, int requiredKeyBytes) {
+            if (newCapacity > MAX_STRIPE_CAPACITY) {
+                throw new IllegalStateException("Off-heap index stripe can not hold more than " + (long) (MAX_STRIPE_CAPACITY * LOAD_FACTOR) + " keys");
+            }
+            final long keyStorageSize = Math.min(Math.max(MIN_KEY_STORAGE_SIZE, liveKeyBytes * 2 + requiredKeyBytes), MAX_KEY_STORAGE_SIZE);
+            final ByteBuffer newSlots = ByteBuffer.allocateDirect(newCapacity * SLOT_SIZE);
+            final ByteBuffer newKeys = ByteBuffer.allocateDirect((int) keyStorageSize);
+            final int mask = newCapacity - 1;
+            int newKeysPosition = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                final int base = slot * SLOT_SIZE;
+                final long keyReference = slots.getLong(base);
+                if (keyReference == EMPTY || keyReference == DELETED) {
+                    continue;
+                }
+                final int keyPosition = (int) (keyReference - 1);
+                final int keySize = Integer.BYTES + keys.getInt(keyPosition);
+                newKeys.put(newKeysPosition, keys, keyPosition, keySize);
+                final int hash = slots.getInt(base + HASH_OFFSET);
+                int newSlot = hash & mask;
+                while (newSlots.getLong(newSlot * SLOT_SIZE) != EMPTY) {
+                    newSlot = (newSlot + 1) & mask;
+                }
+                newSlots.put(newSlot * SLOT_SIZE, slots, base, SLOT_SIZE);
+                newSlots.putLong(newSlot * SLOT_SIZE, newKeysPosition + 1L);
+                newKeysPosition += keySize;
+            }
+            slots = newSlots;
+            keys = newKeys;
+            capacity = newCapacity;
+            keysPosition = newKeysPosition;
+            deleted = 0;
+        }
+
+        private static int findSlot(ByteBuffer slots, int capacity, ByteBuffer keys, byte[] key, int hash) {
+            final int mask = capacity - 1;
+            int slot = hash & mask;
+            for (int probe = 0; probe < capacity; probe++) {
+                final int base = slot * SLOT_SIZE;
+                final long keyReference = slots.getLong(base);
+                if (keyReference == EMPTY) {
+                    return -1;
+                }
+                if (keyReference != DELETED && slots.getInt(base + HASH_OFFSET) == hash && keyEquals(keys, (int) (keyReference - 1), key)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static boolean keyEquals(ByteBuffer keys, int keyPosition, byte[] key) {
+            if (keys.getInt(keyPosition) != key.length) {
+                return false;
+            }
+            final int keyStart = keyPosition + Integer.BYTES;
+            for (int i = 0; i < key.length; i++) {
+                if (keys.get(keyStart + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String keyAt(ByteBuffer keys, int keyPosition) {
+            final byte[] key = new byte[keys.getInt(keyPosition)];
+            keys.get(keyPosition + Integer.BYTES, key);
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        private static RecordLocation locationAt(ByteBuffer slots, int slot) {
+            final int base = slot * SLOT_SIZE;
+            final long packedLocation = slots.getLong(base + LOCATION_OFFSET);
+            return new RecordLocation((int) (packedLocation >>> OFFSET_BITS), packedLocation & MAX_OFFSET, slots.getInt(base + LENGTH_OFFSET));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package src.core.index;
+
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+
+/**
+ * Maps every key to the location of its latest record. Implementations are safe for concurrent use.
+ */
+public interface RecordIndex {
+
+    RecordLocation get(String key);
+
+    boolean containsKey(String key);
+
+    /**
+     * @return previous location of the key or {@code null} if it was absent
+     */
+    RecordLocation put(String key, RecordLocation location);
+
+    /**
+     * @return removed location of the key or {@code null} if it was absent
+     */
+    RecordLocation remove(String key);
+
+    boolean remove(String key, RecordLocation expectedLocation);
+
+    boolean replace(String key, RecordLocation expectedLocation, RecordLocation location);
+
+    /**
+     * Puts the location if the key is absent, otherwise replaces the current location with the result of the function.
+     */
+    void merge(String key, RecordLocation location, BinaryOperator<RecordLocation> remappingFunction);
+
+    int size();
+
+    void forEach(BiConsumer<String, RecordLocation> action);
+}
@@ -0,0 +1,41 @@
+package src.core.index;
+
+import java.util.Objects;
+
+public final class RecordLocation {
+
+    private final int segmentId;
+    private final long offset;
+    private final int length;
+
+    public RecordLocation(int segmentId, long offset, int length) {
+        this.segmentId = segmentId;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int getSegmentId() {
+        return segmentId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RecordLocation)) return false;
+        final RecordLocation that = (RecordLocation) o;
+        return segmentId == that.segmentId && offset == that.offset && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(segmentId, offset, length);
+    }
+}
@@ -0,0 +1,89 @@
+package src.core.lsm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over the keys of a sorted table, so a point read skips the tables that can not hold the key
+ * without reading any of their blocks. Compaction uses one over the keys of a snapshot as well. With {@link #BITS_PER_KEY} bits per key and {@link #HASH_FUNCTIONS}
+ * hash functions about 1% of the lookups of absent keys still read a block.
+ * <p>
+ * The hash functions are derived from one 64-bit hash by double hashing (Kirsch-Mitzenmacher).
+ */
+public class BloomFilter {
+
+    static final int BITS_PER_KEY = 10;
+    static final int HASH_FUNCTIONS = 7;
+
+    private final long[] words;
+    private final long bitCount;
+    private final int hashFunctions;
+
+    public BloomFilter(int expectedKeys) {
+        this(new long[(int) ((Math.max(64L, (long) expectedKeys * BITS_PER_KEY) + 63) / 64)], HASH_FUNCTIONS);
+    }
+
+    private BloomFilter(long[] words, int hashFunctions) {
+        this.words = words;
+        this.bitCount = (long) words.length * 64;
+        this.hashFunctions = hashFunctions;
+    }
+
+    public void add(byte[] key) {
+        final long hash = hash(key);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            final long bit = Math.floorMod(hash1 + (long) i * hash2, bitCount);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(byte[] key) {
+        final long hash = hash(key);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            final long bit = Math.floorMod(hash1 + (long) i * hash2, bitCount);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int serializedSize() {
+        return 8 + words.length * 8;
+    }
+
+    void writeTo(ByteBuffer target) {
+        target.putInt(hashFunctions).putInt(words.length);
+        for (long word : words) {
+            target.putLong(word);
+        }
+    }
+
+    static BloomFilter readFrom(ByteBuffer source) {
+        final int hashFunctions = source.getInt();
+        final long[] words = new long[source.getInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = source.getLong();
+        }
+        return new BloomFilter(words, hashFunctions);
+    }
+
+    /**
+     * FNV-1a followed by the MurmurHash3 finalizer, which spreads the bits of short keys over both halves.
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte value : key) {
+            hash ^= value & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,555 @@
+package src.core.lsm;
+
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.RecordLocation;
+import src.core.storage.Storage;
+import src.files.DataFilesProcessingHelper;
+import src.files.RecordCodec;
+import src.files.SegmentRegistry;
+import src.files.SegmentScanner;
+import src.files.SegmentWriter;
+import src.files.ValueCompression;
+import src.files.WriteDurability;
+import src.files.exception.FileInvalidFormatException;
+import src.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Log-structured merge storage: keys are kept sorted, so next to point reads it serves range scans.
+ * <p>
+ * Writes are appended by a {@link SegmentWriter} to a write-ahead log of ordinary segments and then put into the
+ * {@link Memtable}. A memtable that reaches {@link CacheConfigConstants#LSM_MEMTABLE_MAX_KILOBYTES} is frozen and
+ * flushed into an {@link SSTable} by a background thread, after which the log segments it covered are deleted.
+ * Compaction is size tiered : once {@link CacheConfigConstants#LSM_COMPACTION_TABLES} adjacent tables of similar size
+ * have piled up they are merged into one, dropping overwritten values, and tombstones and expired records too if the
+ * oldest table is part of the merge.
+ * <p>
+ * Reads look at the memtable, the frozen memtables and the tables from newest to oldest and stop at the first record
+ * of the key. All of them are replaced at once as an {@link LsmState}, so a read always sees a consistent set;
+ * a read that races with a compaction deleting its tables is retried on the new set.
+ */
+public class LsmStorage implements Storage {
+
+    private static final int MAX_READ_ATTEMPTS = 3;
+    private static final int TIER_SIZE_RATIO = 2;
+    private static final String TABLE_FILE_NAME_PREFIX = "sstable";
+    private static final String TABLE_FILE_EXTENSION = "sst";
+
+    private final File dataDirectory;
+    private final long memtableMaxBytes;
+    private final int compactionTables;
+    private final SegmentRegistry segmentRegistry = new SegmentRegistry();
+    private final SegmentWriter segmentWriter;
+    private final DataFilesProcessingHelper dataFilesProcessingHelper = new DataFilesProcessingHelper();
+    private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "lsm-background");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile LsmState state = new LsmState(new Memtable(), List.of(), List.of());
+    private long tableSequence;
+
+    public LsmStorage(File dataDirectory) {
+        this.dataDirectory = dataDirectory;
+        this.memtableMaxBytes = Long.parseLong(System.getProperty(CacheConfigConstants.LSM_MEMTABLE_MAX_KILOBYTES, "4096").trim()) * 1024;
+        this.compactionTables = Integer.parseInt(System.getProperty(CacheConfigConstants.LSM_COMPACTION_TABLES, "4").trim());
+        if (compactionTables < 2) {
+            throw new IllegalArgumentException("Number of tables to compact must be at least 2 : " + compactionTables);
+        }
+        this.segmentWriter = new SegmentWriter(
+                dataDirectory,
+                segmentRegistry,
+                WriteDurability.fromProperty(System.getProperty(CacheConfigConstants.WRITE_DURABILITY)),
+                Long.parseLong(System.getProperty(CacheConfigConstants.WRITE_FSYNC_INTERVAL_MILLIS, "1000").trim()),
+                new SegmentWriter.AppendListener() {
+                    @Override
+                    public boolean onAppended(Record record, RecordLocation location) {
+                        LsmStorage.this.onAppended(record);
+                        return false;
+                    }
+
+                    @Override
+                    public void onSegmentSealed(File segmentFile) {
+                    }
+                }
+        );
+    }
+
+    /**
+     * Opens the tables and replays the log segments that were not flushed yet into the memtable.
+     */
+    @Override
+    public void load() throws IOException {
+        final long startNanos = System.nanoTime();
+        if (!dataDirectory.isDirectory() && !dataDirectory.mkdirs()) {
+            throw new IOException("Could not create data directory " + dataDirectory);
+        }
+        final List<SSTable> tables = openTables();
+        final Memtable memtable = new Memtable();
+        final long[] replayedRecords = new long[1];
+        final SegmentScanner segmentScanner = new SegmentScanner();
+        final List<File> segments = dataFilesProcessingHelper.listSortedDataFiles(dataDirectory);
+        for (int i = 0; i < segments.size(); i++) {
+            final File segment = segments.get(i);
+            try {
+                segmentScanner.recover(segment, segmentRegistry.register(segment), i == segments.size() - 1, (buffer, position, location) -> {
+                    memtable.put(RecordCodec.decodeRecord(buffer, position));
+                    replayedRecords[0]++;
+                });
+            } catch (FileInvalidFormatException e) {
+                throw new IOException(segment.getName() + " is not a log segment", e);
+            }
+        }
+        state = new LsmState(memtable, List.of(), tables);
+        segmentWriter.start();
+        if (memtable.getSizeInBytes() >= memtableMaxBytes) {
+            freeze();
+        }
+        final long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        Metrics.recordRecovery(elapsedMillis, replayedRecords[0]);
+        System.out.printf("Loaded %s tables of %s records and replayed %s log records from '%s' in %s ms\n", tables.size(),
+                getTableRecords(tables), replayedRecords[0], dataDirectory, elapsedMillis);
+    }
+
+    @Override
+    public void close() {
+        segmentWriter.stop();
+        background.shutdown();
+        try {
+            background.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        state.tables.forEach(SSTable::close);
+        segmentRegistry.close();
+    }
+
+    @Override
+    public ByteBuffer get(String key) throws IOException {
+        final long startNanos = System.nanoTime();
+        final Record record = find(key);
+        final ByteBuffer value = isLive(record, System.currentTimeMillis()) ? getValue(record) : null;
+        Metrics.GET_LATENCY.recordNanos(System.nanoTime() - startNanos);
+        (value == null ? Metrics.GET_MISSES : Metrics.GET_HITS).increment();
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(String key) throws IOException {
+        return isLive(find(key), System.currentTimeMillis());
+    }
+
+    @Override
+    public CompletableFuture<Void> put(List<Record> records) {
+        final long startNanos = System.nanoTime();
+        Metrics.PUT_RECORDS.add(records.size());
+        return segmentWriter.append(records).thenApply(replacedRecords -> {
+            Metrics.PUT_LATENCY.recordNanos(System.nanoTime() - startNanos);
+            return null;
+        });
+    }
+
+    /**
+     * The keys are looked up here, on the calling thread, so the writer thread never reads tables. The count is
+     * approximate : a write racing with the delete may change whether a key still existed when its tombstone was written.
+     */
+    @Override
+    public CompletableFuture<Integer> delete(List<String> keys) {
+        int liveKeys = 0;
+        try {
+            for (String key : keys) {
+                if (containsKey(key)) {
+                    liveKeys++;
+                }
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final int removedKeys = liveKeys;
+        return segmentWriter.append(keys.stream().map(Record::tombstone).collect(Collectors.toList())).thenApply(ignored -> {
+            Metrics.DELETED_RECORDS.add(removedKeys);
+            return removedKeys;
+        });
+    }
+
+    /**
+     * Flushes the memtable, so the next start loads the tables instead of replaying the log.
+     *
+     * @return future of the number of records in the tables, overwritten ones included until they are compacted away
+     */
+    @Override
+    public CompletableFuture<Integer> snapshot() {
+        freeze();
+        return CompletableFuture.supplyAsync(() -> {
+            final LsmState current = state;
+            if (!current.frozenMemtables.isEmpty()) {
+                throw new UncheckedIOException(new IOException("Memtable could not be flushed"));
+            }
+            return (int) Math.min(Integer.MAX_VALUE, getTableRecords(current.tables));
+        }, background);
+    }
+
+    /**
+     * @param endKey end of the range, exclusive, an empty key scans to the end of the keyspace
+     */
+    @Override
+    public List<Map.Entry<String, ByteBuffer>> scan(String startKey, String endKey, int limit) throws IOException {
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            try {
+                return scan(state, startKey, endKey, limit);
+            } catch (UncheckedIOException e) {
+                if (!(e.getCause() instanceof ClosedChannelException)) {
+                    throw e.getCause();
+                }
+            }
+        }
+        throw new IOException("Tables of range '" + startKey + "' - '" + endKey + "' are no longer available");
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        final LsmState current = state;
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("memtable_records", current.memtable.size() + current.frozenMemtables.stream().mapToInt(Memtable::size).sum());
+        stats.put("frozen_memtables", current.frozenMemtables.size());
+        stats.put("sstables", current.tables.size());
+        stats.put("sstable_records", getTableRecords(current.tables));
+        return stats;
+    }
+
+    /**
+     * Runs on the writer thread, which is the only one putting into the memtable.
+     */
+    private synchronized void onAppended(Record record) {
+        state.memtable.put(record);
+        if (state.memtable.getSizeInBytes() >= memtableMaxBytes) {
+            freeze();
+        }
+    }
+
+    /**
+     * Swaps in an empty memtable and has the full one flushed in the background.
+     */
+    private synchronized void freeze() {
+        final LsmState current = state;
+        if (current.memtable.isEmpty()) {
+            return;
+        }
+        current.memtable.freeze(segmentWriter.getActiveSegment());
+        state = current.withFrozenMemtable(new Memtable());
+        background.execute(this::flushFrozenMemtables);
+    }
+
+    /**
+     * Flushes the frozen memtables oldest first. A memtable that fails to flush stays in memory and is retried
+     * by the next flush, the ones frozen after it wait for it, so the tables stay in the order of the writes.
+     */
+    private void flushFrozenMemtables() {
+        while (true) {
+            final List<Memtable> frozenMemtables = state.frozenMemtables;
+            if (frozenMemtables.isEmpty()) {
+                break;
+            }
+            final Memtable memtable = frozenMemtables.get(frozenMemtables.size() - 1);
+            final long sequenceNumber = ++tableSequence;
+            final SSTable table;
+            try {
+                table = SSTableWriter.write(getTableFile(sequenceNumber), sequenceNumber, memtable.iterator(null), memtable.size(),
+                        sequenceNumber, sequenceNumber, false);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            synchronized (this) {
+                state = state.withFlushedMemtable(memtable, table);
+            }
+            Metrics.MEMTABLE_FLUSHES.increment();
+            System.out.printf("Flushed memtable of %s records into '%s'\n", table.getRecordCount(), table.getFile().getName());
+            deleteLogSegmentsBefore(memtable.getWalCutoff());
+        }
+        compactIfNecessary();
+    }
+
+    private void deleteLogSegmentsBefore(File walCutoff) {
+        final Comparator<File> dataFilesComparator = dataFilesProcessingHelper.getDataFilesComparator();
+        for (File segment : dataFilesProcessingHelper.listSortedDataFiles(dataDirectory)) {
+            if (dataFilesComparator.compare(segment, walCutoff) >= 0) {
+                break;
+            }
+            final Integer segmentId = segmentRegistry.findSegmentId(segment);
+            if (segmentId != null) {
+                segmentRegistry.retire(segmentId);
+            }
+            try {
+                Files.deleteIfExists(segment.toPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Merges tiers of similar sized tables until none is left. Merging adjacent tables only keeps the tables
+     * ordered by age, which reads rely on.
+     */
+    private void compactIfNecessary() {
+        while (true) {
+            final List<SSTable> tier = findCompactionTier(state.tables);
+            if (tier == null || !compact(tier)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param tables newest first
+     * @return newest run of at least {@link #compactionTables} adjacent tables whose sizes are within a factor of
+     * {@value #TIER_SIZE_RATIO} of each other, or {@code null} if there is none
+     */
+    private List<SSTable> findCompactionTier(List<SSTable> tables) {
+        for (int start = 0; start + compactionTables <= tables.size(); start++) {
+            long minBytes = Long.MAX_VALUE;
+            long maxBytes = 0;
+            int end = start;
+            while (end < tables.size()) {
+                final long tableBytes = Math.max(1, tables.get(end).getFile().length());
+                if (Math.max(maxBytes, tableBytes) > TIER_SIZE_RATIO * Math.min(minBytes, tableBytes)) {
+                    break;
+                }
+                minBytes = Math.min(minBytes, tableBytes);
+                maxBytes = Math.max(maxBytes, tableBytes);
+                end++;
+            }
+            if (end - start >= compactionTables) {
+                return tables.subList(start, end);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Merges the tier into one table taking its place. Tombstones and expired records are only dropped if the
+     * tier includes the oldest table, otherwise they still have to hide older values of their keys.
+     *
+     * @param tier adjacent tables, newest first
+     * @return whether the tables were merged
+     */
+    private boolean compact(List<SSTable> tier) {
+        final long startNanos = System.nanoTime();
+        final List<SSTable> tables = state.tables;
+        final boolean includesOldestTable = tier.get(tier.size() - 1) == tables.get(tables.size() - 1);
+        final long sequenceNumber = ++tableSequence;
+        final List<Iterator<Record>> sources = new ArrayList<>(tier.size());
+        long sourceBytes = 0;
+        for (SSTable table : tier) {
+            sources.add(table.iterator(null));
+            sourceBytes += table.getFile().length();
+        }
+        final SSTable mergedTable;
+        try {
+            mergedTable = SSTableWriter.write(getTableFile(sequenceNumber), sequenceNumber, new MergingIterator(sources),
+                    (int) Math.min(Integer.MAX_VALUE, getTableRecords(tier)), tier.get(tier.size() - 1).getFirstSequenceNumber(),
+                    tier.get(0).getLastSequenceNumber(), includesOldestTable);
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        synchronized (this) {
+            state = state.withCompactedTables(tier, mergedTable);
+        }
+        for (SSTable table : tier) {
+            try {
+                table.delete();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        Metrics.COMPACTIONS.increment();
+        Metrics.COMPACTION_DURATION.recordNanos(elapsedNanos);
+        Metrics.COMPACTION_RECLAIMED_BYTES.add(Math.max(0, sourceBytes - mergedTable.getFile().length()));
+        System.out.printf("Merged %s tables into '%s' of %s records in %s ms\n", tier.size(), mergedTable.getFile().getName(),
+                mergedTable.getRecordCount(), elapsedNanos / 1_000_000);
+        return true;
+    }
+
+    /**
+     * @return latest record of the key, possibly a tombstone or expired, or {@code null} if the key was never written
+     */
+    private Record find(String key) throws IOException {
+        byte[] keyBytes = null;
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            final LsmState current = state;
+            Record record = current.memtable.get(key);
+            if (record != null) {
+                return record;
+            }
+            for (Memtable frozenMemtable : current.frozenMemtables) {
+                record = frozenMemtable.get(key);
+                if (record != null) {
+                    return record;
+                }
+            }
+            if (keyBytes == null) {
+                keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            }
+            try {
+                for (SSTable table : current.tables) {
+                    record = table.find(key, keyBytes);
+                    if (record != null) {
+                        return record;
+                    }
+                }
+                return null;
+            } catch (ClosedChannelException e) {
+                // the tables were compacted meanwhile, the next attempt reads the merged one
+            }
+        }
+        throw new IOException("Tables holding key '" + key + "' are no longer available");
+    }
+
+    private List<Map.Entry<String, ByteBuffer>> scan(LsmState current, String startKey, String endKey, int limit) throws IOException {
+        final List<Iterator<Record>> sources = new ArrayList<>(1 + current.frozenMemtables.size() + current.tables.size());
+        sources.add(current.memtable.iterator(startKey));
+        current.frozenMemtables.forEach(frozenMemtable -> sources.add(frozenMemtable.iterator(startKey)));
+        current.tables.forEach(table -> sources.add(table.iterator(startKey)));
+        final MergingIterator records = new MergingIterator(sources);
+        final List<Map.Entry<String, ByteBuffer>> entries = new ArrayList<>(Math.min(limit, 1024));
+        final long nowMillis = System.currentTimeMillis();
+        while (entries.size() < limit && records.hasNext()) {
+            final Record record = records.next();
+            if (!endKey.isEmpty() && record.getKey().compareTo(endKey) >= 0) {
+                break;
+            }
+            if (isLive(record, nowMillis)) {
+                entries.add(Map.entry(record.getKey(), getValue(record)));
+            }
+        }
+        return entries;
+    }
+
+    private ByteBuffer getValue(Record record) throws IOException {
+        return ByteBuffer.wrap(record.isCompressed() ? ValueCompression.decompress(ByteBuffer.wrap(record.getValue())) : record.getValue());
+    }
+
+    private boolean isLive(Record record, long nowMillis) {
+        return record != null && !record.isTombstone() && (record.getExpiresAtMillis() == 0 || record.getExpiresAtMillis() > nowMillis);
+    }
+
+    /**
+     * Deletes what an interrupted flush or compaction left behind and opens the tables newest first, by the newest
+     * flushed table their records come from.
+     */
+    private List<SSTable> openTables() throws IOException {
+        final File[] files = dataDirectory.listFiles(File::isFile);
+        final List<SSTable> tables = new ArrayList<>();
+        try {
+            for (File file : files == null ? new File[0] : files) {
+                final String name = file.getName();
+                if (name.endsWith("." + SSTableWriter.TEMPORARY_FILE_EXTENSION)) {
+                    Files.delete(file.toPath());
+                } else if (name.startsWith(TABLE_FILE_NAME_PREFIX + "-") && name.endsWith("." + TABLE_FILE_EXTENSION)) {
+                    tables.add(SSTable.open(file, getTableSequenceNumber(file)));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            tables.forEach(SSTable::close);
+            throw e;
+        }
+        tables.sort(Comparator.comparingLong(SSTable::getLastSequenceNumber).reversed());
+        final List<SSTable> liveTables = new ArrayList<>(tables.size());
+        for (SSTable table : tables) {
+            if (tables.stream().anyMatch(mergedTable -> mergedTable.covers(table))) {
+                System.out.printf("Deleting table '%s' left behind by an interrupted compaction\n", table.getFile().getName());
+                table.delete();
+            } else {
+                liveTables.add(table);
+            }
+        }
+        tableSequence = tables.stream().mapToLong(SSTable::getSequenceNumber).max().orElse(0);
+        return List.copyOf(liveTables);
+    }
+
+    private long getTableSequenceNumber(File tableFile) throws IOException {
+        final String name = tableFile.getName();
+        try {
+            return Long.parseLong(name.substring(TABLE_FILE_NAME_PREFIX.length() + 1, name.length() - TABLE_FILE_EXTENSION.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IOException("Table " + name + " has no sequence number", e);
+        }
+    }
+
+    private File getTableFile(long sequenceNumber) {
+        return new File(dataDirectory, TABLE_FILE_NAME_PREFIX + "-" + sequenceNumber + "." + TABLE_FILE_EXTENSION);
+    }
+
+    private static long getTableRecords(List<SSTable> tables) {
+        return tables.stream().mapToLong(SSTable::getRecordCount).sum();
+    }
+
+    /**
+     * Memtables and tables visible to reads, newest first.
+     */
+    private static class LsmState {
+
+        private final Memtable memtable;
+        private final List<Memtable> frozenMemtables;
+        private final List<SSTable> tables;
+
+        LsmState(Memtable memtable, List<Memtable> frozenMemtables, List<SSTable> tables) {
+            this.memtable = memtable;
+            this.frozenMemtables = frozenMemtables;
+            this.tables = tables;
+        }
+
+        LsmState withFrozenMemtable(Memtable newMemtable) {
+            final List<Memtable> frozen = new ArrayList<>(frozenMemtables.size() + 1);
+            frozen.add(memtable);
+            frozen.addAll(frozenMemtables);
+            return new LsmState(newMemtable, List.copyOf(frozen), tables);
+        }
+
+        LsmState withFlushedMemtable(Memtable flushedMemtable, SSTable table) {
+            final List<SSTable> newTables = new ArrayList<>(tables.size() + 1);
+            newTables.add(table);
+            newTables.addAll(tables);
+            return new LsmState(memtable, frozenMemtables.stream().filter(frozen -> frozen != flushedMemtable).collect(Collectors.toUnmodifiableList()),
+                    List.copyOf(newTables));
+        }
+
+        /**
+         * @param compactedTables adjacent tables, the merged table takes their place
+         */
+        LsmState withCompactedTables(List<SSTable> compactedTables, SSTable mergedTable) {
+            final List<SSTable> newTables = new ArrayList<>(tables);
+            final int position = newTables.indexOf(compactedTables.get(0));
+            newTables.removeAll(compactedTables);
+            newTables.add(position, mergedTable);
+            return new LsmState(memtable, frozenMemtables, List.copyOf(newTables));
+        }
+    }
+}
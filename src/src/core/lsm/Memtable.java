@@ -0,0 +1,87 @@
+package src.core.lsm;
+
+import src.Record;
+import src.files.RecordCodec;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorted in-memory table of the latest records, tombstones included. It is written by the single writer thread
+ * and read concurrently without locks. Once frozen it is no longer written and is flushed into a sorted table.
+ */
+class Memtable {
+
+    private final ConcurrentSkipListMap<String, Record> records = new ConcurrentSkipListMap<>();
+    private final AtomicLong sizeInBytes = new AtomicLong();
+    private volatile File walCutoff;
+
+    void put(Record record) {
+        final Record previous = records.put(record.getKey(), record);
+        final long previousSize = previous == null ? 0 : encodedSize(previous);
+        sizeInBytes.addAndGet(encodedSize(record) - previousSize);
+    }
+
+    /**
+     * @return the latest record of the key, possibly a tombstone, or {@code null} if the key was not written
+     */
+    Record get(String key) {
+        return records.get(key);
+    }
+
+    /**
+     * @param startKey first key, inclusive
+     * @return records from the given key on, in key order
+     */
+    Iterator<Record> iterator(String startKey) {
+        final ConcurrentNavigableMap<String, Record> tail = startKey == null ? records : records.tailMap(startKey, true);
+        return tail.values().iterator();
+    }
+
+    int size() {
+        return records.size();
+    }
+
+    boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    long getSizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    /**
+     * @return the WAL segment that was active when the memtable was frozen, the segments before it hold
+     * no later records and so are obsolete once this memtable and all older ones are flushed
+     */
+    File getWalCutoff() {
+        return walCutoff;
+    }
+
+    void freeze(File walCutoff) {
+        this.walCutoff = walCutoff;
+    }
+
+    private static long encodedSize(Record record) {
+        return RecordCodec.encodedSize(utf8Length(record.getKey()), record.getValue().length, RecordCodec.flags(record));
+    }
+
+    /**
+     * Counts the bytes of the key in UTF-8 without encoding it, a surrogate pair takes 4 bytes.
+     */
+    private static int utf8Length(String key) {
+        int length = key.length();
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c >= 0x800) {
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+}
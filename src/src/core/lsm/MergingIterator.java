@@ -0,0 +1,71 @@
+package src.core.lsm;
+
+import src.Record;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted sources into one sorted sequence with a single record per key. The sources are given newest
+ * first and of the records of a key only the one of the newest source is returned, tombstones included.
+ */
+class MergingIterator implements Iterator<Record> {
+
+    private final PriorityQueue<Source> sources = new PriorityQueue<>(
+            Comparator.comparing((Source source) -> source.current.getKey()).thenComparingInt(source -> source.priority)
+    );
+
+    MergingIterator(List<Iterator<Record>> newestFirstSources) {
+        for (int i = 0; i < newestFirstSources.size(); i++) {
+            final Source source = new Source(newestFirstSources.get(i), i);
+            if (source.advance()) {
+                sources.add(source);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !sources.isEmpty();
+    }
+
+    @Override
+    public Record next() {
+        final Source newest = sources.poll();
+        if (newest == null) {
+            throw new NoSuchElementException();
+        }
+        final Record record = newest.current;
+        offerNext(newest);
+        while (!sources.isEmpty() && sources.peek().current.getKey().equals(record.getKey())) {
+            offerNext(sources.poll());
+        }
+        return record;
+    }
+
+    private void offerNext(Source source) {
+        if (source.advance()) {
+            sources.add(source);
+        }
+    }
+
+    private static class Source {
+
+        private final Iterator<Record> records;
+        private final int priority;
+        private Record current;
+
+        Source(Iterator<Record> records, int priority) {
+            this.records = records;
+            this.priority = priority;
+        }
+
+        boolean advance() {
+            current = records.hasNext() ? records.next() : null;
+            return current != null;
+        }
+    }
+}
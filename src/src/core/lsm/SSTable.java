@@ -0,0 +1,278 @@
+package src.core.lsm;
+
+import src.Record;
+import src.files.RecordCodec;
+import src.metrics.Metrics;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+/**
+ * Immutable sorted table, written once by {@link SSTableWriter}:
+ * <pre>
+ * | segment magic (4) | records | sparse index | bloom filter | footer |
+ * </pre>
+ * Records are in the segment format of {@link RecordCodec}, sorted by key and grouped into blocks of about
+ * {@link SSTableWriter#BLOCK_SIZE} bytes. The sparse index holds the first key and the offset of every block,
+ * {@code | key length (4) | key | offset (8) |}, and is kept in memory together with the bloom filter, so a point
+ * read costs at most one block read. The footer is
+ * <pre>
+ * | index offset (8) | index entries (4) | bloom filter offset (8) | records (8) | first sequence (8) | last sequence (8) | crc32c (4) | table magic (4) |
+ * </pre>
+ * where the sequence numbers bound the flushed tables merged into this one and the checksum covers the index,
+ * the bloom filter and the footer fields before it.
+ */
+class SSTable {
+
+    static final int TABLE_MAGIC = 0x4B565354;
+    static final int FOOTER_SIZE = 52;
+
+    private final File file;
+    private final long sequenceNumber;
+    private final FileChannel channel;
+    private final String[] blockKeys;
+    private final long[] blockOffsets;
+    private final long dataEnd;
+    private final BloomFilter bloomFilter;
+    private final long recordCount;
+    private final long firstSequenceNumber;
+    private final long lastSequenceNumber;
+
+    private SSTable(File file, long sequenceNumber, FileChannel channel, String[] blockKeys, long[] blockOffsets, long dataEnd,
+                    BloomFilter bloomFilter, long recordCount, long firstSequenceNumber, long lastSequenceNumber) {
+        this.file = file;
+        this.sequenceNumber = sequenceNumber;
+        this.channel = channel;
+        this.blockKeys = blockKeys;
+        this.blockOffsets = blockOffsets;
+        this.dataEnd = dataEnd;
+        this.bloomFilter = bloomFilter;
+        this.recordCount = recordCount;
+        this.firstSequenceNumber = firstSequenceNumber;
+        this.lastSequenceNumber = lastSequenceNumber;
+    }
+
+    static SSTable open(File file, long sequenceNumber) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            final long fileSize = channel.size();
+            if (fileSize < RecordCodec.SEGMENT_HEADER_SIZE + FOOTER_SIZE) {
+                throw new IOException("Table " + file.getName() + " is truncated");
+            }
+            final ByteBuffer footer = read(channel, fileSize - FOOTER_SIZE, FOOTER_SIZE);
+            if (footer.getInt(FOOTER_SIZE - 4) != TABLE_MAGIC) {
+                throw new IOException("Table " + file.getName() + " has no table footer");
+            }
+            final long indexOffset = footer.getLong(0);
+            if (indexOffset < RecordCodec.SEGMENT_HEADER_SIZE || indexOffset > fileSize - FOOTER_SIZE) {
+                throw new IOException("Table " + file.getName() + " has an invalid footer");
+            }
+            final ByteBuffer metadata = read(channel, indexOffset, fileSize - indexOffset);
+            if (metadata.getInt(metadata.limit() - 8) != checksum(metadata, metadata.limit() - 8)) {
+                throw new IOException("Index of table " + file.getName() + " is corrupted");
+            }
+            final int footerStart = metadata.limit() - FOOTER_SIZE;
+            final int indexEntries = metadata.getInt(footerStart + 8);
+            final long bloomFilterOffset = metadata.getLong(footerStart + 12);
+            final String[] blockKeys = new String[indexEntries];
+            final long[] blockOffsets = new long[indexEntries];
+            for (int i = 0; i < indexEntries; i++) {
+                final byte[] key = new byte[metadata.getInt()];
+                metadata.get(key);
+                blockKeys[i] = new String(key, StandardCharsets.UTF_8);
+                blockOffsets[i] = metadata.getLong();
+            }
+            final BloomFilter bloomFilter = BloomFilter.readFrom(metadata.position((int) (bloomFilterOffset - indexOffset)));
+            return new SSTable(file, sequenceNumber, channel, blockKeys, blockOffsets, indexOffset, bloomFilter,
+                    metadata.getLong(footerStart + 20), metadata.getLong(footerStart + 28), metadata.getLong(footerStart + 36));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return sequence number of the oldest flushed table whose records this table holds, its own one for a flushed memtable
+     */
+    long getFirstSequenceNumber() {
+        return firstSequenceNumber;
+    }
+
+    /**
+     * @return sequence number of the newest flushed table whose records this table holds, which orders the tables by age
+     */
+    long getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
+    /**
+     * @return whether all records of the other table were merged into this one, which makes the other one obsolete
+     */
+    boolean covers(SSTable other) {
+        return other != this && firstSequenceNumber <= other.firstSequenceNumber && other.lastSequenceNumber <= lastSequenceNumber;
+    }
+
+    /**
+     * @return record of the key, possibly a tombstone, or {@code null} if the table does not hold the key
+     */
+    Record find(String key, byte[] keyBytes) throws IOException {
+        if (!bloomFilter.mightContain(keyBytes)) {
+            Metrics.BLOOM_FILTER_SKIPS.increment();
+            return null;
+        }
+        final int block = findBlock(key);
+        if (block < 0) {
+            return null;
+        }
+        final ByteBuffer buffer = readBlock(block);
+        int position = 0;
+        while (position < buffer.limit()) {
+            final int recordSize = checkRecord(buffer, position, block);
+            final int comparison = RecordCodec.decodeKey(buffer, position).compareTo(key);
+            if (comparison == 0) {
+                return RecordCodec.decodeRecord(buffer, position);
+            }
+            if (comparison > 0) {
+                return null;
+            }
+            position += recordSize;
+        }
+        return null;
+    }
+
+    /**
+     * @param startKey first key, inclusive, or {@code null} to iterate the whole table
+     * @return records from the given key on, in key order, reading one block at a time
+     */
+    Iterator<Record> iterator(String startKey) {
+        return new BlockIterator(startKey);
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    static int checksum(ByteBuffer buffer, int end) {
+        final CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(0).limit(end));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return index of the last block starting at or before the key, or {@code -1} if the key precedes all blocks
+     */
+    private int findBlock(String key) {
+        final int block = Arrays.binarySearch(blockKeys, key);
+        return block >= 0 ? block : -block - 2;
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        final long blockEnd = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : dataEnd;
+        Metrics.SSTABLE_BLOCK_READS.increment();
+        return read(channel, blockOffsets[block], blockEnd - blockOffsets[block]);
+    }
+
+    private int checkRecord(ByteBuffer buffer, int position, int block) throws IOException {
+        final int recordSize = RecordCodec.checkRecord(buffer, position, buffer.limit());
+        if (recordSize < 0) {
+            throw new IOException("Corrupted record at " + (blockOffsets[block] + position) + " of table " + file.getName());
+        }
+        return recordSize;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Region of " + length + " bytes is too large to be read at once");
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of table");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private class BlockIterator implements Iterator<Record> {
+
+        private final String startKey;
+        private int nextBlock;
+        private int block;
+        private ByteBuffer buffer = ByteBuffer.allocate(0);
+        private Record next;
+
+        BlockIterator(String startKey) {
+            this.startKey = startKey;
+            this.nextBlock = startKey == null ? 0 : Math.max(0, findBlock(startKey));
+            this.next = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Record next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Record record = next;
+            next = advance();
+            return record;
+        }
+
+        private Record advance() {
+            try {
+                while (true) {
+                    if (!buffer.hasRemaining()) {
+                        if (nextBlock >= blockOffsets.length) {
+                            return null;
+                        }
+                        block = nextBlock++;
+                        buffer = readBlock(block);
+                    }
+                    final int position = buffer.position();
+                    buffer.position(position + checkRecord(buffer, position, block));
+                    if (startKey == null || RecordCodec.decodeKey(buffer, position).compareTo(startKey) >= 0) {
+                        return RecordCodec.decodeRecord(buffer, position);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
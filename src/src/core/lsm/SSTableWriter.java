@@ -0,0 +1,115 @@
+package src.core.lsm;
+
+import src.Record;
+import src.files.RecordCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Writes records, which have to come in key order, into a new {@link SSTable}. The table is written to a
+ * temporary file which is synced and renamed into place once complete, so a table file is never partial.
+ * Records keep the timestamp they were written to the log with.
+ */
+class SSTableWriter {
+
+    static final int BLOCK_SIZE = 4 * 1024;
+    static final String TEMPORARY_FILE_EXTENSION = "tmp";
+
+    private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+    private SSTableWriter() {
+    }
+
+    /**
+     * @param expectedRecords     upper bound of the number of records, the bloom filter is sized by it
+     * @param firstSequenceNumber sequence number of the oldest flushed table the records come from
+     * @param lastSequenceNumber  sequence number of the newest flushed table the records come from
+     * @param dropDeleted         whether tombstones and expired records are left out, which is only correct if the
+     *                            records replace all older tables, as there is no older value left for them to hide
+     */
+    static SSTable write(File tableFile, long sequenceNumber, Iterator<Record> records, int expectedRecords, long firstSequenceNumber,
+                         long lastSequenceNumber, boolean dropDeleted) throws IOException {
+        final File temporaryFile = new File(tableFile.getPath() + "." + TEMPORARY_FILE_EXTENSION);
+        final BloomFilter bloomFilter = new BloomFilter(expectedRecords);
+        final List<byte[]> blockKeys = new ArrayList<>();
+        final List<Long> blockOffsets = new ArrayList<>();
+        long recordCount = 0;
+        try (FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+            buffer.put(RecordCodec.segmentHeader());
+            long size = RecordCodec.SEGMENT_HEADER_SIZE;
+            long blockStart = size;
+            final long nowMillis = System.currentTimeMillis();
+            while (records.hasNext()) {
+                final Record record = records.next();
+                if (dropDeleted && (record.isTombstone() || record.getExpiresAtMillis() != 0 && record.getExpiresAtMillis() <= nowMillis)) {
+                    continue;
+                }
+                final byte[] key = record.getKey().getBytes(StandardCharsets.UTF_8);
+                final byte flags = RecordCodec.flags(record);
+                final int recordLength = RecordCodec.encodedSize(key.length, record.getValue().length, flags);
+                if (blockKeys.isEmpty() || size - blockStart >= BLOCK_SIZE) {
+                    blockStart = size;
+                    blockKeys.add(key);
+                    blockOffsets.add(blockStart);
+                }
+                if (recordLength > buffer.remaining()) {
+                    writeFully(channel, buffer.flip());
+                    buffer.clear();
+                }
+                if (recordLength > buffer.capacity()) {
+                    final ByteBuffer encodedRecord = ByteBuffer.allocate(recordLength);
+                    RecordCodec.encode(encodedRecord, key, record.getValue(), record.getTimestampMillis(), flags, record.getExpiresAtMillis());
+                    writeFully(channel, encodedRecord.flip());
+                } else {
+                    RecordCodec.encode(buffer, key, record.getValue(), record.getTimestampMillis(), flags, record.getExpiresAtMillis());
+                }
+                bloomFilter.add(key);
+                size += recordLength;
+                recordCount++;
+            }
+            writeFully(channel, buffer.flip());
+            writeFully(channel, metadata(size, blockKeys, blockOffsets, bloomFilter, recordCount, firstSequenceNumber, lastSequenceNumber));
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw e;
+        }
+        Files.move(temporaryFile.toPath(), tableFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return SSTable.open(tableFile, sequenceNumber);
+    }
+
+    private static ByteBuffer metadata(long indexOffset, List<byte[]> blockKeys, List<Long> blockOffsets, BloomFilter bloomFilter,
+                                       long recordCount, long firstSequenceNumber, long lastSequenceNumber) {
+        int indexSize = 0;
+        for (byte[] blockKey : blockKeys) {
+            indexSize += 4 + blockKey.length + 8;
+        }
+        final ByteBuffer metadata = ByteBuffer.allocate(indexSize + bloomFilter.serializedSize() + SSTable.FOOTER_SIZE);
+        for (int i = 0; i < blockKeys.size(); i++) {
+            metadata.putInt(blockKeys.get(i).length).put(blockKeys.get(i)).putLong(blockOffsets.get(i));
+        }
+        bloomFilter.writeTo(metadata);
+        metadata.putLong(indexOffset).putInt(blockKeys.size()).putLong(indexOffset + indexSize).putLong(recordCount)
+                .putLong(firstSequenceNumber).putLong(lastSequenceNumber);
+        metadata.putInt(SSTable.checksum(metadata, metadata.position()));
+        metadata.putInt(SSTable.TABLE_MAGIC);
+        return metadata.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+}
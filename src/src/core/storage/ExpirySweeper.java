@@ -0,0 +1,52 @@
+package src.core.storage;
+
+import src.core.config.CacheConfigConstants;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reclaims expired keys that are never read again. Every run checks a small batch of keys having a TTL and keeps
+ * going while more than a quarter of the batch had expired, within a time budget, so the whole set of expiring keys
+ * is never scanned in one pass and the memory held by expired keys stays proportional to the expiry rate.
+ */
+public class ExpirySweeper {
+
+    private static final int KEYS_PER_BATCH = 256;
+    private static final int EXPIRED_KEYS_TO_CONTINUE = KEYS_PER_BATCH / 4;
+    private static final long MAX_RUN_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final HashIndexStorage hashIndexStorage;
+    private final ScheduledExecutorService sweepScheduler;
+    private final long sweepIntervalMillis = Long.parseLong(System.getProperty(CacheConfigConstants.EXPIRY_SWEEP_INTERVAL_MILLIS, "100").trim());
+
+    public ExpirySweeper(HashIndexStorage hashIndexStorage) {
+        this.hashIndexStorage = hashIndexStorage;
+        this.sweepScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "expiry-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        sweepScheduler.scheduleWithFixedDelay(this::sweep, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        sweepScheduler.shutdownNow();
+    }
+
+    private void sweep() {
+        try {
+            final long startNanos = System.nanoTime();
+            int expiredKeys;
+            do {
+                expiredKeys = hashIndexStorage.sweepExpiredKeys(KEYS_PER_BATCH);
+            } while (expiredKeys > EXPIRED_KEYS_TO_CONTINUE && System.nanoTime() - startNanos < MAX_RUN_NANOS);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package src.core.storage;
+
+import src.Record;
+import src.core.cache.ValueCache;
+import src.core.config.CacheConfigConstants;
+import src.core.config.InMemoryMapPopulator;
+import src.core.index.Expiration;
+import src.core.index.IndexType;
+import src.core.index.RecordIndex;
+import src.core.index.RecordLocation;
+import src.files.DataFilesProcessingHelper;
+import src.files.HintFileManager;
+import src.files.RecordCodec;
+import src.files.SegmentRegistry;
+import src.files.SegmentWriter;
+import src.files.SnapshotWriter;
+import src.files.ValueCompression;
+import src.files.WriteDurability;
+import src.files.exception.FileInvalidFormatException;
+import src.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Bitcask-like storage: the index maps every key to the location of its latest value in the data segments.
+ * In {@link StorageMode#HEAP} mode values are additionally kept on heap, in {@link StorageMode#OFFSET} mode
+ * they are read from the segment on every GET and in {@link StorageMode#CACHE} mode only the values of hot keys
+ * are kept, within {@link CacheConfigConstants#VALUE_CACHE_MAX_MEGABYTES}.
+ * <p>
+ * Keys written with a TTL have an {@link Expiration} bound to the location of their record. An expired key is
+ * removed lazily when it is read and by {@link #sweepExpiredKeys}; removal only succeeds while the index
+ * still points to the expired record, so it never races with a newer write of the key.
+ * <p>
+ * A replica is loaded with {@link #loadReplica()}: it has no writer and its active segment is appended to by
+ * replication instead, which feeds the copied records through {@link #applyReplicatedRecord}.
+ */
+public class HashIndexStorage {
+
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    private final StorageMode storageMode;
+    private final File dataDirectory;
+    private final int shareOfMemory;
+    private final IndexType indexType;
+    private final SegmentRegistry segmentRegistry;
+    private final HintFileManager hintFileManager;
+    private final InMemoryMapPopulator inMemoryMapPopulator;
+    private final SegmentWriter segmentWriter;
+    private final List<Consumer<File>> segmentSealedListeners = new CopyOnWriteArrayList<>();
+    private final RecordIndex index;
+    private final ConcurrentMap<String, Expiration> expirations = new ConcurrentHashMap<>();
+    private Iterator<Map.Entry<String, Expiration>> expirationCursor = Collections.emptyIterator();
+    private ConcurrentMap<String, byte[]> localCache;
+    private ValueCache valueCache;
+    private final ConcurrentMap<Object, File> pinnedSegments = new ConcurrentHashMap<>();
+    private final DataFilesProcessingHelper dataFilesProcessingHelper = new DataFilesProcessingHelper();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final ValueCompression valueCompression = ValueCompression.fromProperty(System.getProperty(CacheConfigConstants.VALUE_COMPRESSION));
+    private volatile boolean replica;
+    private volatile File replicaSegment;
+
+    public HashIndexStorage(StorageMode storageMode, IndexType indexType) {
+        this(storageMode, indexType, new File(System.getProperty(CacheConfigConstants.DATA_DIRECTORY_LOCATION)), 1);
+    }
+
+    /**
+     * @param dataDirectory directory holding the segments of this storage only
+     * @param shareOfMemory number of storages splitting the configured index capacity and value cache budget
+     */
+    public HashIndexStorage(StorageMode storageMode, IndexType indexType, File dataDirectory, int shareOfMemory) {
+        this.storageMode = storageMode;
+        this.indexType = indexType;
+        this.dataDirectory = dataDirectory;
+        this.shareOfMemory = shareOfMemory;
+        this.index = indexType.createIndex(Integer.parseInt(System.getProperty(CacheConfigConstants.INDEX_INITIAL_CAPACITY, "16").trim()) / shareOfMemory);
+        this.segmentRegistry = new SegmentRegistry();
+        this.hintFileManager = new HintFileManager();
+        this.inMemoryMapPopulator = new InMemoryMapPopulator(hintFileManager);
+        this.segmentWriter = new SegmentWriter(
+                dataDirectory,
+                segmentRegistry,
+                WriteDurability.fromProperty(System.getProperty(CacheConfigConstants.WRITE_DURABILITY)),
+                Long.parseLong(System.getProperty(CacheConfigConstants.WRITE_FSYNC_INTERVAL_MILLIS, "1000").trim()),
+                new SegmentWriter.AppendListener() {
+                    @Override
+                    public boolean onAppended(Record record, RecordLocation location) {
+                        return HashIndexStorage.this.onAppended(record, location);
+                    }
+
+                    @Override
+                    public void onSegmentSealed(File segmentFile) {
+                        hintFileManager.writeHintFileAsync(segmentFile);
+                        segmentSealedListeners.forEach(listener -> listener.accept(segmentFile));
+                    }
+                }
+        );
+    }
+
+    public void load() throws IOException {
+        recover();
+        segmentWriter.start();
+        System.out.printf("Loaded %s keys from '%s' in '%s' storage mode with '%s' index\n", index.size(), dataDirectory, storageMode.getMode(), indexType.getType());
+    }
+
+    /**
+     * Loads the segments copied from a leader without starting the writer, the newest segment is the one replication appends to.
+     */
+    public void loadReplica() throws IOException {
+        replica = true;
+        recover();
+        final List<File> dataFiles = dataFilesProcessingHelper.listSortedDataFiles(dataDirectory);
+        replicaSegment = dataFiles.isEmpty() ? null : dataFiles.get(dataFiles.size() - 1);
+        System.out.printf("Loaded %s keys from '%s' as a replica in '%s' storage mode with '%s' index\n", index.size(), dataDirectory, storageMode.getMode(), indexType.getType());
+    }
+
+    private void recover() throws IOException {
+        inMemoryMapPopulator.populateIndexWithDataFromDirectory(dataDirectory, segmentRegistry, index, expirations);
+        final List<String> keys = new ArrayList<>();
+        index.forEach((key, location) -> {
+            segmentRegistry.addLiveBytes(location.getSegmentId(), location.getLength());
+            if (storageMode == StorageMode.HEAP) {
+                keys.add(key);
+            }
+        });
+        if (storageMode == StorageMode.HEAP) {
+            final ConcurrentMap<String, byte[]> values = new ConcurrentHashMap<>(index.size());
+            keys.parallelStream().forEach(key -> {
+                try {
+                    final ByteBuffer record = readRecord(key);
+                    if (record != null) {
+                        final ByteBuffer value = valueCompression.toMemoryValue(RecordCodec.sliceValue(record, 0), RecordCodec.isCompressed(record, 0));
+                        final byte[] valueBytes = new byte[value.remaining()];
+                        value.get(valueBytes);
+                        values.put(key, valueBytes);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            localCache = values;
+        }
+        if (storageMode == StorageMode.CACHE) {
+            valueCache = new ValueCache(Long.parseLong(System.getProperty(CacheConfigConstants.VALUE_CACHE_MAX_MEGABYTES, "64").trim()) * 1024 * 1024 / shareOfMemory);
+        }
+    }
+
+    /**
+     * Flushes pending writes and releases the segment files, the storage can not be used afterwards.
+     */
+    public void close() {
+        if (!replica) {
+            segmentWriter.stop();
+        }
+        hintFileManager.close();
+        segmentRegistry.close();
+    }
+
+    /**
+     * @return value of the key or {@code null} if it is absent, the returned buffer must not be written to
+     */
+    public ByteBuffer get(String key) throws IOException {
+        final long startNanos = System.nanoTime();
+        final ByteBuffer value;
+        if (isExpired(key)) {
+            value = null;
+        } else if (localCache != null) {
+            final byte[] cachedValue = localCache.get(key);
+            value = cachedValue == null ? null : valueCompression.fromMemoryValue(ByteBuffer.wrap(cachedValue));
+        } else if (valueCache != null) {
+            final ByteBuffer cachedValue = valueCache.get(key);
+            value = cachedValue != null ? valueCompression.fromMemoryValue(cachedValue) : readValueIntoCache(key);
+        } else {
+            value = readValue(key);
+        }
+        Metrics.GET_LATENCY.recordNanos(System.nanoTime() - startNanos);
+        (value == null ? Metrics.GET_MISSES : Metrics.GET_HITS).increment();
+        return value;
+    }
+
+    public CompletableFuture<Void> put(List<Record> records) {
+        final long startNanos = System.nanoTime();
+        Metrics.PUT_RECORDS.add(records.size());
+        return segmentWriter.append(records).thenApply(replacedRecords -> {
+            Metrics.PUT_LATENCY.recordNanos(System.nanoTime() - startNanos);
+            return null;
+        });
+    }
+
+    /**
+     * @return future of the number of keys that existed when their tombstones were written
+     */
+    public CompletableFuture<Integer> delete(List<String> keys) {
+        return segmentWriter.append(keys.stream().map(Record::tombstone).collect(Collectors.toList())).thenApply(removedKeys -> {
+            Metrics.DELETED_RECORDS.add(removedKeys);
+            return removedKeys;
+        });
+    }
+
+    public void addSegmentSealedListener(Consumer<File> segmentSealedListener) {
+        segmentSealedListeners.add(segmentSealedListener);
+    }
+
+    public File getDataDirectory() {
+        return dataDirectory;
+    }
+
+    /**
+     * @return segment currently appended to or {@code null} if a replica has not received any segment yet
+     */
+    public File getActiveSegment() {
+        return replica ? replicaSegment : segmentWriter.getActiveSegment();
+    }
+
+    /**
+     * @return end of the records of the leader that are written for good, see {@link SegmentWriter#getCommittedPosition()}
+     */
+    public SegmentWriter.CommittedPosition getCommittedPosition() {
+        return segmentWriter.getCommittedPosition();
+    }
+
+    public boolean isReplica() {
+        return replica;
+    }
+
+    /**
+     * Keeps the segment and all newer ones out of compaction until the owner pins another segment or unpins,
+     * e.g. while they are streamed to a follower.
+     */
+    public void pinSegment(Object owner, File segment) {
+        pinnedSegments.put(owner, segment);
+    }
+
+    public void unpinSegment(Object owner) {
+        pinnedSegments.remove(owner);
+    }
+
+    /**
+     * @return oldest segment that must not be compacted, i.e. the active segment or an older pinned one
+     */
+    public File getCompactionHorizon() {
+        File horizon = getActiveSegment();
+        for (File pinnedSegment : pinnedSegments.values()) {
+            if (horizon == null || dataFilesProcessingHelper.getDataFilesComparator().compare(pinnedSegment, horizon) < 0) {
+                horizon = pinnedSegment;
+            }
+        }
+        return horizon;
+    }
+
+    /**
+     * Held while segments are compacted, so the set of segment files does not change while it is held.
+     */
+    public ReentrantLock getCompactionLock() {
+        return compactionLock;
+    }
+
+    /**
+     * Makes the segment the active one of the replica, sealing the previous one.
+     *
+     * @return id of the segment to locate its records with
+     */
+    public int openReplicaSegment(File segment) {
+        final int segmentId = segmentRegistry.register(segment);
+        final File sealedSegment = replicaSegment;
+        replicaSegment = segment;
+        if (sealedSegment != null) {
+            hintFileManager.writeHintFileAsync(sealedSegment);
+            segmentSealedListeners.forEach(listener -> listener.accept(sealedSegment));
+        }
+        return segmentId;
+    }
+
+    /**
+     * Indexes a record that replication has appended to the active segment of the replica.
+     */
+    public void applyReplicatedRecord(Record record, RecordLocation location) {
+        onAppended(record, location);
+    }
+
+    /**
+     * Writes a snapshot of the sealed segments, see {@link SnapshotWriter}. Must not be called concurrently.
+     *
+     * @return number of records in the snapshot
+     */
+    public int snapshot() throws IOException {
+        try {
+            return new SnapshotWriter(this, hintFileManager).write();
+        } catch (FileInvalidFormatException e) {
+            throw new IOException("Could not write snapshot of " + dataDirectory, e);
+        }
+    }
+
+    public RecordLocation getLocation(String key) {
+        return index.get(key);
+    }
+
+    public void forEachLocation(BiConsumer<String, RecordLocation> action) {
+        index.forEach(action);
+    }
+
+    public SegmentRegistry getSegmentRegistry() {
+        return segmentRegistry;
+    }
+
+    /**
+     * @return hint file manager of the shard, shared with its compaction so one hint writer thread serves both
+     */
+    public HintFileManager getHintFileManager() {
+        return hintFileManager;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public boolean containsKey(String key) {
+        return index.containsKey(key) && !isExpired(key);
+    }
+
+    public int getExpiringKeys() {
+        return expirations.size();
+    }
+
+    /**
+     * Removes the key if the record at the location has expired and the key still points to it.
+     */
+    public void expire(String key, RecordLocation location) {
+        final Expiration expiration = expirations.get(key);
+        if (expiration != null && expiration.getLocation().equals(location) && expiration.isExpired(System.currentTimeMillis())) {
+            expire(key, expiration);
+        }
+    }
+
+    /**
+     * Checks the next keys having a TTL, continuing where the previous sweep stopped, so the keys are
+     * visited a few at a time. Must not be called concurrently.
+     *
+     * @return number of checked keys that had expired
+     */
+    public int sweepExpiredKeys(int maxCheckedKeys) {
+        final long nowMillis = System.currentTimeMillis();
+        int expiredKeys = 0;
+        for (int i = 0; i < maxCheckedKeys; i++) {
+            if (!expirationCursor.hasNext()) {
+                expirationCursor = expirations.entrySet().iterator();
+                if (!expirationCursor.hasNext()) {
+                    break;
+                }
+            }
+            final Map.Entry<String, Expiration> entry = expirationCursor.next();
+            if (entry.getValue().isExpired(nowMillis)) {
+                expire(entry.getKey(), entry.getValue());
+                expiredKeys++;
+            }
+        }
+        return expiredKeys;
+    }
+
+    public boolean isLive(String key, RecordLocation location) {
+        return location.equals(index.get(key));
+    }
+
+    /**
+     * Moves the key to a copy of its record, unless the key has been written or removed since the copy was made.
+     */
+    public boolean relocate(String key, RecordLocation from, RecordLocation to) {
+        if (!index.replace(key, from, to)) {
+            return false;
+        }
+        if (!expirations.isEmpty()) {
+            expirations.computeIfPresent(key, (ignored, expiration) -> expiration.getLocation().equals(from) ? expiration.relocate(to) : expiration);
+        }
+        segmentRegistry.addLiveBytes(to.getSegmentId(), to.getLength());
+        segmentRegistry.addLiveBytes(from.getSegmentId(), -from.getLength());
+        return true;
+    }
+
+    private boolean onAppended(Record record, RecordLocation location) {
+        final Expiration previousExpiration = expirations.isEmpty() ? null : expirations.get(record.getKey());
+        final RecordLocation previousLocation;
+        if (record.isTombstone()) {
+            previousLocation = index.remove(record.getKey());
+            if (previousExpiration != null) {
+                expirations.remove(record.getKey());
+            }
+            if (localCache != null) {
+                localCache.remove(record.getKey());
+            } else if (valueCache != null) {
+                valueCache.remove(record.getKey());
+            }
+        } else {
+            previousLocation = index.put(record.getKey(), location);
+            segmentRegistry.addLiveBytes(location.getSegmentId(), location.getLength());
+            if (record.getExpiresAtMillis() != 0) {
+                expirations.put(record.getKey(), new Expiration(location, record.getExpiresAtMillis()));
+            } else if (previousExpiration != null) {
+                expirations.remove(record.getKey());
+            }
+            if (localCache != null) {
+                localCache.put(record.getKey(), toMemoryValue(record));
+            } else if (valueCache != null) {
+                valueCache.put(record.getKey(), ByteBuffer.wrap(toMemoryValue(record)));
+            }
+        }
+        if (previousLocation == null) {
+            return false;
+        }
+        segmentRegistry.addLiveBytes(previousLocation.getSegmentId(), -previousLocation.getLength());
+        return previousExpiration == null || !previousExpiration.getLocation().equals(previousLocation)
+                || !previousExpiration.isExpired(System.currentTimeMillis());
+    }
+
+    private boolean isExpired(String key) {
+        if (expirations.isEmpty()) {
+            return false;
+        }
+        final Expiration expiration = expirations.get(key);
+        if (expiration == null || !expiration.isExpired(System.currentTimeMillis())) {
+            return false;
+        }
+        expire(key, expiration);
+        return true;
+    }
+
+    /**
+     * The HEAP mode value is removed only if it is still the one of the expired record, a newer write may have replaced it.
+     */
+    private void expire(String key, Expiration expiration) {
+        final byte[] cachedValue = localCache != null ? localCache.get(key) : null;
+        if (!index.remove(key, expiration.getLocation())) {
+            return;
+        }
+        segmentRegistry.addLiveBytes(expiration.getLocation().getSegmentId(), -expiration.getLocation().getLength());
+        expirations.remove(key, expiration);
+        if (cachedValue != null) {
+            localCache.remove(key, cachedValue);
+        } else if (valueCache != null) {
+            valueCache.remove(key);
+        }
+        Metrics.EXPIRED_KEYS.increment();
+    }
+
+    private ByteBuffer readValue(String key) throws IOException {
+        final ByteBuffer record = readRecord(key);
+        if (record == null) {
+            return null;
+        }
+        final ByteBuffer value = RecordCodec.sliceValue(record, 0);
+        return RecordCodec.isCompressed(record, 0) ? ByteBuffer.wrap(ValueCompression.decompress(value)) : value;
+    }
+
+    private ByteBuffer readRecord(String key) throws IOException {
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            final RecordLocation location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            final ByteBuffer record = readRecord(key, location);
+            if (record != null) {
+                return record;
+            }
+        }
+        throw new IOException("Segment holding the value of key '" + key + "' is no longer available");
+    }
+
+    /**
+     * Reads the value from the log and offers it to the value cache. The writer updates the index before the cache,
+     * so if the key has moved meanwhile the value may be stale and is taken out of the cache again.
+     */
+    private ByteBuffer readValueIntoCache(String key) throws IOException {
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            final RecordLocation location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            final ByteBuffer record = readRecord(key, location);
+            if (record != null) {
+                final ByteBuffer value = valueCompression.toMemoryValue(RecordCodec.sliceValue(record, 0), RecordCodec.isCompressed(record, 0));
+                if (valueCache.putIfAbsent(key, value) && !location.equals(index.get(key))) {
+                    valueCache.remove(key, value);
+                }
+                return valueCompression.fromMemoryValue(value.duplicate());
+            }
+        }
+        throw new IOException("Segment holding the value of key '" + key + "' is no longer available");
+    }
+
+    /**
+     * @return checked record or {@code null} if its segment has been retired
+     */
+    private ByteBuffer readRecord(String key, RecordLocation location) throws IOException {
+        final byte[] record = segmentRegistry.read(location);
+        if (record == null) {
+            return null;
+        }
+        final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+        if (RecordCodec.checkRecord(recordBuffer, 0, record.length) != record.length) {
+            throw new IOException("Record of key '" + key + "' is corrupted");
+        }
+        return recordBuffer;
+    }
+
+    /**
+     * Values are cached in the form they were written in, see {@link ValueCompression#toMemoryValue}.
+     */
+    private byte[] toMemoryValue(Record record) {
+        try {
+            return valueCompression.toMemoryValue(record.getValue(), record.isCompressed());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package src.core.storage;
+
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+import src.files.DataFilesProcessingHelper;
+import src.files.FileProcessingHelper;
+import src.files.HintFileManager;
+import src.files.SegmentCompactor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Splits the keyspace by key hash over independent {@link HashIndexStorage} shards. Every shard has its own
+ * segment directory, writer thread, index and compaction, so writes to different shards never wait for each other.
+ * <p>
+ * A single shard lives right in the data directory, which is the layout of an unsharded store. Several shards live
+ * in {@code shard-<n>} subdirectories, which may be mount points of different disks. The shard of a key depends
+ * on the number of shards, so the store can not be opened with a number of shards other than it was written with.
+ */
+public class ShardedStorage implements Storage {
+
+    private static final String SHARD_DIRECTORY_PREFIX = "shard-";
+
+    private final File dataDirectory;
+    private final HashIndexStorage[] shards;
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ShardedStorage(StorageMode storageMode, IndexType indexType, File dataDirectory, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Number of shards must be positive : " + shardCount);
+        }
+        this.dataDirectory = dataDirectory;
+        this.shards = new HashIndexStorage[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            final File shardDirectory = shardCount == 1 ? dataDirectory : new File(dataDirectory, SHARD_DIRECTORY_PREFIX + i);
+            shards[i] = new HashIndexStorage(storageMode, indexType, shardDirectory, shardCount);
+        }
+    }
+
+    /**
+     * Recovers all shards in parallel.
+     */
+    @Override
+    public void load() throws IOException {
+        checkShardDirectories();
+        loadShards(HashIndexStorage::load);
+        System.out.printf("Loaded %s keys from %s shards\n", size(), shards.length);
+    }
+
+    /**
+     * Recovers all shards from the segments copied from a leader, see {@link HashIndexStorage#loadReplica()}.
+     */
+    public void loadReplica() throws IOException {
+        loadShards(HashIndexStorage::loadReplica);
+        System.out.printf("Loaded %s keys from %s replica shards\n", size(), shards.length);
+    }
+
+    /**
+     * Deletes all files of the store and prepares empty shard directories, e.g. before a replica copies its leader.
+     * Only segments, hint files, snapshots and their temporary files are deleted, anything else in the data
+     * directory is left alone. Shard directories left empty are removed unless they belong to a configured shard.
+     */
+    public void clear() throws IOException {
+        final File[] shardDirectories = dataDirectory.listFiles((directory, name) -> name.startsWith(SHARD_DIRECTORY_PREFIX));
+        if (shardDirectories != null) {
+            for (File shardDirectory : shardDirectories) {
+                deleteStoreFiles(shardDirectory);
+                final String[] remainingFiles = shardDirectory.list();
+                if (remainingFiles != null && remainingFiles.length == 0 && !isShardDirectory(shardDirectory)) {
+                    Files.delete(shardDirectory.toPath());
+                }
+            }
+        }
+        deleteStoreFiles(dataDirectory);
+        if (!dataDirectory.isDirectory() && !dataDirectory.mkdirs()) {
+            throw new IOException("Could not create data directory " + dataDirectory);
+        }
+        checkShardDirectories();
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return shards[0].isReplica();
+    }
+
+    @Override
+    public void close() {
+        snapshotWriter.shutdown();
+        Arrays.stream(shards).parallel().forEach(HashIndexStorage::close);
+    }
+
+    public List<HashIndexStorage> getShards() {
+        return List.of(shards);
+    }
+
+    public HashIndexStorage getShard(String key) {
+        return shards[shardIndex(key)];
+    }
+
+    @Override
+    public ByteBuffer get(String key) throws IOException {
+        return getShard(key).get(key);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return getShard(key).containsKey(key);
+    }
+
+    /**
+     * Records of different shards are written concurrently by their shard writers, the returned future
+     * completes once all of them are written.
+     */
+    @Override
+    public CompletableFuture<Void> put(List<Record> records) {
+        if (shards.length == 1) {
+            return shards[0].put(records);
+        }
+        final List<List<Record>> recordsByShard = splitByShard(records, Record::getKey);
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (!recordsByShard.get(i).isEmpty()) {
+                writes.add(shards[i].put(recordsByShard.get(i)));
+            }
+        }
+        return writes.size() == 1 ? writes.get(0) : CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @return future of the number of keys that existed when their tombstones were written
+     */
+    @Override
+    public CompletableFuture<Integer> delete(List<String> keys) {
+        if (shards.length == 1) {
+            return shards[0].delete(keys);
+        }
+        final List<List<String>> keysByShard = splitByShard(keys, key -> key);
+        CompletableFuture<Integer> deletedKeys = CompletableFuture.completedFuture(0);
+        for (int i = 0; i < shards.length; i++) {
+            if (!keysByShard.get(i).isEmpty()) {
+                deletedKeys = deletedKeys.thenCombine(shards[i].delete(keysByShard.get(i)), Integer::sum);
+            }
+        }
+        return deletedKeys;
+    }
+
+    /**
+     * Snapshots the shards one after another on a background thread, so snapshots never run concurrently.
+     *
+     * @return future of the number of records in the snapshots
+     */
+    @Override
+    public CompletableFuture<Integer> snapshot() {
+        return CompletableFuture.supplyAsync(() -> {
+            int snapshotRecords = 0;
+            for (HashIndexStorage shard : shards) {
+                try {
+                    snapshotRecords += shard.snapshot();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return snapshotRecords;
+        }, snapshotWriter);
+    }
+
+    /**
+     * Keys are spread over the shards by hash, so a range can only be served by scanning everything.
+     */
+    @Override
+    public List<Map.Entry<String, ByteBuffer>> scan(String startKey, String endKey, int limit) {
+        throw new UnsupportedOperationException("SCAN requires the '" + StorageEngine.LSM.getEngine() + "' storage engine");
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("keys", size());
+        stats.put("expiring_keys", getExpiringKeys());
+        return stats;
+    }
+
+    public int size() {
+        return Arrays.stream(shards).mapToInt(HashIndexStorage::size).sum();
+    }
+
+    public int getExpiringKeys() {
+        return Arrays.stream(shards).mapToInt(HashIndexStorage::getExpiringKeys).sum();
+    }
+
+    private void loadShards(ShardLoader shardLoader) throws IOException {
+        final ExecutorService shardLoaders = Executors.newFixedThreadPool(shards.length);
+        try {
+            final List<Future<?>> loadedShards = new ArrayList<>(shards.length);
+            for (HashIndexStorage shard : shards) {
+                loadedShards.add(shardLoaders.submit(() -> {
+                    shardLoader.load(shard);
+                    return null;
+                }));
+            }
+            for (Future<?> loadedShard : loadedShards) {
+                loadedShard.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Loading of " + dataDirectory + " was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Loading of " + dataDirectory + " failed", e.getCause());
+        } finally {
+            shardLoaders.shutdown();
+        }
+    }
+
+    private boolean isShardDirectory(File directory) {
+        return Arrays.stream(shards).anyMatch(shard -> shard.getDataDirectory().equals(directory));
+    }
+
+    private void deleteStoreFiles(File directory) throws IOException {
+        final File[] files = directory.listFiles(file -> file.isFile() && isStoreFile(file));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Files.delete(file.toPath());
+        }
+    }
+
+    private boolean isStoreFile(File file) {
+        final DataFilesProcessingHelper dataFilesProcessingHelper = new DataFilesProcessingHelper();
+        final String extension = new FileProcessingHelper().getFileExtension(file);
+        if (file.getName().startsWith(CacheConfigConstants.DATA_FILE_NAME_PREFIX + "-")) {
+            return dataFilesProcessingHelper.isDataFile(file) || extension.equals(HintFileManager.HINT_FILE_EXTENSION)
+                    || extension.equals(HintFileManager.TEMPORARY_FILE_EXTENSION) || extension.equals(SegmentCompactor.COMPACTION_FILE_EXTENSION);
+        }
+        return dataFilesProcessingHelper.isSnapshotFile(file) || file.getName().startsWith(DataFilesProcessingHelper.SNAPSHOT_FILE_NAME_PREFIX + "-")
+                && extension.equals(SegmentCompactor.COMPACTION_FILE_EXTENSION);
+    }
+
+    private <T> List<List<T>> splitByShard(List<T> items, Function<T, String> keyExtractor) {
+        final List<List<T>> itemsByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            itemsByShard.add(new ArrayList<>());
+        }
+        for (T item : items) {
+            itemsByShard.get(shardIndex(keyExtractor.apply(item))).add(item);
+        }
+        return itemsByShard;
+    }
+
+    /**
+     * Based on {@link String#hashCode()}, which is specified and so stays the same across restarts.
+     */
+    private int shardIndex(String key) {
+        int hash = key.hashCode();
+        hash = (hash ^ (hash >>> 16)) * 0x85ebca6b;
+        hash = (hash ^ (hash >>> 13)) * 0xc2b2ae35;
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Creates missing shard directories and refuses to open a store written with another number of shards.
+     */
+    private void checkShardDirectories() throws IOException {
+        final String[] shardDirectories = dataDirectory.list((directory, name) -> name.startsWith(SHARD_DIRECTORY_PREFIX));
+        final int existingShards = shardDirectories == null ? 0 : shardDirectories.length;
+        if (shards.length == 1 ? existingShards > 0 : existingShards > 0 && existingShards != shards.length) {
+            throw new IllegalStateException(dataDirectory + " holds " + existingShards + " shards but " + shards.length + " are configured");
+        }
+        if (shards.length == 1) {
+            return;
+        }
+        if (existingShards == 0 && !new DataFilesProcessingHelper().listSortedDataFiles(dataDirectory).isEmpty()) {
+            throw new IllegalStateException(dataDirectory + " holds an unsharded store but " + shards.length + " shards are configured");
+        }
+        for (HashIndexStorage shard : shards) {
+            if (!shard.getDataDirectory().isDirectory() && !shard.getDataDirectory().mkdirs()) {
+                throw new IOException("Could not create shard directory " + shard.getDataDirectory());
+            }
+        }
+    }
+
+    private interface ShardLoader {
+        void load(HashIndexStorage shard) throws IOException;
+    }
+}
@@ -0,0 +1,59 @@
+package src.core.storage;
+
+import src.Record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage engine behind the commands. {@link ShardedStorage} keeps a hash index over unordered segments,
+ * {@link src.core.lsm.LsmStorage} keeps keys sorted and so also serves range scans.
+ */
+public interface Storage {
+
+    void load() throws IOException;
+
+    /**
+     * Flushes pending writes and releases the files, the storage can not be used afterwards.
+     */
+    void close();
+
+    /**
+     * @return value of the key or {@code null} if it is absent, the returned buffer must not be written to
+     */
+    ByteBuffer get(String key) throws IOException;
+
+    boolean containsKey(String key) throws IOException;
+
+    CompletableFuture<Void> put(List<Record> records);
+
+    /**
+     * @return future of the number of keys that existed when their tombstones were written
+     */
+    CompletableFuture<Integer> delete(List<String> keys);
+
+    /**
+     * Persists an image of the data from which the storage loads faster than from its log.
+     *
+     * @return future of the number of records in the image
+     */
+    CompletableFuture<Integer> snapshot();
+
+    /**
+     * @param startKey first key of the range, inclusive
+     * @param endKey   end of the range, exclusive
+     * @return up to {@code limit} live entries of the range in key order
+     * @throws UnsupportedOperationException if the storage does not keep keys sorted
+     */
+    List<Map.Entry<String, ByteBuffer>> scan(String startKey, String endKey, int limit) throws IOException;
+
+    boolean isReadOnly();
+
+    /**
+     * @return state of the storage to report next to the metrics, e.g. by STATS
+     */
+    Map<String, Object> getStats();
+}
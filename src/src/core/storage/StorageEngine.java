@@ -0,0 +1,28 @@
+package src.core.storage;
+
+public enum StorageEngine {
+    HASH("hash"),
+    LSM("lsm");
+
+    final String engine;
+
+    StorageEngine(String engine) {
+        this.engine = engine;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public static StorageEngine fromProperty(String property) {
+        if (property == null) {
+            return HASH;
+        }
+        for (StorageEngine storageEngine : values()) {
+            if (storageEngine.engine.equalsIgnoreCase(property.trim())) {
+                return storageEngine;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage engine : " + property);
+    }
+}
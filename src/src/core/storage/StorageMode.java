@@ -0,0 +1,29 @@
+package src.core.storage;
+
+public enum StorageMode {
+    HEAP("heap"),
+    OFFSET("offset"),
+    CACHE("cache");
+
+    final String mode;
+
+    StorageMode(String mode) {
+        this.mode = mode;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public static StorageMode fromProperty(String property) {
+        if (property == null) {
+            return HEAP;
+        }
+        for (StorageMode storageMode : values()) {
+            if (storageMode.mode.equalsIgnoreCase(property.trim())) {
+                return storageMode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage mode : " + property);
+    }
+}
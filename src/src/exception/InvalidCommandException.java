@@ -0,0 +1,23 @@
+package src.exception;
+
+import src.Protocol;
+
+/**
+ * A well-framed command that can not be executed, e.g. an unknown command or a wrong number of arguments.
+ * Unlike a framing error, the connection stays usable and only this command is answered with an error.
+ */
+public class InvalidCommandException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Protocol protocol;
+
+    public InvalidCommandException(Protocol protocol, String message) {
+        super(message);
+        this.protocol = protocol;
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+}
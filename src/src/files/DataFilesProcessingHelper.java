@@ -4,10 +4,19 @@ import src.core.config.CacheConfigConstants;
 import src.files.exception.FileInvalidFormatException;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class DataFilesProcessingHelper {
 
+    public static final String SNAPSHOT_FILE_NAME_PREFIX = "snapshot";
+    public static final String SNAPSHOT_FILE_EXTENSION = "snap";
+
     private FileProcessingHelper fileProcessingHelper = new FileProcessingHelper();
 
     public boolean isDataFile(File file) {
@@ -28,10 +37,56 @@ public class DataFilesProcessingHelper {
     public Comparator<File> getDataFilesComparator() {
         return (firstFile, secondFile) -> {
             try {
-                return getDataFileSequenceNumber(firstFile) > getDataFileSequenceNumber(secondFile) ? 1 : -1;
+                return Long.compare(getDataFileSequenceNumber(firstFile), getDataFileSequenceNumber(secondFile));
             } catch (FileInvalidFormatException e) {
                 throw new RuntimeException(e);
             }
         };
     }
+
+    public List<File> listSortedDataFiles(File dataDirectory) {
+        final File[] dataFiles = dataDirectory.listFiles(this::isDataFile);
+        if (dataFiles == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(dataFiles).sorted(getDataFilesComparator()).collect(Collectors.toList());
+    }
+
+    public File createNewLogFileWithSeqNumber(String dataDirectoryLocation, long seqNumber) throws IOException {
+        return Files.createFile(getLogFileWithSeqNumber(dataDirectoryLocation, seqNumber).toPath()).toFile();
+    }
+
+    public File getLogFileWithSeqNumber(String dataDirectoryLocation, long seqNumber) {
+        return new File(dataDirectoryLocation + File.separator + CacheConfigConstants.DATA_FILE_NAME_PREFIX + "-" + seqNumber + "." + System.getProperty(CacheConfigConstants.DATA_FILES_EXTENSION));
+    }
+
+    public boolean isSnapshotFile(File file) {
+        return file.getName().startsWith(SNAPSHOT_FILE_NAME_PREFIX + "-") && fileProcessingHelper.getFileExtension(file).equals(SNAPSHOT_FILE_EXTENSION);
+    }
+
+    /**
+     * A snapshot takes the sequence number of the oldest segment it does not include.
+     */
+    public File getSnapshotFileWithSeqNumber(File dataDirectory, long seqNumber) {
+        return new File(dataDirectory, SNAPSHOT_FILE_NAME_PREFIX + "-" + seqNumber + "." + SNAPSHOT_FILE_EXTENSION);
+    }
+
+    /**
+     * @return snapshot files of the directory, oldest first
+     */
+    public List<File> listSortedSnapshotFiles(File dataDirectory) {
+        final File[] snapshotFiles = dataDirectory.listFiles(this::isSnapshotFile);
+        if (snapshotFiles == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(snapshotFiles).sorted(getDataFilesComparator()).collect(Collectors.toList());
+    }
+
+    /**
+     * @return newest snapshot of the directory or {@code null} if there is none
+     */
+    public File findSnapshotFile(File dataDirectory) {
+        final List<File> snapshotFiles = listSortedSnapshotFiles(dataDirectory);
+        return snapshotFiles.isEmpty() ? null : snapshotFiles.get(snapshotFiles.size() - 1);
+    }
 }
@@ -1,10 +1,22 @@
 package src.files;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 public class FileProcessingHelper {
 
     public String getFileExtension(File file) {
         return file.getName().substring(file.getName().lastIndexOf('.') + 1);
     }
-}
\ No newline at end of file
+
+    /**
+     * Makes file creations, deletions and renames within the directory durable.
+     */
+    public void syncDirectory(File directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
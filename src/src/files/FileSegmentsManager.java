@@ -1,165 +1,137 @@
 package src.files;
 
 import src.core.config.CacheConfigConstants;
-import src.core.config.InMemoryMapPopulator;
+import src.core.storage.HashIndexStorage;
 import src.files.exception.FileInvalidFormatException;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.net.URI;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+/**
+ * Decides when and what to compact. Segment rollover is done inline by the {@link SegmentWriter}; compaction
+ * runs on a single scheduled thread, woken up periodically and whenever a segment gets sealed.
+ * <p>
+ * Two policies are applied in order: while there are more than {@link CacheConfigConstants#MAX_DATA_FILES_AMOUNT}
+ * data files the oldest ones are squashed, otherwise sealed segments whose garbage ratio reached
+ * {@link CacheConfigConstants#COMPACTION_GARBAGE_RATIO} are rewritten, worst first. Segments from the
+ * {@link HashIndexStorage#getCompactionHorizon() compaction horizon} on are never touched. Merging the oldest
+ * segments drops every tombstone except those of keys the snapshot may hold, see {@link SnapshotKeyFilter}.
+ */
 public class FileSegmentsManager {
 
-    private final DataFilesProcessingHelper dataFilesProcessingHelper;
-    private final InMemoryMapPopulator inMemoryMapPopulator;
-    final String dataDirectoryLocation = System.getProperty(CacheConfigConstants.DATA_DIRECTORY_LOCATION);
+    private static final int SQUASHED_DATA_FILES_AMOUNT = 5;
 
-    public FileSegmentsManager() {
-        this.inMemoryMapPopulator = new InMemoryMapPopulator();
+    private final DataFilesProcessingHelper dataFilesProcessingHelper;
+    private final HashIndexStorage hashIndexStorage;
+    private final SegmentRegistry segmentRegistry;
+    private final SegmentCompactor segmentCompactor;
+    private final SnapshotKeyFilter snapshotKeyFilter;
+    private final ScheduledExecutorService compactionScheduler;
+    private final int maxDataFilesAmount = Integer.parseInt(System.getProperty(CacheConfigConstants.MAX_DATA_FILES_AMOUNT).trim());
+    private final double garbageRatioThreshold = Double.parseDouble(System.getProperty(CacheConfigConstants.COMPACTION_GARBAGE_RATIO, "0.5").trim());
+    private final long checkIntervalMillis = Long.parseLong(System.getProperty(CacheConfigConstants.COMPACTION_CHECK_INTERVAL_MILLIS, "1000").trim());
+
+    public FileSegmentsManager(HashIndexStorage hashIndexStorage) {
+        this.hashIndexStorage = hashIndexStorage;
+        this.segmentRegistry = hashIndexStorage.getSegmentRegistry();
+        this.segmentCompactor = new SegmentCompactor(
+                hashIndexStorage,
+                hashIndexStorage.getHintFileManager(),
+                new IoRateLimiter(Long.parseLong(System.getProperty(CacheConfigConstants.COMPACTION_MAX_BYTES_PER_SECOND, "0").trim()))
+        );
+        this.snapshotKeyFilter = new SnapshotKeyFilter(hashIndexStorage);
         this.dataFilesProcessingHelper = new DataFilesProcessingHelper();
+        this.compactionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "segment-compaction");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
     }
 
-    public void triggerWatcherThread() {
-        final Thread thread = new Thread(this::manageDirectoryContent);
-        thread.setDaemon(true);
-        thread.start();
-    }
-
-    private void manageDirectoryContent() {
-        while (true) {
-            final File dataDirectory = new File(dataDirectoryLocation);
-            final File[] dataFiles = dataDirectory.listFiles(getDataFilesFilter());
-            if (dataFiles != null) {
-                squashDataFilesIfNecessary(dataFiles);
-                archiveCurrentLogFileIfNecessary();
-            }
-        }
-    }
-
-    private FilenameFilter getDataFilesFilter() {
-        return (dir, name) -> dataFilesProcessingHelper.isDataFile(new File(dir.getAbsoluteFile() + File.separator + name));
+    public void startCompactionScheduler() {
+        deleteUnfinishedCompactionFiles();
+        hashIndexStorage.addSegmentSealedListener(sealedSegment -> compactionScheduler.execute(this::compactIfNecessary));
+        compactionScheduler.scheduleWithFixedDelay(this::compactIfNecessary, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
     }
 
-    private void squashDataFilesIfNecessary(File[] dataFiles) {
-        if (dataFiles.length > Integer.parseInt(System.getProperty(CacheConfigConstants.MAX_DATA_FILES_AMOUNT))) {
-            squashDataFilesTail(dataFiles);
-        }
+    public void stop() {
+        compactionScheduler.shutdownNow();
     }
 
-    private void squashDataFilesTail(File[] dataFiles) {
-        final List<File> tailDataFiles = getTailDataFiles(dataFiles);
-        ConcurrentMap<String, String> squashedFileContentMap = new ConcurrentHashMap<>();
-        tailDataFiles.stream().map(inMemoryMapPopulator::readValuesMapFromFile).forEach(squashedFileContentMap::putAll);
+    private void compactIfNecessary() {
+        hashIndexStorage.getCompactionLock().lock();
         try {
-            final Path squashedFile = createNewLogFileWithSeqNumber(dataDirectoryLocation, 0);
-            populateNewSquashedFile(squashedFileContentMap, squashedFile);
-            deleteTailFiles(tailDataFiles);
-            squashedFile.toFile().renameTo(new File(tailDataFiles.get(0).getAbsolutePath()));
-        } catch (IOException e) {
+            final List<File> sealedSegments = getSealedSegments();
+            final List<File> tailDataFiles = getTailDataFilesIfTooMany(sealedSegments);
+            if (tailDataFiles.size() >= 2) {
+                segmentCompactor.compact(tailDataFiles, snapshotKeyFilter.get());
+                return;
+            }
+            final List<File> garbageSegments = getSegmentsAboveGarbageRatio(sealedSegments);
+            if (!garbageSegments.isEmpty()) {
+                segmentCompactor.compact(garbageSegments, isOldestSegmentsPrefix(garbageSegments, sealedSegments) ? snapshotKeyFilter.get() : key -> true);
+            }
+        } catch (IOException | FileInvalidFormatException | RuntimeException e) {
             e.printStackTrace();
+        } finally {
+            hashIndexStorage.getCompactionLock().unlock();
         }
     }
 
-    private void deleteTailFiles(List<File> tailDataFiles) {
-        tailDataFiles.forEach(file -> {
-            try {
-                Files.deleteIfExists(file.toPath());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        });
+    private List<File> getSealedSegments() {
+        final File compactionHorizon = hashIndexStorage.getCompactionHorizon();
+        if (compactionHorizon == null) {
+            return List.of();
+        }
+        final Comparator<File> dataFilesComparator = dataFilesProcessingHelper.getDataFilesComparator();
+        return dataFilesProcessingHelper.listSortedDataFiles(hashIndexStorage.getDataDirectory()).stream()
+                .filter(dataFile -> dataFilesComparator.compare(dataFile, compactionHorizon) < 0)
+                .collect(Collectors.toList());
     }
 
-    private void populateNewSquashedFile(ConcurrentMap<String, String> squashedFileContentMap, Path squashedFile) {
-        squashedFileContentMap.forEach((key, value) -> {
-            try {
-                Files.write(
-                        squashedFile,
-                        (key + ":" + value + "\n").getBytes(StandardCharsets.UTF_8),
-                        StandardOpenOption.APPEND
-                );
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        });
+    private List<File> getTailDataFilesIfTooMany(List<File> sealedSegments) {
+        if (sealedSegments.size() + 1 <= maxDataFilesAmount) {
+            return List.of();
+        }
+        return sealedSegments.stream().limit(SQUASHED_DATA_FILES_AMOUNT).collect(Collectors.toList());
     }
 
-    private List<File> getTailDataFiles(File[] dataFiles) {
-        return Arrays.stream(dataFiles)
-                .sorted(dataFilesProcessingHelper.getDataFilesComparator())
-                .limit(5)
+    /**
+     * Rewriting a segment costs its live bytes and reclaims its garbage, so only segments with a garbage ratio
+     * of at least r are picked, which keeps the write amplification of compaction under (1 - r) / r.
+     */
+    private List<File> getSegmentsAboveGarbageRatio(List<File> sealedSegments) {
+        return sealedSegments.stream()
+                .filter(segment -> segmentRegistry.getGarbageRatio(segment) >= garbageRatioThreshold)
+                .sorted(Comparator.comparingDouble(segmentRegistry::getGarbageRatio).reversed())
+                .limit(SQUASHED_DATA_FILES_AMOUNT)
                 .collect(Collectors.toList());
     }
 
-    private void archiveCurrentLogFileIfNecessary() {
-        String currentLogFileName = getCurrentLogFileOrCreateInitialLogFileIfAbsent(dataDirectoryLocation);
-        final File currentLogFile = new File(dataDirectoryLocation + File.separator + currentLogFileName);
-        try {
-            checkCurrentLogFileSizeAndCreateNewIfRequired(dataDirectoryLocation, currentLogFile);
-        } catch (IOException | FileInvalidFormatException e) {
-            e.printStackTrace();
-        }
+    private boolean isOldestSegmentsPrefix(List<File> segments, List<File> sealedSegments) {
+        return sealedSegments.subList(0, segments.size()).containsAll(segments);
     }
 
-    private String getCurrentLogFileOrCreateInitialLogFileIfAbsent(String dataDirectoryLocation) {
-        final String currentLogFileName = determineCurrentLogFile();
-        if (currentLogFileName == null) {
+    private void deleteUnfinishedCompactionFiles() {
+        final File[] compactionFiles = hashIndexStorage.getDataDirectory().listFiles((dir, name) -> name.endsWith("." + SegmentCompactor.COMPACTION_FILE_EXTENSION));
+        if (compactionFiles == null) {
+            return;
+        }
+        for (File compactionFile : compactionFiles) {
+            System.out.printf("Deleting unfinished compaction file '%s'\n", compactionFile.getName());
             try {
-                final Path initialLogFile = createNewLogFileWithSeqNumber(dataDirectoryLocation, 1);
-                final String fileName = initialLogFile.getFileName().toString();
-                System.out.println("Creating initial log file with name " + fileName);
-                System.setProperty(CacheConfigConstants.CURRENT_LOG_FILE_NAME, fileName);
-                return fileName;
+                Files.deleteIfExists(compactionFile.toPath());
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
-        return currentLogFileName;
-    }
-
-    private String determineCurrentLogFile() {
-        final String currentLogFile = System.getProperty(CacheConfigConstants.CURRENT_LOG_FILE_NAME);
-        if (currentLogFile != null) return currentLogFile;
-        final File[] files = new File(dataDirectoryLocation).listFiles(getDataFilesFilter());
-        if (files != null && files.length != 0) {
-            final List<File> sortedLogFiles = Arrays.stream(files).sorted(dataFilesProcessingHelper.getDataFilesComparator()).collect(Collectors.toList());
-            final String writableLogFile = sortedLogFiles.get(sortedLogFiles.size() - 1).getName();
-            System.setProperty(CacheConfigConstants.CURRENT_LOG_FILE_NAME, writableLogFile);
-            return writableLogFile;
-        } else {
-            return null;
-        }
-    }
-
-    private void checkCurrentLogFileSizeAndCreateNewIfRequired(String dataDirectoryLocation, File currentLogFile)
-            throws IOException, FileInvalidFormatException {
-        final long sizeInBytes = Files.size(currentLogFile.toPath());
-        final long sizeInKilobytes = sizeInBytes / 1024;
-        if (sizeInKilobytes >= Integer.parseInt(System.getProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES))) {
-            switchToNewLogFile(dataDirectoryLocation, currentLogFile);
-        }
-    }
-
-    private void switchToNewLogFile(String dataDirectoryLocation, File currentLogFile) throws FileInvalidFormatException, IOException {
-        long currentLogFileSeqNumber = dataFilesProcessingHelper.getDataFileSequenceNumber(currentLogFile);
-        final Path newLogFile = createNewLogFileWithSeqNumber(dataDirectoryLocation, currentLogFileSeqNumber + 1);
-        System.out.printf("Archiving : '%s', Creating : '%s'\n", currentLogFile.getName(), newLogFile.getFileName().toString());
-        System.setProperty(CacheConfigConstants.CURRENT_LOG_FILE_NAME, newLogFile.getFileName().toString());
-    }
-
-    private Path createNewLogFileWithSeqNumber(String dataDirectoryLocation, long currentLogFileSeqNumber) throws IOException {
-        return Files.createFile(Paths.get(URI.create("file:///" + dataDirectoryLocation + File.separator + CacheConfigConstants.DATA_FILE_NAME_PREFIX + "-" + currentLogFileSeqNumber + "." + System.getProperty(CacheConfigConstants.DATA_FILES_EXTENSION))));
     }
 }
@@ -0,0 +1,184 @@
+package src.files;
+
+import src.core.index.RecordLocation;
+import src.files.exception.FileInvalidFormatException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Hint files are sidecars of sealed segments listing the location of every record, so the index can be
+ * rebuilt without reading any value. Layout:
+ * <pre>
+ * | magic (4) | segment size (8) | entries... | crc32c (4) |
+ * entry : | timestamp (8) | flags (1) | key length (4) | record offset (8) | record size (4) | key | [expires at (8)] |
+ * </pre>
+ * The expiry time follows the key only if the flags contain {@link RecordCodec#EXPIRES_FLAG}.
+ * A hint whose recorded segment size differs from the actual one is stale and ignored.
+ */
+public class HintFileManager {
+
+    public static final String HINT_FILE_EXTENSION = "hint";
+    public static final String TEMPORARY_FILE_EXTENSION = "tmp";
+
+    private static final int HINT_MAGIC = 0x4B564831;
+    private static final int HINT_HEADER_SIZE = 12;
+    private static final int HINT_ENTRY_HEADER_SIZE = 25;
+    private static final int HINT_TRAILER_SIZE = 4;
+
+    private final SegmentScanner segmentScanner = new SegmentScanner();
+    private final ExecutorService hintWriterExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "hint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public File getHintFile(File segmentFile) {
+        final String segmentFileName = segmentFile.getName();
+        final String hintFileName = segmentFileName.substring(0, segmentFileName.lastIndexOf('.') + 1) + HINT_FILE_EXTENSION;
+        return new File(segmentFile.getParentFile(), hintFileName);
+    }
+
+    public void writeHintFileAsync(File segmentFile) {
+        hintWriterExecutor.execute(() -> {
+            try {
+                writeHintFile(segmentFile);
+            } catch (IOException | FileInvalidFormatException e) {
+                System.out.printf("Could not write hint file for '%s' : %s\n", segmentFile.getName(), e);
+            }
+        });
+    }
+
+    public void writeHintFile(File segmentFile) throws IOException, FileInvalidFormatException {
+        final File hintFile = getHintFile(segmentFile);
+        final File temporaryHintFile = new File(hintFile.getParentFile(), hintFile.getName() + "." + TEMPORARY_FILE_EXTENSION);
+        final CRC32C crc = new CRC32C();
+        try (FileOutputStream fileOutputStream = new FileOutputStream(temporaryHintFile);
+             DataOutputStream hintOutput = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOutputStream), crc))) {
+            hintOutput.writeInt(HINT_MAGIC);
+            hintOutput.writeLong(segmentFile.length());
+            final IOException[] writeFailure = new IOException[1];
+            final long validSegmentSize = segmentScanner.scan(segmentFile, 0, (buffer, recordPosition, location) -> {
+                if (writeFailure[0] != null) {
+                    return;
+                }
+                try {
+                    final byte[] key = RecordCodec.decodeKey(buffer, recordPosition).getBytes(StandardCharsets.UTF_8);
+                    hintOutput.writeLong(RecordCodec.getTimestamp(buffer, recordPosition));
+                    final long expiresAt = RecordCodec.getExpiresAt(buffer, recordPosition);
+                    hintOutput.writeByte((RecordCodec.isTombstone(buffer, recordPosition) ? RecordCodec.TOMBSTONE_FLAG : 0) | (expiresAt != 0 ? RecordCodec.EXPIRES_FLAG : 0));
+                    hintOutput.writeInt(key.length);
+                    hintOutput.writeLong(location.getOffset());
+                    hintOutput.writeInt(location.getLength());
+                    hintOutput.write(key);
+                    if (expiresAt != 0) {
+                        hintOutput.writeLong(expiresAt);
+                    }
+                } catch (IOException e) {
+                    writeFailure[0] = e;
+                }
+            });
+            if (writeFailure[0] != null) {
+                throw writeFailure[0];
+            }
+            if (validSegmentSize != segmentFile.length()) {
+                throw new IOException("Segment changed while its hint file was written");
+            }
+            hintOutput.flush();
+            final int checksum = (int) crc.getValue();
+            fileOutputStream.write(ByteBuffer.allocate(HINT_TRAILER_SIZE).putInt(checksum).array());
+            fileOutputStream.getFD().sync();
+        } catch (IOException | FileInvalidFormatException e) {
+            Files.deleteIfExists(temporaryHintFile.toPath());
+            throw e;
+        }
+        Files.move(temporaryHintFile.toPath(), hintFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return {@code false} if the segment has no usable hint file and has to be scanned instead
+     */
+    public boolean readHintFile(File segmentFile, int segmentId, HintVisitor visitor) {
+        final File hintFile = getHintFile(segmentFile);
+        if (!hintFile.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(hintFile.toPath(), StandardOpenOption.READ)) {
+            final long hintSize = channel.size();
+            if (hintSize < HINT_HEADER_SIZE + HINT_TRAILER_SIZE || hintSize > Integer.MAX_VALUE) {
+                return false;
+            }
+            final ByteBuffer hint = channel.map(FileChannel.MapMode.READ_ONLY, 0, hintSize);
+            final int entriesEnd = (int) hintSize - HINT_TRAILER_SIZE;
+            final CRC32C crc = new CRC32C();
+            crc.update(hint.duplicate().limit(entriesEnd));
+            if (hint.getInt(0) != HINT_MAGIC || hint.getInt(entriesEnd) != (int) crc.getValue()
+                    || hint.getLong(4) != segmentFile.length()) {
+                return false;
+            }
+            int position = HINT_HEADER_SIZE;
+            while (position < entriesEnd) {
+                final long timestamp = hint.getLong(position);
+                final byte flags = hint.get(position + 8);
+                final boolean tombstone = (flags & RecordCodec.TOMBSTONE_FLAG) != 0;
+                final int keyLength = hint.getInt(position + 9);
+                final long recordOffset = hint.getLong(position + 13);
+                final int recordSize = hint.getInt(position + 21);
+                final byte[] key = new byte[keyLength];
+                hint.get(position + HINT_ENTRY_HEADER_SIZE, key);
+                position += HINT_ENTRY_HEADER_SIZE + keyLength;
+                long expiresAt = 0;
+                if ((flags & RecordCodec.EXPIRES_FLAG) != 0) {
+                    expiresAt = hint.getLong(position);
+                    position += RecordCodec.EXPIRES_AT_SIZE;
+                }
+                visitor.visit(new String(key, StandardCharsets.UTF_8), new RecordLocation(segmentId, recordOffset, recordSize), timestamp, tombstone, expiresAt);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.printf("Ignoring unreadable hint file '%s' : %s\n", hintFile.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Waits for the hint files being written asynchronously.
+     */
+    public void close() {
+        hintWriterExecutor.shutdown();
+        try {
+            hintWriterExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void deleteHintFile(File segmentFile) {
+        try {
+            Files.deleteIfExists(getHintFile(segmentFile).toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public interface HintVisitor {
+        /**
+         * @param expiresAt expiry time of the record in epoch millis or {@code 0} if it never expires
+         */
+        void visit(String key, RecordLocation location, long timestamp, boolean tombstone, long expiresAt);
+    }
+}
@@ -0,0 +1,28 @@
+package src.files;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces background I/O to a number of bytes per second. A non-positive rate disables the limit.
+ */
+public class IoRateLimiter {
+
+    private final long bytesPerSecond;
+    private long nextFreeNanos = System.nanoTime();
+
+    public IoRateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        final long now = System.nanoTime();
+        nextFreeNanos = Math.max(nextFreeNanos, now) + TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+        final long waitNanos = nextFreeNanos - now;
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
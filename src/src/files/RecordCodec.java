@@ -0,0 +1,180 @@
+package src.files;
+
+import src.Record;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary layout of the data segments. Every segment starts with {@link #SEGMENT_MAGIC} followed by records:
+ * <pre>
+ * | crc32c (4) | timestamp (8) | flags (1) | key length (4) | value length (4) | key | [expires at (8)] | value |
+ * </pre>
+ * The expiry time in epoch millis is only present if {@link #EXPIRES_FLAG} is set. The value is compressed
+ * by {@link ValueCompression} if {@link #COMPRESSED_FLAG} is set.
+ * The checksum covers everything after itself, so a torn or corrupted record is detected before it is used.
+ */
+public final class RecordCodec {
+
+    public static final int SEGMENT_MAGIC = 0x4B565331;
+    public static final int SEGMENT_HEADER_SIZE = 4;
+    public static final int RECORD_HEADER_SIZE = 21;
+    public static final byte TOMBSTONE_FLAG = 1;
+    public static final byte EXPIRES_FLAG = 2;
+    public static final byte COMPRESSED_FLAG = 4;
+    public static final int EXPIRES_AT_SIZE = 8;
+
+    public static final int INCOMPLETE = -1;
+    public static final int CORRUPTED = -2;
+
+    private static final int TIMESTAMP_OFFSET = 4;
+    private static final int FLAGS_OFFSET = 12;
+    private static final int KEY_LENGTH_OFFSET = 13;
+    private static final int VALUE_LENGTH_OFFSET = 17;
+
+    private RecordCodec() {
+    }
+
+    public static int encodedSize(int keyLength, int valueLength) {
+        return RECORD_HEADER_SIZE + keyLength + valueLength;
+    }
+
+    public static int encodedSize(int keyLength, int valueLength, byte flags) {
+        return encodedSize(keyLength, valueLength) + ((flags & EXPIRES_FLAG) != 0 ? EXPIRES_AT_SIZE : 0);
+    }
+
+    public static byte flags(Record record) {
+        return (byte) ((record.isTombstone() ? TOMBSTONE_FLAG : 0)
+                | (record.getExpiresAtMillis() != 0 ? EXPIRES_FLAG : 0)
+                | (record.isCompressed() ? COMPRESSED_FLAG : 0));
+    }
+
+    public static ByteBuffer segmentHeader() {
+        final ByteBuffer segmentHeader = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).putInt(SEGMENT_MAGIC);
+        segmentHeader.flip();
+        return segmentHeader;
+    }
+
+    public static ByteBuffer encode(String key, String value, long timestamp, byte flags) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(encodedSize(keyBytes.length, valueBytes.length));
+        encode(record, keyBytes, valueBytes, timestamp, flags);
+        record.flip();
+        return record;
+    }
+
+    public static void encode(ByteBuffer target, byte[] key, byte[] value, long timestamp, byte flags) {
+        encode(target, key, value, timestamp, flags, 0);
+    }
+
+    /**
+     * @param expiresAtMillis expiry time, written only if the flags contain {@link #EXPIRES_FLAG}
+     */
+    public static void encode(ByteBuffer target, byte[] key, byte[] value, long timestamp, byte flags, long expiresAtMillis) {
+        final int start = target.position();
+        target.position(start + TIMESTAMP_OFFSET);
+        target.putLong(timestamp).put(flags).putInt(key.length).putInt(value.length).put(key);
+        if ((flags & EXPIRES_FLAG) != 0) {
+            target.putLong(expiresAtMillis);
+        }
+        target.put(value);
+        target.putInt(start, checksum(target, start, target.position()));
+    }
+
+    /**
+     * @return size of the record starting at {@code position}, {@link #INCOMPLETE} if the buffer ends before
+     * the record does or {@link #CORRUPTED} if the record can not be trusted
+     */
+    public static int checkRecord(ByteBuffer buffer, int position, int limit) {
+        if (limit - position < RECORD_HEADER_SIZE) {
+            return INCOMPLETE;
+        }
+        final int keyLength = buffer.getInt(position + KEY_LENGTH_OFFSET);
+        final int valueLength = buffer.getInt(position + VALUE_LENGTH_OFFSET);
+        if (keyLength < 0 || valueLength < 0 || (long) RECORD_HEADER_SIZE + EXPIRES_AT_SIZE + keyLength + valueLength > Integer.MAX_VALUE) {
+            return CORRUPTED;
+        }
+        final int recordSize = encodedSize(keyLength, valueLength, buffer.get(position + FLAGS_OFFSET));
+        if (limit - position < recordSize) {
+            return INCOMPLETE;
+        }
+        if (buffer.getInt(position) != checksum(buffer, position, position + recordSize)) {
+            return CORRUPTED;
+        }
+        return recordSize;
+    }
+
+    public static long getTimestamp(ByteBuffer buffer, int position) {
+        return buffer.getLong(position + TIMESTAMP_OFFSET);
+    }
+
+    public static boolean isTombstone(ByteBuffer buffer, int position) {
+        return (buffer.get(position + FLAGS_OFFSET) & TOMBSTONE_FLAG) != 0;
+    }
+
+    public static boolean isCompressed(ByteBuffer buffer, int position) {
+        return (buffer.get(position + FLAGS_OFFSET) & COMPRESSED_FLAG) != 0;
+    }
+
+    /**
+     * @return expiry time of the record in epoch millis or {@code 0} if it never expires
+     */
+    public static long getExpiresAt(ByteBuffer buffer, int position) {
+        if ((buffer.get(position + FLAGS_OFFSET) & EXPIRES_FLAG) == 0) {
+            return 0;
+        }
+        return buffer.getLong(position + RECORD_HEADER_SIZE + buffer.getInt(position + KEY_LENGTH_OFFSET));
+    }
+
+    public static String decodeKey(ByteBuffer buffer, int position) {
+        final int keyLength = buffer.getInt(position + KEY_LENGTH_OFFSET);
+        return decodeString(buffer, position + RECORD_HEADER_SIZE, keyLength);
+    }
+
+    /**
+     * @return view of the value bytes of the record, sharing the content of the given buffer
+     */
+    public static ByteBuffer sliceValue(ByteBuffer buffer, int position) {
+        final int keyLength = buffer.getInt(position + KEY_LENGTH_OFFSET);
+        final int valueLength = buffer.getInt(position + VALUE_LENGTH_OFFSET);
+        final int expiresAtSize = (buffer.get(position + FLAGS_OFFSET) & EXPIRES_FLAG) != 0 ? EXPIRES_AT_SIZE : 0;
+        return buffer.slice(position + RECORD_HEADER_SIZE + keyLength + expiresAtSize, valueLength);
+    }
+
+    /**
+     * @return the record with a copy of its value, which is left compressed if it is
+     */
+    public static Record decodeRecord(ByteBuffer buffer, int position) {
+        final String key = decodeKey(buffer, position);
+        if (isTombstone(buffer, position)) {
+            final Record tombstone = Record.tombstone(key);
+            tombstone.setTimestampMillis(getTimestamp(buffer, position));
+            return tombstone;
+        }
+        final ByteBuffer value = sliceValue(buffer, position);
+        final byte[] valueBytes = new byte[value.remaining()];
+        value.get(valueBytes);
+        final Record record = new Record(key, valueBytes);
+        record.setExpiresAtMillis(getExpiresAt(buffer, position));
+        record.setCompressed(isCompressed(buffer, position));
+        record.setTimestampMillis(getTimestamp(buffer, position));
+        return record;
+    }
+
+    private static String decodeString(ByteBuffer buffer, int position, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer buffer, int recordStart, int recordEnd) {
+        final CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().limit(recordEnd).position(recordStart + TIMESTAMP_OFFSET));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,249 @@
+package src.files;
+
+import src.core.index.RecordLocation;
+import src.core.storage.HashIndexStorage;
+import src.files.exception.FileInvalidFormatException;
+import src.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Merges segments by streaming their live records into one output segment. A record is live when the index
+ * still points to it, so newest-wins needs no per-key state and memory stays bounded by the output buffer.
+ * <p>
+ * Expired records are dropped as well. Like a deletion, an expiry has to shadow older records of the key
+ * in segments outside the merge, so an expired record is replaced by a tombstone if an older record of the key may exist.
+ * <p>
+ * The output takes the name (and so the sequence number) of the newest merged segment: every record it holds
+ * was the latest version of its key, hence no segment outside the merge may shadow it on recovery.
+ */
+public class SegmentCompactor {
+
+    public static final String COMPACTION_FILE_EXTENSION = "compacting";
+
+    private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+    private static final int RATE_LIMITED_CHUNK_SIZE = 64 * 1024;
+
+    private final HashIndexStorage hashIndexStorage;
+    private final SegmentRegistry segmentRegistry;
+    private final HintFileManager hintFileManager;
+    private final DataFilesProcessingHelper dataFilesProcessingHelper;
+    private final FileProcessingHelper fileProcessingHelper;
+    private final SegmentScanner segmentScanner;
+    private final IoRateLimiter ioRateLimiter;
+
+    public SegmentCompactor(HashIndexStorage hashIndexStorage, HintFileManager hintFileManager, IoRateLimiter ioRateLimiter) {
+        this.hashIndexStorage = hashIndexStorage;
+        this.segmentRegistry = hashIndexStorage.getSegmentRegistry();
+        this.hintFileManager = hintFileManager;
+        this.ioRateLimiter = ioRateLimiter;
+        this.dataFilesProcessingHelper = new DataFilesProcessingHelper();
+        this.fileProcessingHelper = new FileProcessingHelper();
+        this.segmentScanner = new SegmentScanner();
+    }
+
+    /**
+     * @param segments  segments to merge, none of them may be the active one
+     * @param olderKeys whether a key may have a record older than the merged segments, only then its tombstone is kept
+     */
+    public void compact(List<File> segments, Predicate<String> olderKeys) throws IOException, FileInvalidFormatException {
+        final long startNanos = System.nanoTime();
+        final long compactionStartMillis = System.currentTimeMillis();
+        final List<File> sortedSegments = segments.stream()
+                .sorted(dataFilesProcessingHelper.getDataFilesComparator())
+                .collect(Collectors.toList());
+        final File newestSegment = sortedSegments.get(sortedSegments.size() - 1);
+        final long mergedBytes = sortedSegments.stream().mapToLong(File::length).sum();
+        final List<Integer> mergedSegmentIds = new ArrayList<>();
+        for (File segment : sortedSegments) {
+            final int segmentId = segmentRegistry.register(segment);
+            segmentRegistry.open(segmentId);
+            mergedSegmentIds.add(segmentId);
+        }
+        final File compactionFile = new File(newestSegment.getParentFile(), newestSegment.getName() + "." + COMPACTION_FILE_EXTENSION);
+        final long compactedBytes;
+        try (CompactionOutput output = new CompactionOutput(compactionFile)) {
+            for (int i = 0; i < sortedSegments.size(); i++) {
+                final int segmentId = mergedSegmentIds.get(i);
+                segmentScanner.scan(sortedSegments.get(i), segmentId, (buffer, recordPosition, location) -> {
+                    output.throttle(location.getLength());
+                    final String key = RecordCodec.decodeKey(buffer, recordPosition);
+                    final boolean tombstone = RecordCodec.isTombstone(buffer, recordPosition);
+                    final long expiresAt = RecordCodec.getExpiresAt(buffer, recordPosition);
+                    if (expiresAt != 0 && expiresAt <= compactionStartMillis) {
+                        hashIndexStorage.expire(key, location);
+                        if (hashIndexStorage.isLive(key, location)) {
+                            output.copy(key, buffer, recordPosition, location, false);
+                        } else if (!hashIndexStorage.containsKey(key) && olderKeys.test(key)) {
+                            output.writeTombstone(key, RecordCodec.getTimestamp(buffer, recordPosition));
+                        }
+                    } else if (tombstone ? !hashIndexStorage.containsKey(key) && olderKeys.test(key) : hashIndexStorage.isLive(key, location)) {
+                        output.copy(key, buffer, recordPosition, location, tombstone);
+                    }
+                });
+            }
+            compactedBytes = output.finish();
+        } catch (CompactionFailedException e) {
+            Files.deleteIfExists(compactionFile.toPath());
+            throw (IOException) e.getCause();
+        } catch (IOException | FileInvalidFormatException | RuntimeException e) {
+            Files.deleteIfExists(compactionFile.toPath());
+            throw e;
+        }
+        // the hint of the newest segment must be gone before the output takes its name, it would describe the wrong records
+        Files.deleteIfExists(hintFileManager.getHintFile(newestSegment).toPath());
+        fileProcessingHelper.syncDirectory(newestSegment.getParentFile());
+        Files.move(compactionFile.toPath(), newestSegment.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        segmentRegistry.rename(segmentRegistry.findSegmentId(compactionFile), newestSegment);
+        mergedSegmentIds.forEach(segmentRegistry::retire);
+        for (File segment : sortedSegments) {
+            hintFileManager.deleteHintFile(segment);
+            if (segment != newestSegment) {
+                Files.deleteIfExists(segment.toPath());
+            }
+        }
+        hintFileManager.writeHintFile(newestSegment);
+        Metrics.COMPACTIONS.increment();
+        Metrics.COMPACTION_RECLAIMED_BYTES.add(mergedBytes - compactedBytes);
+        Metrics.COMPACTION_DURATION.recordNanos(System.nanoTime() - startNanos);
+        System.out.printf("Compacted %s segments (%s bytes) into '%s' (%s bytes) in %s ms\n", sortedSegments.size(),
+                mergedBytes, newestSegment.getName(), compactedBytes, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    /**
+     * Buffered writer of the compaction file. Index entries are re-pointed to the copied records as soon as
+     * they are written, which is safe because the compaction file is registered as a readable segment up front.
+     */
+    private class CompactionOutput implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final int segmentId;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+        private final List<String> pendingKeys = new ArrayList<>();
+        private final List<RecordLocation> pendingSources = new ArrayList<>();
+        private final List<RecordLocation> pendingTargets = new ArrayList<>();
+        private long size;
+        private long unthrottledBytes;
+
+        CompactionOutput(File compactionFile) throws IOException {
+            this.channel = FileChannel.open(compactionFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            writeFully(RecordCodec.segmentHeader());
+            this.size = RecordCodec.SEGMENT_HEADER_SIZE;
+            this.segmentId = segmentRegistry.register(compactionFile);
+            segmentRegistry.open(segmentId);
+        }
+
+        void copy(String key, ByteBuffer source, int recordPosition, RecordLocation sourceLocation, boolean tombstone) {
+            try {
+                final int recordSize = sourceLocation.getLength();
+                if (recordSize > buffer.remaining()) {
+                    flush();
+                }
+                final ByteBuffer record = source.duplicate().limit(recordPosition + recordSize).position(recordPosition);
+                if (recordSize > buffer.capacity()) {
+                    writeFully(record);
+                } else {
+                    buffer.put(record);
+                }
+                if (tombstone) {
+                    segmentRegistry.addLiveBytes(segmentId, recordSize);
+                } else {
+                    pendingKeys.add(key);
+                    pendingSources.add(sourceLocation);
+                    pendingTargets.add(new RecordLocation(segmentId, size, recordSize));
+                }
+                size += recordSize;
+            } catch (IOException e) {
+                throw new CompactionFailedException(e);
+            }
+        }
+
+        void writeTombstone(String key, long timestamp) {
+            try {
+                final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                final int recordSize = RecordCodec.encodedSize(keyBytes.length, 0);
+                if (recordSize > buffer.remaining()) {
+                    flush();
+                }
+                if (recordSize > buffer.capacity()) {
+                    final ByteBuffer record = ByteBuffer.allocate(recordSize);
+                    RecordCodec.encode(record, keyBytes, new byte[0], timestamp, RecordCodec.TOMBSTONE_FLAG);
+                    writeFully(record.flip());
+                } else {
+                    RecordCodec.encode(buffer, keyBytes, new byte[0], timestamp, RecordCodec.TOMBSTONE_FLAG);
+                }
+                segmentRegistry.addLiveBytes(segmentId, recordSize);
+                size += recordSize;
+            } catch (IOException e) {
+                throw new CompactionFailedException(e);
+            }
+        }
+
+        /**
+         * Keeps compaction I/O under the configured rate, so it does not starve foreground reads and writes.
+         */
+        void throttle(int scannedBytes) {
+            unthrottledBytes += scannedBytes;
+            if (unthrottledBytes < RATE_LIMITED_CHUNK_SIZE) {
+                return;
+            }
+            try {
+                ioRateLimiter.acquire(unthrottledBytes);
+                unthrottledBytes = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompactionFailedException(new InterruptedIOException("Compaction was interrupted"));
+            }
+        }
+
+        long finish() throws IOException {
+            flush();
+            channel.force(true);
+            return size;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+            for (int i = 0; i < pendingKeys.size(); i++) {
+                hashIndexStorage.relocate(pendingKeys.get(i), pendingSources.get(i), pendingTargets.get(i));
+            }
+            pendingKeys.clear();
+            pendingSources.clear();
+            pendingTargets.clear();
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static class CompactionFailedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        CompactionFailedException(IOException cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package src.files;
+
+import src.core.index.RecordLocation;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the data segments the index points into. Segment ids are assigned at runtime
+ * and never reused, so a location can never silently resolve to a file that replaced its segment
+ * (e.g. the result of compaction, which is renamed to the name of the newest compacted segment).
+ */
+public class SegmentRegistry {
+
+    private final AtomicInteger segmentIdSequence = new AtomicInteger();
+    private final ConcurrentMap<Integer, Segment> segmentsById = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> segmentIdsByFileName = new ConcurrentHashMap<>();
+
+    public int register(File segmentFile) {
+        return segmentIdsByFileName.computeIfAbsent(segmentFile.getName(), fileName -> {
+            final int segmentId = segmentIdSequence.incrementAndGet();
+            segmentsById.put(segmentId, new Segment(segmentFile));
+            return segmentId;
+        });
+    }
+
+    public Integer findSegmentId(File segmentFile) {
+        return segmentIdsByFileName.get(segmentFile.getName());
+    }
+
+    /**
+     * Tracks how many bytes of the segment the index still points to, the rest of the segment is garbage.
+     */
+    public void addLiveBytes(int segmentId, long liveBytes) {
+        final Segment segment = segmentsById.get(segmentId);
+        if (segment != null) {
+            segment.liveBytes.addAndGet(liveBytes);
+        }
+    }
+
+    public double getGarbageRatio(File segmentFile) {
+        final Integer segmentId = findSegmentId(segmentFile);
+        final Segment segment = segmentId == null ? null : segmentsById.get(segmentId);
+        final long recordBytes = segmentFile.length() - RecordCodec.SEGMENT_HEADER_SIZE;
+        if (segment == null || recordBytes <= 0) {
+            return 0;
+        }
+        final long liveBytes = Math.max(0, Math.min(segment.liveBytes.get(), recordBytes));
+        return 1 - (double) liveBytes / recordBytes;
+    }
+
+    public void open(int segmentId) throws IOException {
+        final Segment segment = segmentsById.get(segmentId);
+        if (segment != null) {
+            segment.getChannel();
+        }
+    }
+
+    public void rename(int segmentId, File renamedSegmentFile) {
+        final Segment segment = segmentsById.get(segmentId);
+        if (segment == null) {
+            return;
+        }
+        segmentIdsByFileName.remove(segment.file.getName(), segmentId);
+        segment.file = renamedSegmentFile;
+        segmentIdsByFileName.put(renamedSegmentFile.getName(), segmentId);
+    }
+
+    public void retire(int segmentId) {
+        final Segment segment = segmentsById.remove(segmentId);
+        if (segment != null) {
+            segmentIdsByFileName.remove(segment.file.getName(), segmentId);
+            segment.close();
+        }
+    }
+
+    public void close() {
+        segmentsById.keySet().forEach(this::retire);
+    }
+
+    /**
+     * @return bytes stored at the given location or {@code null} if its segment was retired meanwhile,
+     * in which case the caller is expected to look the key up in the index again
+     */
+    public byte[] read(RecordLocation location) throws IOException {
+        final Segment segment = segmentsById.get(location.getSegmentId());
+        if (segment == null) {
+            return null;
+        }
+        try {
+            final FileChannel channel = segment.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate(location.getLength());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, location.getOffset() + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of segment " + segment.file.getName());
+                }
+            }
+            return buffer.array();
+        } catch (ClosedChannelException e) {
+            return null;
+        }
+    }
+
+    private static class Segment {
+
+        private final AtomicLong liveBytes = new AtomicLong();
+        private volatile File file;
+        private volatile FileChannel channel;
+        private volatile boolean closed;
+
+        Segment(File file) {
+            this.file = file;
+        }
+
+        FileChannel getChannel() throws IOException {
+            FileChannel currentChannel = channel;
+            if (currentChannel == null) {
+                synchronized (this) {
+                    if (closed) {
+                        throw new ClosedChannelException();
+                    }
+                    if (channel == null) {
+                        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    }
+                    currentChannel = channel;
+                }
+            }
+            return currentChannel;
+        }
+
+        synchronized void close() {
+            closed = true;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
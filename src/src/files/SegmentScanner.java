@@ -0,0 +1,121 @@
+package src.files;
+
+import src.core.index.RecordLocation;
+import src.files.exception.FileInvalidFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Walks the records of a segment through a memory mapping of it, so scanning costs no copies into heap buffers.
+ * Segments larger than {@link #MAX_MAPPED_REGION_SIZE} are mapped region by region.
+ */
+public class SegmentScanner {
+
+    private static final long MAX_MAPPED_REGION_SIZE = 1024L * 1024 * 1024;
+
+    /**
+     * Visits every valid record of the segment. Only the active segment may end in a torn write, so its tail is
+     * cut off when nothing valid follows the first bad record, and the next append continues right after the
+     * last valid record. A bad record anywhere else is corruption and fails the recovery, nothing is cut then.
+     *
+     * @param activeSegment whether the segment is the newest one, which the writer appends to
+     * @return length of the valid part of the segment
+     */
+    public long recover(File segmentFile, int segmentId, boolean activeSegment, SegmentRecordVisitor visitor)
+            throws IOException, FileInvalidFormatException {
+        return scan(segmentFile, segmentId, visitor, true, activeSegment);
+    }
+
+    /**
+     * Visits every valid record of the segment without modifying it.
+     *
+     * @return length of the valid part of the segment
+     */
+    public long scan(File segmentFile, int segmentId, SegmentRecordVisitor visitor) throws IOException, FileInvalidFormatException {
+        return scan(segmentFile, segmentId, visitor, false, false);
+    }
+
+    private long scan(File segmentFile, int segmentId, SegmentRecordVisitor visitor, boolean recovering, boolean activeSegment)
+            throws IOException, FileInvalidFormatException {
+        final StandardOpenOption[] openOptions = recovering && activeSegment
+                ? new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ};
+        try (FileChannel channel = FileChannel.open(segmentFile.toPath(), openOptions)) {
+            final long segmentSize = channel.size();
+            if (segmentSize == 0) {
+                return 0;
+            }
+            if (segmentSize < RecordCodec.SEGMENT_HEADER_SIZE) {
+                return recovering ? recoverFrom(segmentFile, channel, 0, activeSegment) : 0;
+            }
+            long regionStart = 0;
+            long regionSize = Math.min(segmentSize, MAX_MAPPED_REGION_SIZE);
+            ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize);
+            if (region.getInt(0) != RecordCodec.SEGMENT_MAGIC) {
+                throw new FileInvalidFormatException();
+            }
+            int position = RecordCodec.SEGMENT_HEADER_SIZE;
+            while (true) {
+                final int recordSize = RecordCodec.checkRecord(region, position, region.limit());
+                if (recordSize > 0) {
+                    visitor.visit(region, position, new RecordLocation(segmentId, regionStart + position, recordSize));
+                    position += recordSize;
+                } else if (recordSize == RecordCodec.INCOMPLETE && regionStart + region.limit() < segmentSize) {
+                    regionSize = position == 0 ? Math.min(regionSize * 2, Integer.MAX_VALUE) : regionSize;
+                    regionStart += position;
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(segmentSize - regionStart, regionSize));
+                    position = 0;
+                } else if (regionStart + position == segmentSize) {
+                    return segmentSize;
+                } else {
+                    return recovering ? recoverFrom(segmentFile, channel, regionStart + position, activeSegment) : regionStart + position;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the first bad record of a recovered segment, found at {@code validLength}.
+     */
+    private long recoverFrom(File segmentFile, FileChannel channel, long validLength, boolean activeSegment) throws IOException {
+        if (!activeSegment) {
+            throw new IOException(String.format("Sealed segment '%s' is corrupted at offset %s", segmentFile.getName(), validLength));
+        }
+        if (hasValidRecordAfter(channel, validLength)) {
+            throw new IOException(String.format("Segment '%s' is corrupted at offset %s, followed by valid records", segmentFile.getName(), validLength));
+        }
+        System.out.printf("Truncating torn tail of '%s' : %s -> %s bytes\n", segmentFile.getName(), channel.size(), validLength);
+        channel.truncate(validLength);
+        return validLength;
+    }
+
+    /**
+     * Probes every offset after the bad record for a record with a valid checksum. Regions overlap by half,
+     * so any record up to half a region long is found whole in one of them.
+     */
+    private boolean hasValidRecordAfter(FileChannel channel, long offset) throws IOException {
+        final long segmentSize = channel.size();
+        long regionStart = offset + 1;
+        while (regionStart < segmentSize) {
+            final int regionSize = (int) Math.min(segmentSize - regionStart, MAX_MAPPED_REGION_SIZE);
+            final boolean lastRegion = regionStart + regionSize == segmentSize;
+            final int probedLength = lastRegion ? regionSize : regionSize / 2;
+            final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize);
+            for (int position = 0; position < probedLength; position++) {
+                if (RecordCodec.checkRecord(region, position, regionSize) > 0) {
+                    return true;
+                }
+            }
+            regionStart += probedLength;
+        }
+        return false;
+    }
+
+    public interface SegmentRecordVisitor {
+        void visit(ByteBuffer buffer, int recordPosition, RecordLocation location);
+    }
+}
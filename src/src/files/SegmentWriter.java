@@ -0,0 +1,386 @@
+package src.files;
+
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.RecordLocation;
+import src.files.exception.FileInvalidFormatException;
+import src.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single appender of the active log file. PUTs coming from all connections are queued and written by one
+ * thread in batches, so a batch costs one write (plus at most one fsync) no matter how many records it holds.
+ */
+public class SegmentWriter {
+
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_BATCH_REQUESTS = 4096;
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final SegmentRegistry segmentRegistry;
+    private final AppendListener appendListener;
+    private final WriteDurability writeDurability;
+    private final long fsyncIntervalMillis;
+    private final BlockingQueue<AppendRequest> appendRequests = new LinkedBlockingQueue<>();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final DataFilesProcessingHelper dataFilesProcessingHelper = new DataFilesProcessingHelper();
+    private final File dataDirectory;
+    private final long maxSegmentSizeInBytes = Long.parseLong(System.getProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES).trim()) * 1024;
+    private final ValueCompression valueCompression = ValueCompression.fromProperty(System.getProperty(CacheConfigConstants.VALUE_COMPRESSION));
+    private final int compressionMinBytes = Integer.parseInt(System.getProperty(CacheConfigConstants.VALUE_COMPRESSION_MIN_BYTES, "256").trim());
+    private volatile boolean running;
+    private Thread writerThread;
+    private volatile File activeSegment;
+    private volatile CommittedPosition committedPosition;
+    private int activeSegmentId;
+    private FileChannel activeChannel;
+    private long activeSegmentSize;
+    private long failedBatchStartSize = -1;
+    private boolean unsyncedWrites;
+    private long lastFsyncMillis;
+
+    public SegmentWriter(File dataDirectory, SegmentRegistry segmentRegistry, WriteDurability writeDurability, long fsyncIntervalMillis,
+                         AppendListener appendListener) {
+        this.dataDirectory = dataDirectory;
+        this.segmentRegistry = segmentRegistry;
+        this.writeDurability = writeDurability;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.appendListener = appendListener;
+    }
+
+    public void start() throws IOException {
+        openActiveSegment(getCurrentLogFileOrCreateInitialLogFileIfAbsent());
+        running = true;
+        writerThread = new Thread(this::writeLoop, "segment-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Writes the requests queued so far, closes the active segment and waits for the writer thread to finish.
+     */
+    public void stop() {
+        running = false;
+        if (writerThread == null) {
+            return;
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public File getActiveSegment() {
+        return activeSegment;
+    }
+
+    /**
+     * Bytes of the active segment past this position may still be cut off again by a failed batch.
+     */
+    public CommittedPosition getCommittedPosition() {
+        return committedPosition;
+    }
+
+    /**
+     * Values are compressed here, on the calling thread, so the writer thread only copies them.
+     *
+     * @return future completed once all records are written (and synced if the durability mode requires it)
+     * with the number of records that overwrote or removed an existing key, or failed if the writer is not running
+     */
+    public CompletableFuture<Integer> append(List<Record> records) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Segment writer is not running"));
+        }
+        if (valueCompression != ValueCompression.NONE) {
+            for (Record record : records) {
+                valueCompression.compress(record, compressionMinBytes);
+            }
+        }
+        final AppendRequest appendRequest = new AppendRequest(records);
+        appendRequests.add(appendRequest);
+        if (!running && appendRequests.remove(appendRequest)) {
+            appendRequest.completion.completeExceptionally(new IllegalStateException("Segment writer is not running"));
+        }
+        return appendRequest.completion;
+    }
+
+    private void writeLoop() {
+        final List<AppendRequest> batch = new ArrayList<>();
+        final long pollMillis = writeDurability == WriteDurability.INTERVAL ? Math.min(fsyncIntervalMillis, IDLE_POLL_MILLIS) : IDLE_POLL_MILLIS;
+        while (running || !appendRequests.isEmpty()) {
+            try {
+                final AppendRequest appendRequest = appendRequests.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (appendRequest != null) {
+                    batch.add(appendRequest);
+                    appendRequests.drainTo(batch, MAX_BATCH_REQUESTS - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                if (writeDurability == WriteDurability.INTERVAL && System.currentTimeMillis() - lastFsyncMillis >= fsyncIntervalMillis) {
+                    fsync();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                batch.forEach(appendRequest -> appendRequest.completion.completeExceptionally(e));
+                batch.clear();
+            }
+        }
+        closeActiveSegment();
+        failQueuedRequests();
+    }
+
+    /**
+     * Requests racing with {@link #stop()} are either removed again by {@link #append(List)} or drained here.
+     */
+    private void failQueuedRequests() {
+        final List<AppendRequest> leftovers = new ArrayList<>();
+        appendRequests.drainTo(leftovers);
+        leftovers.forEach(appendRequest -> appendRequest.completion.completeExceptionally(new IllegalStateException("Segment writer is not running")));
+    }
+
+    /**
+     * A batch is all or nothing : if any part of it fails, whatever reached the segment is cut off again
+     * (at the latest when the next batch reopens the segment), so no acknowledged record ever follows a torn one.
+     */
+    private void writeBatch(List<AppendRequest> batch) {
+        final List<Record> writtenRecords = new ArrayList<>();
+        final List<RecordLocation> writtenLocations = new ArrayList<>();
+        long batchStartSize = -1;
+        try {
+            if (activeChannel == null) {
+                openActiveSegment(activeSegment);
+            }
+            batchStartSize = activeSegmentSize;
+            final long timestamp = System.currentTimeMillis();
+            for (AppendRequest appendRequest : batch) {
+                for (Record record : appendRequest.records) {
+                    writtenLocations.add(encode(record, timestamp));
+                    writtenRecords.add(record);
+                }
+            }
+            flushWriteBuffer();
+            Metrics.WRITE_BATCHES.increment();
+            if (writeDurability == WriteDurability.BATCH) {
+                fsync();
+            }
+            committedPosition = new CommittedPosition(activeSegment, activeSegmentSize);
+        } catch (IOException | RuntimeException e) {
+            writeBuffer.clear();
+            closeActiveSegment();
+            if (batchStartSize >= 0) {
+                failedBatchStartSize = batchStartSize;
+                try {
+                    openActiveSegment(activeSegment);
+                } catch (IOException reopenFailure) {
+                    reopenFailure.printStackTrace();
+                }
+            }
+            batch.forEach(appendRequest -> appendRequest.completion.completeExceptionally(e));
+            return;
+        }
+        int writtenRecordIndex = 0;
+        for (AppendRequest appendRequest : batch) {
+            final int requestEndIndex = writtenRecordIndex + appendRequest.records.size();
+            try {
+                int replacedRecords = 0;
+                for (; writtenRecordIndex < requestEndIndex; writtenRecordIndex++) {
+                    if (appendListener.onAppended(writtenRecords.get(writtenRecordIndex), writtenLocations.get(writtenRecordIndex))) {
+                        replacedRecords++;
+                    }
+                }
+                appendRequest.completion.complete(replacedRecords);
+            } catch (RuntimeException e) {
+                // the records are on disk already, only this request's index update is incomplete
+                e.printStackTrace();
+                writtenRecordIndex = requestEndIndex;
+                appendRequest.completion.completeExceptionally(e);
+            }
+        }
+        try {
+            rollOverIfRequired();
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeActiveSegment();
+        }
+    }
+
+    private RecordLocation encode(Record record, long timestamp) throws IOException {
+        final byte[] keyBytes = record.getKey().getBytes(StandardCharsets.UTF_8);
+        final byte[] valueBytes = record.getValue();
+        final byte flags = RecordCodec.flags(record);
+        final int recordLength = RecordCodec.encodedSize(keyBytes.length, valueBytes.length, flags);
+        final RecordLocation location = new RecordLocation(activeSegmentId, activeSegmentSize, recordLength);
+        if (recordLength > writeBuffer.remaining()) {
+            flushWriteBuffer();
+        }
+        if (recordLength > writeBuffer.capacity()) {
+            final ByteBuffer encodedRecord = ByteBuffer.allocate(recordLength);
+            RecordCodec.encode(encodedRecord, keyBytes, valueBytes, timestamp, flags, record.getExpiresAtMillis());
+            encodedRecord.flip();
+            writeFully(encodedRecord);
+        } else {
+            RecordCodec.encode(writeBuffer, keyBytes, valueBytes, timestamp, flags, record.getExpiresAtMillis());
+        }
+        activeSegmentSize += recordLength;
+        Metrics.APPENDED_BYTES.add(recordLength);
+        record.setTimestampMillis(timestamp);
+        return location;
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        writeFully(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            activeChannel.write(buffer);
+        }
+        unsyncedWrites = true;
+    }
+
+    private void fsync() throws IOException {
+        if (unsyncedWrites && activeChannel != null) {
+            activeChannel.force(false);
+            unsyncedWrites = false;
+            Metrics.FSYNCS.increment();
+        }
+        lastFsyncMillis = System.currentTimeMillis();
+    }
+
+    private File getCurrentLogFileOrCreateInitialLogFileIfAbsent() throws IOException {
+        final List<File> dataFiles = dataFilesProcessingHelper.listSortedDataFiles(dataDirectory);
+        if (!dataFiles.isEmpty()) {
+            return dataFiles.get(dataFiles.size() - 1);
+        }
+        final File initialLogFile = dataFilesProcessingHelper.createNewLogFileWithSeqNumber(dataDirectory.getPath(), 1);
+        System.out.println("Creating initial log file with name " + initialLogFile.getName());
+        return initialLogFile;
+    }
+
+    /**
+     * Seals the active segment once it reaches {@link CacheConfigConstants#DATA_FILES_MAX_SIZE_IN_KILOBYTES}
+     * and continues in a new one, so rollover happens exactly when a write crosses the limit. It runs after
+     * the index is updated, since a sealed segment may be compacted right away.
+     */
+    private void rollOverIfRequired() throws IOException {
+        if (activeSegmentSize < maxSegmentSizeInBytes) {
+            return;
+        }
+        final File sealedSegment = activeSegment;
+        final long sealedSegmentSeqNumber;
+        try {
+            sealedSegmentSeqNumber = dataFilesProcessingHelper.getDataFileSequenceNumber(sealedSegment);
+        } catch (FileInvalidFormatException e) {
+            throw new IOException(sealedSegment.getName() + " has no sequence number", e);
+        }
+        final File newLogFile = dataFilesProcessingHelper.createNewLogFileWithSeqNumber(dataDirectory.getPath(), sealedSegmentSeqNumber + 1);
+        System.out.printf("Archiving : '%s', Creating : '%s'\n", sealedSegment.getName(), newLogFile.getName());
+        closeActiveSegment();
+        openActiveSegment(newLogFile);
+        Metrics.SEGMENT_ROLLOVERS.increment();
+        appendListener.onSegmentSealed(sealedSegment);
+    }
+
+    private void openActiveSegment(File segmentFile) throws IOException {
+        activeChannel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (failedBatchStartSize >= 0 && segmentFile.equals(activeSegment)) {
+            discardFailedBatch();
+        }
+        activeSegment = segmentFile;
+        activeSegmentSize = activeChannel.size();
+        if (activeSegmentSize == 0) {
+            writeFully(RecordCodec.segmentHeader());
+            activeSegmentSize = RecordCodec.SEGMENT_HEADER_SIZE;
+        }
+        activeSegmentId = segmentRegistry.register(segmentFile);
+        committedPosition = new CommittedPosition(segmentFile, activeSegmentSize);
+    }
+
+    private void discardFailedBatch() throws IOException {
+        try {
+            if (activeChannel.size() > failedBatchStartSize) {
+                System.out.printf("Discarding failed batch of '%s' : %s -> %s bytes\n", activeSegment.getName(), activeChannel.size(), failedBatchStartSize);
+                activeChannel.truncate(failedBatchStartSize);
+                activeChannel.force(false);
+            }
+            failedBatchStartSize = -1;
+        } catch (IOException e) {
+            activeChannel.close();
+            activeChannel = null;
+            throw e;
+        }
+    }
+
+    private void closeActiveSegment() {
+        if (activeChannel == null) {
+            return;
+        }
+        try {
+            if (writeDurability != WriteDurability.NONE) {
+                fsync();
+            }
+            activeChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        activeChannel = null;
+    }
+
+    public interface AppendListener {
+        /**
+         * @return whether the record overwrote or removed an existing key
+         */
+        boolean onAppended(Record record, RecordLocation location);
+
+        void onSegmentSealed(File segmentFile);
+    }
+
+    public static class CommittedPosition {
+
+        private final File segment;
+        private final long end;
+
+        CommittedPosition(File segment, long end) {
+            this.segment = segment;
+            this.end = end;
+        }
+
+        public File getSegment() {
+            return segment;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+    }
+
+    private static class AppendRequest {
+
+        private final List<Record> records;
+        private final CompletableFuture<Integer> completion = new CompletableFuture<>();
+
+        AppendRequest(List<Record> records) {
+            this.records = records;
+        }
+    }
+}
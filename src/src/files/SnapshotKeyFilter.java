@@ -0,0 +1,55 @@
+package src.files;
+
+import src.core.lsm.BloomFilter;
+import src.core.storage.HashIndexStorage;
+import src.files.exception.FileInvalidFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * Bloom filter over the keys of the snapshot of a storage. Only keys held by the snapshot need their tombstones
+ * kept once the segments before them are merged, every other tombstone shadows nothing.
+ * <p>
+ * The filter is built with one scan of the snapshot and rebuilt only when another snapshot replaces it. It is sized
+ * for the keys in the index, so a snapshot of many more keys than are left only keeps some tombstones it could drop.
+ */
+public class SnapshotKeyFilter {
+
+    private final HashIndexStorage hashIndexStorage;
+    private final DataFilesProcessingHelper dataFilesProcessingHelper;
+    private final SegmentScanner segmentScanner;
+    private File snapshotFile;
+    private BloomFilter snapshotKeys;
+
+    public SnapshotKeyFilter(HashIndexStorage hashIndexStorage) {
+        this.hashIndexStorage = hashIndexStorage;
+        this.dataFilesProcessingHelper = new DataFilesProcessingHelper();
+        this.segmentScanner = new SegmentScanner();
+    }
+
+    /**
+     * Must be called with the compaction lock held, so the snapshot is not replaced meanwhile.
+     *
+     * @return whether a key may be held by the current snapshot, never for any key if there is no snapshot
+     */
+    public Predicate<String> get() throws IOException, FileInvalidFormatException {
+        final File currentSnapshotFile = dataFilesProcessingHelper.findSnapshotFile(hashIndexStorage.getDataDirectory());
+        if (currentSnapshotFile == null) {
+            snapshotFile = null;
+            snapshotKeys = null;
+            return key -> false;
+        }
+        if (!currentSnapshotFile.equals(snapshotFile)) {
+            final BloomFilter keys = new BloomFilter(hashIndexStorage.size());
+            segmentScanner.scan(currentSnapshotFile, 0, (buffer, recordPosition, location) ->
+                    keys.add(RecordCodec.decodeKey(buffer, recordPosition).getBytes(StandardCharsets.UTF_8)));
+            snapshotFile = currentSnapshotFile;
+            snapshotKeys = keys;
+        }
+        final BloomFilter keys = snapshotKeys;
+        return key -> keys.mightContain(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,162 @@
+package src.files;
+
+import src.core.index.RecordLocation;
+import src.core.storage.HashIndexStorage;
+import src.files.exception.FileInvalidFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a snapshot: the live records of all segments older than the compaction horizon, sorted by key, in the
+ * segment format. The horizon is the cutoff, so writers keep appending to the active segment meanwhile and
+ * recovery loads the snapshot with one sequential scan and replays only the segments from the cutoff on.
+ * <p>
+ * The snapshot replaces the previous snapshot and the segments it was made of. The index is re-pointed to the
+ * snapshot only once it is complete and renamed into place, so a failed snapshot leaves the storage untouched.
+ */
+public class SnapshotWriter {
+
+    private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+    private final HashIndexStorage hashIndexStorage;
+    private final SegmentRegistry segmentRegistry;
+    private final HintFileManager hintFileManager;
+    private final DataFilesProcessingHelper dataFilesProcessingHelper;
+
+    public SnapshotWriter(HashIndexStorage hashIndexStorage, HintFileManager hintFileManager) {
+        this.hashIndexStorage = hashIndexStorage;
+        this.segmentRegistry = hashIndexStorage.getSegmentRegistry();
+        this.hintFileManager = hintFileManager;
+        this.dataFilesProcessingHelper = new DataFilesProcessingHelper();
+    }
+
+    /**
+     * Compaction is held off while the snapshot is written, the segments it reads from must not change.
+     *
+     * @return number of records in the snapshot
+     */
+    public int write() throws IOException, FileInvalidFormatException {
+        hashIndexStorage.getCompactionLock().lock();
+        try {
+            return writeSnapshot();
+        } finally {
+            hashIndexStorage.getCompactionLock().unlock();
+        }
+    }
+
+    private int writeSnapshot() throws IOException, FileInvalidFormatException {
+        final long startNanos = System.nanoTime();
+        final File cutoffSegment = hashIndexStorage.getCompactionHorizon();
+        if (cutoffSegment == null) {
+            return 0;
+        }
+        final File dataDirectory = hashIndexStorage.getDataDirectory();
+        final Comparator<File> dataFilesComparator = dataFilesProcessingHelper.getDataFilesComparator();
+        final List<File> sourceFiles = new ArrayList<>(dataFilesProcessingHelper.listSortedSnapshotFiles(dataDirectory));
+        dataFilesProcessingHelper.listSortedDataFiles(dataDirectory).stream()
+                .filter(dataFile -> dataFilesComparator.compare(dataFile, cutoffSegment) < 0)
+                .forEach(sourceFiles::add);
+        final List<Integer> sourceSegmentIdList = sourceFiles.stream().map(segmentRegistry::register).collect(Collectors.toList());
+        final Set<Integer> sourceSegmentIds = new HashSet<>(sourceSegmentIdList);
+        for (int sourceSegmentId : sourceSegmentIdList) {
+            segmentRegistry.open(sourceSegmentId);
+        }
+        final File snapshotFile = dataFilesProcessingHelper.getSnapshotFileWithSeqNumber(dataDirectory,
+                dataFilesProcessingHelper.getDataFileSequenceNumber(cutoffSegment));
+        final File temporaryFile = new File(dataDirectory, snapshotFile.getName() + "." + SegmentCompactor.COMPACTION_FILE_EXTENSION);
+
+        final List<String> keys = new ArrayList<>();
+        hashIndexStorage.forEachLocation((key, location) -> {
+            if (sourceSegmentIds.contains(location.getSegmentId())) {
+                keys.add(key);
+            }
+        });
+        keys.sort(Comparator.naturalOrder());
+
+        final List<String> writtenKeys = new ArrayList<>(keys.size());
+        final List<RecordLocation> sourceLocations = new ArrayList<>(keys.size());
+        final long[] snapshotOffsets = new long[keys.size()];
+        final long snapshotSize;
+        try (FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+            buffer.put(RecordCodec.segmentHeader());
+            long size = RecordCodec.SEGMENT_HEADER_SIZE;
+            final long nowMillis = System.currentTimeMillis();
+            for (String key : keys) {
+                final RecordLocation location = hashIndexStorage.getLocation(key);
+                if (location == null || !sourceSegmentIds.contains(location.getSegmentId())) {
+                    continue;
+                }
+                final byte[] record = segmentRegistry.read(location);
+                if (record == null) {
+                    continue;
+                }
+                final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+                if (RecordCodec.checkRecord(recordBuffer, 0, record.length) != record.length) {
+                    throw new IOException("Record of key '" + key + "' is corrupted");
+                }
+                final long expiresAt = RecordCodec.getExpiresAt(recordBuffer, 0);
+                if (expiresAt != 0 && expiresAt <= nowMillis) {
+                    hashIndexStorage.expire(key, location);
+                    continue;
+                }
+                if (record.length > buffer.remaining()) {
+                    writeFully(channel, buffer.flip());
+                    buffer.clear();
+                }
+                if (record.length > buffer.capacity()) {
+                    writeFully(channel, recordBuffer);
+                } else {
+                    buffer.put(recordBuffer);
+                }
+                snapshotOffsets[writtenKeys.size()] = size;
+                writtenKeys.add(key);
+                sourceLocations.add(location);
+                size += record.length;
+            }
+            writeFully(channel, buffer.flip());
+            channel.force(true);
+            snapshotSize = size;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw e;
+        }
+        Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        final int snapshotSegmentId = segmentRegistry.register(temporaryFile);
+        segmentRegistry.rename(snapshotSegmentId, snapshotFile);
+        for (int i = 0; i < writtenKeys.size(); i++) {
+            final RecordLocation sourceLocation = sourceLocations.get(i);
+            hashIndexStorage.relocate(writtenKeys.get(i), sourceLocation,
+                    new RecordLocation(snapshotSegmentId, snapshotOffsets[i], sourceLocation.getLength()));
+        }
+        sourceSegmentIdList.forEach(segmentRegistry::retire);
+        for (File sourceFile : sourceFiles) {
+            if (!sourceFile.getName().equals(snapshotFile.getName())) {
+                hintFileManager.deleteHintFile(sourceFile);
+                Files.deleteIfExists(sourceFile.toPath());
+            }
+        }
+        System.out.printf("Wrote snapshot '%s' of %s records (%s bytes) from %s files in %s ms\n", snapshotFile.getName(),
+                writtenKeys.size(), snapshotSize, sourceFiles.size(), (System.nanoTime() - startNanos) / 1_000_000);
+        return writtenKeys.size();
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package src.files;
+
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of record values. Values of at least {@link CacheConfigConstants#VALUE_COMPRESSION_MIN_BYTES} are
+ * compressed before they are appended, unless compression does not make them smaller. A compressed value is
+ * {@code | uncompressed length (4) | deflate stream |} and its record has {@link RecordCodec#COMPRESSED_FLAG} set,
+ * so reading does not depend on the configured compression and a store can be reopened with another one.
+ * <p>
+ * Values kept in memory stay compressed while compression is on and are decompressed on every read, see
+ * {@link #toMemoryValue}.
+ */
+public enum ValueCompression {
+    NONE("none"),
+    DEFLATE("deflate");
+
+    private static final int UNCOMPRESSED_LENGTH_SIZE = 4;
+    private static final int MAX_UNCOMPRESSED_LENGTH = 512 * 1024 * 1024;
+    private static final byte RAW_MEMORY_VALUE = 0;
+    private static final byte COMPRESSED_MEMORY_VALUE = 1;
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    final String compression;
+
+    ValueCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public static ValueCompression fromProperty(String property) {
+        if (property == null) {
+            return NONE;
+        }
+        for (ValueCompression valueCompression : values()) {
+            if (valueCompression.compression.equalsIgnoreCase(property.trim())) {
+                return valueCompression;
+            }
+        }
+        throw new IllegalArgumentException("Unknown value compression : " + property);
+    }
+
+    /**
+     * Replaces the value of the record by its compressed form if it is at least {@code minBytes} long and
+     * compresses to fewer bytes, tombstones and already compressed records are left as they are.
+     */
+    public void compress(Record record, int minBytes) {
+        final byte[] value = record.getValue();
+        if (this == NONE || record.isTombstone() || record.isCompressed() || value.length < Math.max(minBytes, UNCOMPRESSED_LENGTH_SIZE + 1)) {
+            return;
+        }
+        final Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(value);
+        deflater.finish();
+        final byte[] compressed = new byte[value.length];
+        final int compressedLength = deflater.deflate(compressed, UNCOMPRESSED_LENGTH_SIZE, value.length - UNCOMPRESSED_LENGTH_SIZE);
+        if (!deflater.finished() || compressedLength == value.length - UNCOMPRESSED_LENGTH_SIZE) {
+            return;
+        }
+        ByteBuffer.wrap(compressed).putInt(0, value.length);
+        record.setValue(Arrays.copyOf(compressed, UNCOMPRESSED_LENGTH_SIZE + compressedLength));
+        record.setCompressed(true);
+        Metrics.COMPRESSED_VALUES.increment();
+        Metrics.COMPRESSION_SAVED_BYTES.add(value.length - UNCOMPRESSED_LENGTH_SIZE - compressedLength);
+    }
+
+    /**
+     * @param compressed compressed value, between its position and limit, which are left unchanged
+     */
+    public static byte[] decompress(ByteBuffer compressed) throws IOException {
+        if (compressed.remaining() < UNCOMPRESSED_LENGTH_SIZE) {
+            throw new IOException("Compressed value is truncated");
+        }
+        final int uncompressedLength = compressed.getInt(compressed.position());
+        if (uncompressedLength < 0 || uncompressedLength > MAX_UNCOMPRESSED_LENGTH) {
+            throw new IOException("Compressed value has invalid length " + uncompressedLength);
+        }
+        final byte[] value = new byte[uncompressedLength];
+        final Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(compressed.duplicate().position(compressed.position() + UNCOMPRESSED_LENGTH_SIZE));
+        try {
+            if (inflater.inflate(value) != uncompressedLength || !inflater.finished()) {
+                throw new IOException("Compressed value does not match its length " + uncompressedLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed value is corrupted", e);
+        }
+        return value;
+    }
+
+    /**
+     * Form in which a value is kept in memory: without compression the plain value, otherwise the value as
+     * stored in its record behind a tag telling whether it is compressed.
+     *
+     * @param compressed whether the given value is compressed
+     */
+    public byte[] toMemoryValue(byte[] value, boolean compressed) throws IOException {
+        if (this == NONE && !compressed) {
+            return value;
+        }
+        return toMemoryValue(ByteBuffer.wrap(value), compressed).array();
+    }
+
+    /**
+     * @param value value between its position and limit, which are left unchanged
+     * @return the memory form, which is the given buffer itself if there is nothing to change
+     */
+    public ByteBuffer toMemoryValue(ByteBuffer value, boolean compressed) throws IOException {
+        if (this == NONE) {
+            return compressed ? ByteBuffer.wrap(decompress(value)) : value;
+        }
+        final byte[] memoryValue = new byte[1 + value.remaining()];
+        memoryValue[0] = compressed ? COMPRESSED_MEMORY_VALUE : RAW_MEMORY_VALUE;
+        value.get(value.position(), memoryValue, 1, value.remaining());
+        return ByteBuffer.wrap(memoryValue);
+    }
+
+    /**
+     * @param memoryValue value made by {@link #toMemoryValue}, between its position and limit
+     * @return the plain value, sharing the content of the given buffer unless it had to be decompressed
+     */
+    public ByteBuffer fromMemoryValue(ByteBuffer memoryValue) throws IOException {
+        if (this == NONE) {
+            return memoryValue;
+        }
+        final ByteBuffer value = memoryValue.slice(memoryValue.position() + 1, memoryValue.remaining() - 1);
+        return memoryValue.get(memoryValue.position()) == COMPRESSED_MEMORY_VALUE ? ByteBuffer.wrap(decompress(value)) : value;
+    }
+}
@@ -0,0 +1,29 @@
+package src.files;
+
+public enum WriteDurability {
+    NONE("none"),
+    INTERVAL("interval"),
+    BATCH("batch");
+
+    final String durability;
+
+    WriteDurability(String durability) {
+        this.durability = durability;
+    }
+
+    public String getDurability() {
+        return durability;
+    }
+
+    public static WriteDurability fromProperty(String property) {
+        if (property == null) {
+            return NONE;
+        }
+        for (WriteDurability writeDurability : values()) {
+            if (writeDurability.durability.equalsIgnoreCase(property.trim())) {
+                return writeDurability;
+            }
+        }
+        throw new IllegalArgumentException("Unknown write durability : " + property);
+    }
+}
@@ -1,4 +1,6 @@
 package src.files.exception;
 
 public class FileInvalidFormatException extends Throwable {
+
+    private static final long serialVersionUID = 1L;
 }
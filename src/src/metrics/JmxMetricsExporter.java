@@ -0,0 +1,68 @@
+package src.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Publishes every metric of {@link Metrics#snapshot()} as a read-only attribute of the {@code src:type=Metrics} MBean.
+ */
+public class JmxMetricsExporter implements DynamicMBean {
+
+    public static final String OBJECT_NAME = "src:type=Metrics";
+
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            System.out.printf("Metrics are exported via JMX as '%s'\n", OBJECT_NAME);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) {
+        return Metrics.snapshot().get(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        final Map<String, Object> snapshot = Metrics.snapshot();
+        final AttributeList attributeList = new AttributeList();
+        for (String attribute : attributes) {
+            if (snapshot.containsKey(attribute)) {
+                attributeList.add(new Attribute(attribute, snapshot.get(attribute)));
+            }
+        }
+        return attributeList;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("Metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final MBeanAttributeInfo[] attributes = Metrics.snapshot().keySet().stream()
+                .map(name -> new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false))
+                .toArray(MBeanAttributeInfo[]::new);
+        return new MBeanInfo(getClass().getName(), "Key-value storage metrics", attributes, null, null, null);
+    }
+}
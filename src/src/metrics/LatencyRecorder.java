@@ -0,0 +1,90 @@
+package src.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in the spirit of HdrHistogram: every power of two is split into
+ * {@link #SUB_BUCKETS} linear buckets, so any recorded value is reported within about 3% of its real value
+ * while the whole range of a long fits into a couple of thousand counters.
+ */
+public class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyRecorder() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        final long value = Math.max(0, nanos);
+        buckets[bucketIndex(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        final long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) sum.sum() / recorded;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long bucketUpperBound(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKETS) {
+            return bucketIndex;
+        }
+        final int shift = bucketIndex / SUB_BUCKETS - 1;
+        final long subBucket = bucketIndex % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
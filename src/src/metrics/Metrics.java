@@ -0,0 +1,92 @@
+package src.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and latency recorders of the hot paths. Updates are a LongAdder increment,
+ * so they are cheap enough to be done on every request.
+ */
+public final class Metrics {
+
+    public static final LongAdder COMMANDS = new LongAdder();
+    public static final LongAdder GET_HITS = new LongAdder();
+    public static final LongAdder GET_MISSES = new LongAdder();
+    public static final LongAdder CACHE_HITS = new LongAdder();
+    public static final LongAdder CACHE_MISSES = new LongAdder();
+    public static final LongAdder CACHE_EVICTIONS = new LongAdder();
+    public static final LongAdder PUT_RECORDS = new LongAdder();
+    public static final LongAdder DELETED_RECORDS = new LongAdder();
+    public static final LongAdder EXPIRED_KEYS = new LongAdder();
+    public static final LongAdder APPENDED_BYTES = new LongAdder();
+    public static final LongAdder WRITE_BATCHES = new LongAdder();
+    public static final LongAdder FSYNCS = new LongAdder();
+    public static final LongAdder SEGMENT_ROLLOVERS = new LongAdder();
+    public static final LongAdder COMPACTIONS = new LongAdder();
+    public static final LongAdder COMPACTION_RECLAIMED_BYTES = new LongAdder();
+    public static final LongAdder REPLICATED_BYTES = new LongAdder();
+    public static final LongAdder MEMTABLE_FLUSHES = new LongAdder();
+    public static final LongAdder SSTABLE_BLOCK_READS = new LongAdder();
+    public static final LongAdder BLOOM_FILTER_SKIPS = new LongAdder();
+    public static final LongAdder COMPRESSED_VALUES = new LongAdder();
+    public static final LongAdder COMPRESSION_SAVED_BYTES = new LongAdder();
+    public static final LatencyRecorder GET_LATENCY = new LatencyRecorder();
+    public static final LatencyRecorder PUT_LATENCY = new LatencyRecorder();
+    public static final LatencyRecorder COMPACTION_DURATION = new LatencyRecorder();
+
+    private static volatile long recoveryMillis;
+    private static volatile long recoveredRecords;
+
+    private Metrics() {
+    }
+
+    public static void recordRecovery(long millis, long records) {
+        recoveryMillis = millis;
+        recoveredRecords = records;
+    }
+
+    /**
+     * @return current values by metric name, latencies are given in microseconds
+     */
+    public static Map<String, Object> snapshot() {
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("commands", COMMANDS.sum());
+        snapshot.put("get_hits", GET_HITS.sum());
+        snapshot.put("get_misses", GET_MISSES.sum());
+        snapshot.put("cache_hits", CACHE_HITS.sum());
+        snapshot.put("cache_misses", CACHE_MISSES.sum());
+        snapshot.put("cache_evictions", CACHE_EVICTIONS.sum());
+        snapshot.put("put_records", PUT_RECORDS.sum());
+        snapshot.put("deleted_records", DELETED_RECORDS.sum());
+        snapshot.put("expired_keys", EXPIRED_KEYS.sum());
+        snapshot.put("appended_bytes", APPENDED_BYTES.sum());
+        snapshot.put("write_batches", WRITE_BATCHES.sum());
+        snapshot.put("fsyncs", FSYNCS.sum());
+        snapshot.put("segment_rollovers", SEGMENT_ROLLOVERS.sum());
+        snapshot.put("compactions", COMPACTIONS.sum());
+        snapshot.put("compaction_reclaimed_bytes", COMPACTION_RECLAIMED_BYTES.sum());
+        snapshot.put("replicated_bytes", REPLICATED_BYTES.sum());
+        snapshot.put("memtable_flushes", MEMTABLE_FLUSHES.sum());
+        snapshot.put("sstable_block_reads", SSTABLE_BLOCK_READS.sum());
+        snapshot.put("bloom_filter_skips", BLOOM_FILTER_SKIPS.sum());
+        snapshot.put("compressed_values", COMPRESSED_VALUES.sum());
+        snapshot.put("compression_saved_bytes", COMPRESSION_SAVED_BYTES.sum());
+        snapshot.put("recovery_millis", recoveryMillis);
+        snapshot.put("recovered_records", recoveredRecords);
+        putLatency(snapshot, "get_latency", GET_LATENCY);
+        putLatency(snapshot, "put_latency", PUT_LATENCY);
+        putLatency(snapshot, "compaction_duration", COMPACTION_DURATION);
+        return snapshot;
+    }
+
+    private static void putLatency(Map<String, Object> snapshot, String name, LatencyRecorder recorder) {
+        snapshot.put(name + "_count", recorder.getCount());
+        snapshot.put(name + "_mean_us", TimeUnit.NANOSECONDS.toMicros((long) recorder.getMeanNanos()));
+        snapshot.put(name + "_p50_us", TimeUnit.NANOSECONDS.toMicros(recorder.getPercentileNanos(50)));
+        snapshot.put(name + "_p99_us", TimeUnit.NANOSECONDS.toMicros(recorder.getPercentileNanos(99)));
+        snapshot.put(name + "_p999_us", TimeUnit.NANOSECONDS.toMicros(recorder.getPercentileNanos(99.9)));
+        snapshot.put(name + "_max_us", TimeUnit.NANOSECONDS.toMicros(recorder.getMaxNanos()));
+    }
+}
@@ -0,0 +1,111 @@
+package src.replication;
+
+import src.core.index.RecordLocation;
+import src.core.storage.HashIndexStorage;
+import src.files.RecordCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the streamed bytes of a shard to the same segment files as on the leader and indexes every record
+ * once it is complete, at the same offset it has on the leader. Chunks may end in the middle of a record,
+ * the incomplete rest is kept until the next chunk arrives.
+ */
+class ReplicaSegmentAppender {
+
+    private static final int INITIAL_PENDING_SIZE = 64 * 1024;
+
+    private final HashIndexStorage shard;
+    private File segment;
+    private FileChannel channel;
+    private int segmentId;
+    private long segmentLength;
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_PENDING_SIZE);
+    private long pendingOffset;
+
+    ReplicaSegmentAppender(HashIndexStorage shard, File segment, long segmentLength) throws IOException {
+        this.shard = shard;
+        this.segment = segment;
+        this.channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE);
+        this.segmentId = shard.getSegmentRegistry().register(segment);
+        this.segmentLength = segmentLength;
+        this.pendingOffset = segmentLength;
+    }
+
+    void append(String segmentName, long offset, ByteBuffer bytes) throws IOException {
+        if (!segmentName.equals(segment.getName())) {
+            openNextSegment(segmentName, offset);
+        }
+        if (offset != segmentLength) {
+            throw new IOException("Expected " + segmentName + " to continue at " + segmentLength + " but got " + offset);
+        }
+        final ByteBuffer written = bytes.duplicate();
+        while (written.hasRemaining()) {
+            channel.write(written, offset + written.position());
+        }
+        segmentLength += bytes.remaining();
+        addPending(bytes);
+        indexCompleteRecords();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    private void openNextSegment(String segmentName, long offset) throws IOException {
+        if (offset != 0) {
+            throw new IOException("Segment " + segmentName + " does not start at offset 0 but at " + offset);
+        }
+        if (pending.position() > 0) {
+            throw new IOException("Segment " + segment.getName() + " ended with an incomplete record");
+        }
+        channel.close();
+        segment = new File(shard.getDataDirectory(), segmentName);
+        channel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segmentId = shard.openReplicaSegment(segment);
+        segmentLength = 0;
+        pendingOffset = 0;
+    }
+
+    private void addPending(ByteBuffer bytes) {
+        if (pending.remaining() < bytes.remaining()) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + bytes.remaining()));
+            grown.put(pending.flip());
+            pending = grown;
+        }
+        pending.put(bytes);
+    }
+
+    private void indexCompleteRecords() throws IOException {
+        pending.flip();
+        int position = 0;
+        if (pendingOffset == 0) {
+            if (pending.limit() < RecordCodec.SEGMENT_HEADER_SIZE) {
+                pending.position(pending.limit()).limit(pending.capacity());
+                return;
+            }
+            if (pending.getInt(0) != RecordCodec.SEGMENT_MAGIC) {
+                throw new IOException("Segment " + segment.getName() + " has no segment header");
+            }
+            position = RecordCodec.SEGMENT_HEADER_SIZE;
+        }
+        while (true) {
+            final int recordSize = RecordCodec.checkRecord(pending, position, pending.limit());
+            if (recordSize == RecordCodec.INCOMPLETE) {
+                break;
+            }
+            if (recordSize == RecordCodec.CORRUPTED) {
+                throw new IOException("Corrupted record at " + (pendingOffset + position) + " of " + segment.getName());
+            }
+            shard.applyReplicatedRecord(RecordCodec.decodeRecord(pending, position), new RecordLocation(segmentId, pendingOffset + position, recordSize));
+            position += recordSize;
+        }
+        pendingOffset += position;
+        pending.position(position);
+        pending.compact();
+    }
+}
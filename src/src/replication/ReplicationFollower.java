@@ -0,0 +1,170 @@
+package src.replication;
+
+import src.core.storage.HashIndexStorage;
+import src.core.storage.ShardedStorage;
+import src.metrics.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a read-only replica of a leader. On start the local store is replaced by a snapshot of the segments
+ * of the leader, after which the records appended on the leader are streamed into the same segments here.
+ * <p>
+ * Segments are not fsynced, as the replica copies its leader from scratch on every start anyway. Replica segments
+ * are never compacted, so a long running replica holds every segment the leader has written since it started.
+ * If the connection breaks the replica keeps serving what it has received until it is restarted.
+ */
+public class ReplicationFollower {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final ShardedStorage storage;
+    private final String leaderHost;
+    private final int leaderPort;
+    private Socket socket;
+    private DataInputStream input;
+
+    public ReplicationFollower(ShardedStorage storage, String leaderHost, int leaderPort) {
+        this.storage = storage;
+        this.leaderHost = leaderHost;
+        this.leaderPort = leaderPort;
+    }
+
+    /**
+     * Copies the segments of the leader and loads them, then keeps streaming the appends in the background.
+     */
+    public void start() throws IOException {
+        socket = new Socket(leaderHost, leaderPort);
+        input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), COPY_BUFFER_SIZE));
+        if (input.readInt() != ReplicationProtocol.MAGIC) {
+            throw new IOException(leaderHost + ":" + leaderPort + " is not a replication port");
+        }
+        final List<HashIndexStorage> shards = storage.getShards();
+        final int leaderShards = input.readInt();
+        if (leaderShards != shards.size()) {
+            throw new IllegalStateException("Leader has " + leaderShards + " shards but " + shards.size() + " are configured");
+        }
+        storage.clear();
+        System.out.printf("Copying segments from %s:%s\n", leaderHost, leaderPort);
+        receiveSnapshot(shards);
+        storage.loadReplica();
+        final ReplicaSegmentAppender[] appenders = new ReplicaSegmentAppender[shards.size()];
+        final DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            final File activeSegment = shards.get(shard).getActiveSegment();
+            if (activeSegment == null) {
+                throw new IOException("Leader sent no segment of shard " + shard);
+            }
+            appenders[shard] = new ReplicaSegmentAppender(shards.get(shard), activeSegment, activeSegment.length());
+            output.writeUTF(activeSegment.getName());
+            output.writeLong(activeSegment.length());
+        }
+        output.flush();
+        final Thread streamer = new Thread(() -> streamAppends(appenders), "replication-follower");
+        streamer.setDaemon(true);
+        streamer.start();
+    }
+
+    private void receiveSnapshot(List<HashIndexStorage> shards) throws IOException {
+        final Map<File, FileChannel> segmentChannels = new HashMap<>();
+        final ByteBuffer copyBuffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        try {
+            byte messageType;
+            while ((messageType = input.readByte()) == ReplicationProtocol.SEGMENT_CHUNK) {
+                final int shard = readShard(shards);
+                final File segment = new File(shards.get(shard).getDataDirectory(), readSegmentName());
+                final long offset = input.readLong();
+                final long length = input.readLong();
+                FileChannel segmentChannel = segmentChannels.get(segment);
+                if (segmentChannel == null) {
+                    segmentChannel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    segmentChannels.put(segment, segmentChannel);
+                }
+                for (long copied = 0; copied < length; ) {
+                    copyBuffer.clear().limit((int) Math.min(COPY_BUFFER_SIZE, length - copied));
+                    input.readFully(copyBuffer.array(), 0, copyBuffer.limit());
+                    while (copyBuffer.hasRemaining()) {
+                        segmentChannel.write(copyBuffer, offset + copied + copyBuffer.position());
+                    }
+                    copied += copyBuffer.limit();
+                }
+                Metrics.REPLICATED_BYTES.add(length);
+            }
+            if (messageType != ReplicationProtocol.SNAPSHOT_END) {
+                throw new IOException("Unexpected message from the leader");
+            }
+        } finally {
+            for (FileChannel segmentChannel : segmentChannels.values()) {
+                segmentChannel.close();
+            }
+        }
+    }
+
+    private void streamAppends(ReplicaSegmentAppender[] appenders) {
+        System.out.printf("Streaming appends from %s:%s\n", leaderHost, leaderPort);
+        try {
+            final List<HashIndexStorage> shards = storage.getShards();
+            while (true) {
+                if (input.readByte() != ReplicationProtocol.SEGMENT_CHUNK) {
+                    throw new IOException("Unexpected message from the leader");
+                }
+                final int shard = readShard(shards);
+                final String segmentName = readSegmentName();
+                final long offset = input.readLong();
+                final long length = input.readLong();
+                if (length > ReplicationProtocol.MAX_TAIL_CHUNK_SIZE) {
+                    throw new IOException("Chunk of " + length + " bytes exceeds the maximum chunk size");
+                }
+                final byte[] bytes = new byte[(int) length];
+                input.readFully(bytes);
+                appenders[shard].append(segmentName, offset, ByteBuffer.wrap(bytes));
+                Metrics.REPLICATED_BYTES.add(length);
+            }
+        } catch (IOException e) {
+            System.out.printf("Replication from %s:%s stopped, serving the replicated data until restart : %s\n", leaderHost, leaderPort, e);
+        } finally {
+            for (ReplicaSegmentAppender appender : appenders) {
+                try {
+                    appender.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private int readShard(List<HashIndexStorage> shards) throws IOException {
+        final int shard = input.readInt();
+        if (shard < 0 || shard >= shards.size()) {
+            throw new IOException("Leader sent unknown shard " + shard);
+        }
+        return shard;
+    }
+
+    private String readSegmentName() throws IOException {
+        final byte[] name = new byte[input.readUnsignedShort()];
+        input.readFully(name);
+        final String segmentName = new String(name, StandardCharsets.UTF_8);
+        if (segmentName.contains(File.separator) || segmentName.startsWith(".")) {
+            throw new IOException("Leader sent invalid segment name " + segmentName);
+        }
+        return segmentName;
+    }
+}
@@ -0,0 +1,33 @@
+package src.replication;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Messages of the replication stream. The leader opens with {@link #MAGIC} and its number of shards, followed by
+ * segment chunks, each one a byte range of a segment file that is copied as is:
+ * <pre>
+ * | SEGMENT_CHUNK (1) | shard (4) | name length (2) | segment name | offset (8) | length (8) | bytes |
+ * </pre>
+ * The initial copy of all segments is terminated by {@link #SNAPSHOT_END}, after which the follower answers with
+ * the name and length of the newest segment of every shard, as left by its recovery, and the leader keeps
+ * streaming whatever is appended from there on.
+ */
+public final class ReplicationProtocol {
+
+    public static final int MAGIC = 0x4B565231;
+    public static final byte SEGMENT_CHUNK = 1;
+    public static final byte SNAPSHOT_END = 2;
+    public static final int MAX_TAIL_CHUNK_SIZE = 1024 * 1024;
+
+    private ReplicationProtocol() {
+    }
+
+    public static ByteBuffer segmentChunkHeader(int shard, String segmentName, long offset, long length) {
+        final byte[] name = segmentName.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer header = ByteBuffer.allocate(1 + 4 + 2 + name.length + 8 + 8);
+        header.put(SEGMENT_CHUNK).putInt(shard).putShort((short) name.length).put(name).putLong(offset).putLong(length);
+        header.flip();
+        return header;
+    }
+}
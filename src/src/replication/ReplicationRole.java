@@ -0,0 +1,29 @@
+package src.replication;
+
+public enum ReplicationRole {
+    NONE("none"),
+    LEADER("leader"),
+    FOLLOWER("follower");
+
+    final String role;
+
+    ReplicationRole(String role) {
+        this.role = role;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public static ReplicationRole fromProperty(String property) {
+        if (property == null) {
+            return NONE;
+        }
+        for (ReplicationRole replicationRole : values()) {
+            if (replicationRole.role.equalsIgnoreCase(property.trim())) {
+                return replicationRole;
+            }
+        }
+        throw new IllegalArgumentException("Unknown replication role : " + property);
+    }
+}
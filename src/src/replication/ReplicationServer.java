@@ -0,0 +1,53 @@
+package src.replication;
+
+import src.core.storage.ShardedStorage;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Accepts followers on the replication port of a leader and streams the segments to each of them
+ * from a {@link ReplicationSource} thread of its own.
+ */
+public class ReplicationServer {
+
+    private final ShardedStorage storage;
+    private final int port;
+    private ServerSocketChannel serverChannel;
+
+    public ReplicationServer(ShardedStorage storage, int port) {
+        this.storage = storage;
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        final Thread acceptor = new Thread(this::acceptFollowers, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.printf("Accepting followers on port %s\n", port);
+    }
+
+    public void stop() throws IOException {
+        serverChannel.close();
+    }
+
+    private void acceptFollowers() {
+        while (serverChannel.isOpen()) {
+            try {
+                final SocketChannel followerChannel = serverChannel.accept();
+                final Thread source = new Thread(new ReplicationSource(storage, followerChannel), "replication-source-" + followerChannel.getRemoteAddress());
+                source.setDaemon(true);
+                source.start();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
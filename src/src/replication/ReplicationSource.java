@@ -0,0 +1,203 @@
+package src.replication;
+
+import src.core.storage.HashIndexStorage;
+import src.core.storage.ShardedStorage;
+import src.files.DataFilesProcessingHelper;
+import src.files.SegmentWriter;
+import src.files.exception.FileInvalidFormatException;
+import src.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Streams the segments of a leader to one follower. Segment files are sent with {@link FileChannel#transferTo},
+ * so the bytes go from the page cache to the socket without being copied through the heap.
+ * <p>
+ * The initial copy opens the snapshot file and all segments of a shard while compaction is held off, so it is
+ * a consistent set of files even if compaction replaces them right after. From then on the segment being tailed
+ * is pinned, which keeps it and all newer segments out of compaction until the follower has received them. Writes are acknowledged to clients before
+ * they are streamed, so a follower lags behind the leader by whatever was appended since its last poll.
+ * <p>
+ * The active segment is only sent up to its {@link SegmentWriter#getCommittedPosition() committed position}, a batch
+ * that fails after reaching the file is cut off again and must never reach a follower.
+ */
+public class ReplicationSource implements Runnable {
+
+    private static final long IDLE_POLL_MILLIS = 2;
+
+    private final SocketChannel followerChannel;
+    private final List<HashIndexStorage> shards;
+    private final DataFilesProcessingHelper dataFilesProcessingHelper = new DataFilesProcessingHelper();
+    private final File[] tailedSegments;
+    private final FileChannel[] tailedChannels;
+    private final long[] tailedOffsets;
+
+    public ReplicationSource(ShardedStorage storage, SocketChannel followerChannel) {
+        this.followerChannel = followerChannel;
+        this.shards = storage.getShards();
+        this.tailedSegments = new File[shards.size()];
+        this.tailedChannels = new FileChannel[shards.size()];
+        this.tailedOffsets = new long[shards.size()];
+    }
+
+    @Override
+    public void run() {
+        String follower = "follower";
+        try {
+            follower = followerChannel.getRemoteAddress().toString();
+            System.out.printf("Replicating to %s\n", follower);
+            final ByteBuffer handshake = ByteBuffer.allocate(8).putInt(ReplicationProtocol.MAGIC).putInt(shards.size());
+            write(handshake.flip());
+            for (int shard = 0; shard < shards.size(); shard++) {
+                sendSnapshot(shard);
+            }
+            write(ByteBuffer.allocate(1).put(ReplicationProtocol.SNAPSHOT_END).flip());
+            readFollowerPositions();
+            System.out.printf("Snapshot sent to %s, streaming appends\n", follower);
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean sent = false;
+                for (int shard = 0; shard < shards.size(); shard++) {
+                    sent |= sendAppended(shard);
+                }
+                if (!sent) {
+                    Thread.sleep(IDLE_POLL_MILLIS);
+                }
+            }
+        } catch (IOException | FileInvalidFormatException e) {
+            System.out.printf("Stopped replicating to %s : %s\n", follower, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                shards.get(shard).unpinSegment(this);
+                closeQuietly(tailedChannels[shard]);
+            }
+            closeQuietly(followerChannel);
+        }
+    }
+
+    private void sendSnapshot(int shard) throws IOException {
+        final HashIndexStorage storage = shards.get(shard);
+        final List<File> segments;
+        final List<FileChannel> segmentChannels = new ArrayList<>();
+        final List<Long> segmentSizes = new ArrayList<>();
+        storage.getCompactionLock().lock();
+        try {
+            final SegmentWriter.CommittedPosition committedPosition = storage.getCommittedPosition();
+            final File activeSegment = committedPosition.getSegment();
+            final Comparator<File> dataFilesComparator = dataFilesProcessingHelper.getDataFilesComparator();
+            segments = new ArrayList<>(dataFilesProcessingHelper.listSortedSnapshotFiles(storage.getDataDirectory()));
+            dataFilesProcessingHelper.listSortedDataFiles(storage.getDataDirectory()).stream()
+                    .filter(segment -> dataFilesComparator.compare(segment, activeSegment) <= 0)
+                    .forEach(segments::add);
+            storage.pinSegment(this, activeSegment);
+            tailedSegments[shard] = activeSegment;
+            for (File segment : segments) {
+                final FileChannel segmentChannel = FileChannel.open(segment.toPath(), StandardOpenOption.READ);
+                segmentChannels.add(segmentChannel);
+                segmentSizes.add(segment.equals(activeSegment) ? committedPosition.getEnd() : segmentChannel.size());
+            }
+        } catch (IOException e) {
+            segmentChannels.forEach(this::closeQuietly);
+            throw e;
+        } finally {
+            storage.getCompactionLock().unlock();
+        }
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                sendChunk(shard, segments.get(i).getName(), segmentChannels.get(i), 0, segmentSizes.get(i));
+            }
+        } finally {
+            segmentChannels.forEach(this::closeQuietly);
+        }
+    }
+
+    /**
+     * The follower continues from the newest segment it has, which must be the active one of the snapshot.
+     */
+    private void readFollowerPositions() throws IOException {
+        final DataInputStream input = new DataInputStream(Channels.newInputStream(followerChannel));
+        for (int shard = 0; shard < shards.size(); shard++) {
+            final String segmentName = input.readUTF();
+            final long segmentLength = input.readLong();
+            if (!segmentName.equals(tailedSegments[shard].getName())) {
+                throw new IOException("Follower continues shard " + shard + " from " + segmentName + " instead of " + tailedSegments[shard].getName());
+            }
+            tailedChannels[shard] = FileChannel.open(tailedSegments[shard].toPath(), StandardOpenOption.READ);
+            tailedOffsets[shard] = segmentLength;
+        }
+    }
+
+    /**
+     * Sends the bytes committed to the tailed segment of the shard. Once the writer has moved on to the next
+     * segment the tailed one will not change anymore, so after sending its rest the next one is tailed.
+     *
+     * @return whether anything was sent
+     */
+    private boolean sendAppended(int shard) throws IOException, FileInvalidFormatException {
+        final HashIndexStorage storage = shards.get(shard);
+        final SegmentWriter.CommittedPosition committedPosition = storage.getCommittedPosition();
+        final boolean sealed = !committedPosition.getSegment().getName().equals(tailedSegments[shard].getName());
+        final long committedEnd = sealed ? tailedChannels[shard].size() : committedPosition.getEnd();
+        final long appendedBytes = committedEnd - tailedOffsets[shard];
+        if (appendedBytes > 0) {
+            final long chunkSize = Math.min(appendedBytes, ReplicationProtocol.MAX_TAIL_CHUNK_SIZE);
+            sendChunk(shard, tailedSegments[shard].getName(), tailedChannels[shard], tailedOffsets[shard], chunkSize);
+            tailedOffsets[shard] += chunkSize;
+            return true;
+        }
+        if (!sealed) {
+            return false;
+        }
+        final long nextSeqNumber = dataFilesProcessingHelper.getDataFileSequenceNumber(tailedSegments[shard]) + 1;
+        final File nextSegment = dataFilesProcessingHelper.getLogFileWithSeqNumber(storage.getDataDirectory().getPath(), nextSeqNumber);
+        final FileChannel nextChannel = FileChannel.open(nextSegment.toPath(), StandardOpenOption.READ);
+        storage.pinSegment(this, nextSegment);
+        closeQuietly(tailedChannels[shard]);
+        tailedSegments[shard] = nextSegment;
+        tailedChannels[shard] = nextChannel;
+        tailedOffsets[shard] = 0;
+        return true;
+    }
+
+    private void sendChunk(int shard, String segmentName, FileChannel segmentChannel, long offset, long length) throws IOException {
+        write(ReplicationProtocol.segmentChunkHeader(shard, segmentName, offset, length));
+        long transferred = 0;
+        while (transferred < length) {
+            final long sent = segmentChannel.transferTo(offset + transferred, length - transferred, followerChannel);
+            if (sent <= 0) {
+                throw new IOException("Segment " + segmentName + " ended before " + (offset + length));
+            }
+            transferred += sent;
+        }
+        Metrics.REPLICATED_BYTES.add(length);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            followerChannel.write(buffer);
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
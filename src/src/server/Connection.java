@@ -0,0 +1,74 @@
+package src.server;
+
+import src.ClientSession;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class Connection {
+
+    private static final int INITIAL_INPUT_BUFFER_SIZE = 4096;
+
+    private final SocketChannel channel;
+    private final ClientSession session;
+    private final Queue<CompletableFuture<ByteBuffer[]>> pendingResponses = new ArrayDeque<>();
+    private final Deque<ByteBuffer> output = new ArrayDeque<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private ByteBuffer input = ByteBuffer.allocate(INITIAL_INPUT_BUFFER_SIZE);
+
+    Connection(SocketChannel channel, Executor eventLoop) {
+        this.channel = channel;
+        this.session = new ClientSession(eventLoop);
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    ClientSession getSession() {
+        return session;
+    }
+
+    ByteBuffer getInput() {
+        return input;
+    }
+
+    void growInput() {
+        final ByteBuffer grownInput = ByteBuffer.allocate(input.capacity() * 2);
+        input.flip();
+        grownInput.put(input);
+        input = grownInput;
+    }
+
+    /**
+     * Responses are written strictly in the order of the commands, even if a later command completes first.
+     */
+    Queue<CompletableFuture<ByteBuffer[]>> getPendingResponses() {
+        return pendingResponses;
+    }
+
+    /**
+     * Buffers of completed responses not yet written to the socket.
+     */
+    Deque<ByteBuffer> getOutput() {
+        return output;
+    }
+
+    /**
+     * @return {@code false} if a flush is already requested, so a pipeline completing many commands at once
+     * wakes the event loop up only once
+     */
+    boolean requestFlush() {
+        return flushRequested.compareAndSet(false, true);
+    }
+
+    void clearFlushRequest() {
+        flushRequested.set(false);
+    }
+}
@@ -0,0 +1,215 @@
+package src.server;
+
+import src.CommandProcessor;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+class EventLoop implements Runnable, Executor {
+
+    private static final int MAX_GATHERED_BUFFERS = 1024;
+    private static final int MAX_PENDING_RESPONSES = 16 * 1024;
+
+    private final CommandProcessor commandProcessor;
+    private final Selector selector;
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+    private final Queue<SelectionKey> pendingFlushes = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    EventLoop(CommandProcessor commandProcessor) throws IOException {
+        this.commandProcessor = commandProcessor;
+        this.selector = Selector.open();
+    }
+
+    void register(SocketChannel socketChannel) {
+        pendingChannels.add(socketChannel);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs the task on this event loop, e.g. a read of a connection that had to wait for its preceding writes.
+     */
+    @Override
+    public void execute(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerPendingChannels();
+                runPendingTasks();
+                flushCompletedResponses();
+                final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel socketChannel;
+        while ((socketChannel = pendingChannels.poll()) != null) {
+            try {
+                socketChannel.register(selector, SelectionKey.OP_READ, new Connection(socketChannel, this));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void flushCompletedResponses() {
+        SelectionKey key;
+        while ((key = pendingFlushes.poll()) != null) {
+            final Connection connection = (Connection) key.attachment();
+            connection.clearFlushRequest();
+            if (key.isValid()) {
+                try {
+                    write(key, connection);
+                } catch (IOException e) {
+                    close(key);
+                }
+            }
+        }
+    }
+
+    private void requestFlush(SelectionKey key, Connection connection) {
+        if (connection.requestFlush()) {
+            pendingFlushes.add(key);
+            selector.wakeup();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        final Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                read(key, connection);
+            }
+            if (key.isValid()) {
+                write(key, connection);
+            }
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+
+    private void read(SelectionKey key, Connection connection) throws IOException {
+        if (connection.getChannel().read(connection.getInput()) < 0) {
+            close(key);
+            return;
+        }
+        processInput(key, connection);
+        if (!connection.getInput().hasRemaining()) {
+            connection.growInput();
+        }
+    }
+
+    /**
+     * Executes every complete command received so far, a client may pipeline any number of them.
+     */
+    private void processInput(SelectionKey key, Connection connection) throws IOException {
+        final ByteBuffer input = connection.getInput();
+        input.flip();
+        try {
+            CompletableFuture<ByteBuffer[]> response;
+            while ((response = commandProcessor.process(input, connection.getSession())) != null) {
+                connection.getPendingResponses().add(response);
+                if (!response.isDone()) {
+                    response.thenRun(() -> requestFlush(key, connection));
+                }
+            }
+        } catch (ProtocolException e) {
+            System.out.printf("Closing connection %s : %s\n", connection.getChannel().getRemoteAddress(), e.getMessage());
+            throw e;
+        } finally {
+            input.compact();
+        }
+    }
+
+    /**
+     * Writes the replies of all completed commands with gathering writes. While too many replies are pending
+     * the connection is not read, so a client that pipelines without reading can not exhaust the memory.
+     */
+    private void write(SelectionKey key, Connection connection) throws IOException {
+        final Queue<CompletableFuture<ByteBuffer[]>> pendingResponses = connection.getPendingResponses();
+        final Deque<ByteBuffer> output = connection.getOutput();
+        while (true) {
+            CompletableFuture<ByteBuffer[]> response;
+            while (output.size() < MAX_GATHERED_BUFFERS && (response = pendingResponses.peek()) != null && response.isDone()) {
+                pendingResponses.poll();
+                Collections.addAll(output, response.join());
+            }
+            if (output.isEmpty()) {
+                break;
+            }
+            connection.getChannel().write(output.toArray(new ByteBuffer[0]));
+            while (!output.isEmpty() && !output.peekFirst().hasRemaining()) {
+                output.pollFirst();
+            }
+            if (!output.isEmpty()) {
+                break;
+            }
+        }
+        final int readInterest = pendingResponses.size() < MAX_PENDING_RESPONSES ? SelectionKey.OP_READ : 0;
+        key.interestOps(readInterest | (output.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            close(key);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
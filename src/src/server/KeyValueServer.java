@@ -0,0 +1,65 @@
+package src.server;
+
+import src.CommandProcessor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Accepts client connections and spreads them over a fixed set of {@link EventLoop}s,
+ * each of them serving its connections with a non-blocking selector.
+ */
+public class KeyValueServer {
+
+    private final int port;
+    private final EventLoop[] eventLoops;
+    private volatile boolean running;
+    private ServerSocketChannel serverSocketChannel;
+
+    public KeyValueServer(int port, int ioThreads, CommandProcessor commandProcessor) throws IOException {
+        this.port = port;
+        this.eventLoops = new EventLoop[Math.max(1, ioThreads)];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(commandProcessor);
+        }
+    }
+
+    public void start() throws IOException {
+        running = true;
+        for (int i = 0; i < eventLoops.length; i++) {
+            final Thread thread = new Thread(eventLoops[i], "event-loop-" + i);
+            thread.start();
+        }
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverSocketChannel = serverChannel;
+            serverChannel.bind(new InetSocketAddress(port));
+            System.out.printf("Listening on port %s with %s event loops\n", port, eventLoops.length);
+            int nextEventLoop = 0;
+            while (running) {
+                final SocketChannel socketChannel = serverChannel.accept();
+                socketChannel.configureBlocking(false);
+                socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                eventLoops[nextEventLoop].register(socketChannel);
+                nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+            }
+        } catch (ClosedChannelException e) {
+            if (running) {
+                throw e;
+            }
+        }
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.stop();
+        }
+        if (serverSocketChannel != null) {
+            serverSocketChannel.close();
+        }
+    }
+}
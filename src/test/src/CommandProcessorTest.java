@@ -0,0 +1,88 @@
+package src;
+
+import org.junit.jupiter.api.Test;
+import src.core.storage.Storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CommandProcessorTest {
+
+    @Test
+    void rejectsWritesAndSnapshotsOnReadOnlyReplica() throws Exception {
+        final CommandProcessor commandProcessor = new CommandProcessor(new ReadOnlyStorage());
+        final ClientSession session = new ClientSession(Runnable::run);
+
+        assertEquals("ERROR Writes are not accepted by a read-only replica\n", reply(commandProcessor, session, "PUT k1,v1\n"));
+        assertEquals("ERROR Writes are not accepted by a read-only replica\n", reply(commandProcessor, session, "DEL k1\n"));
+        assertEquals("ERROR Writes are not accepted by a read-only replica\n", reply(commandProcessor, session, "SNAPSHOT\n"));
+        assertEquals("NIL\n", reply(commandProcessor, session, "GET k1\n"));
+    }
+
+    private static String reply(CommandProcessor commandProcessor, ClientSession session, String command) throws Exception {
+        final ByteBuffer[] reply = commandProcessor.process(ByteBuffer.wrap(command.getBytes(StandardCharsets.UTF_8)), session)
+                .get(10, TimeUnit.SECONDS);
+        final StringBuilder text = new StringBuilder();
+        for (ByteBuffer buffer : reply) {
+            text.append(StandardCharsets.UTF_8.decode(buffer));
+        }
+        return text.toString();
+    }
+
+    private static class ReadOnlyStorage implements Storage {
+
+        @Override
+        public void load() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public ByteBuffer get(String key) {
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            return false;
+        }
+
+        @Override
+        public CompletableFuture<Void> put(List<Record> records) {
+            throw new AssertionError("write on a read-only replica");
+        }
+
+        @Override
+        public CompletableFuture<Integer> delete(List<String> keys) {
+            throw new AssertionError("write on a read-only replica");
+        }
+
+        @Override
+        public CompletableFuture<Integer> snapshot() {
+            throw new AssertionError("snapshot on a read-only replica");
+        }
+
+        @Override
+        public List<Map.Entry<String, ByteBuffer>> scan(String startKey, String endKey, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        public Map<String, Object> getStats() {
+            return Map.of();
+        }
+    }
+}
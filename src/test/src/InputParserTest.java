@@ -0,0 +1,142 @@
+package src;
+
+import org.junit.jupiter.api.Test;
+import src.exception.InvalidCommandException;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InputParserTest {
+
+    private final InputParser inputParser = new InputParser();
+    private final RespFrame respFrame = new RespFrame();
+
+    @Test
+    void parsesInlinePutWithExpiry() throws Exception {
+        final Command command = inputParser.parse(buffer("PUT k1,v1;k2 , v2 ,EX 10\r\n"), respFrame);
+
+        assertEquals(CommandType.PUT, command.getType());
+        assertEquals(Protocol.INLINE, command.getProtocol());
+        final List<Record> records = command.getRecords();
+        assertEquals(2, records.size());
+        assertEquals("k1", records.get(0).getKey());
+        assertArrayEquals(bytes("v1"), records.get(0).getValue());
+        assertEquals(0, records.get(0).getExpiresAtMillis());
+        assertEquals("k2", records.get(1).getKey());
+        assertArrayEquals(bytes("v2"), records.get(1).getValue());
+        assertTrue(records.get(1).getExpiresAtMillis() > System.currentTimeMillis());
+    }
+
+    @Test
+    void skipsBlankInlineLinesAndWaitsForLineEnd() throws Exception {
+        final ByteBuffer input = buffer("\n  \nGET k1\nGET k");
+
+        final Command command = inputParser.parse(input, respFrame);
+
+        assertEquals(CommandType.GET, command.getType());
+        assertEquals(List.of("k1"), command.getKeys());
+        assertNull(inputParser.parse(input, respFrame));
+        assertEquals("GET k", StandardCharsets.UTF_8.decode(input).toString());
+    }
+
+    @Test
+    void parsesRespPutWithExpiry() throws Exception {
+        final Command command = inputParser.parse(buffer(resp("PUT", "k1", "v\r\n1", "ex", "5")), respFrame);
+
+        assertEquals(CommandType.PUT, command.getType());
+        assertEquals(Protocol.RESP, command.getProtocol());
+        assertEquals(1, command.getRecords().size());
+        assertArrayEquals(bytes("v\r\n1"), command.getRecords().get(0).getValue());
+        assertTrue(command.getRecords().get(0).getExpiresAtMillis() > System.currentTimeMillis());
+    }
+
+    @Test
+    void rejectsRespPutOfSeveralPairs() {
+        final InvalidCommandException exception = assertThrows(InvalidCommandException.class,
+                () -> inputParser.parse(buffer(resp("PUT", "k1", "v1", "k2", "v2", "k3", "v3")), respFrame));
+
+        assertEquals(Protocol.RESP, exception.getProtocol());
+    }
+
+    @Test
+    void parsesRespMputPairs() throws Exception {
+        final Command command = inputParser.parse(buffer(resp("mput", "k1", "v1", "k2", "")), respFrame);
+
+        assertEquals(CommandType.MPUT, command.getType());
+        assertEquals(2, command.getRecords().size());
+        assertEquals("k2", command.getRecords().get(1).getKey());
+        assertArrayEquals(new byte[0], command.getRecords().get(1).getValue());
+    }
+
+    @Test
+    void resumesPartialRespFrame() throws Exception {
+        final byte[] command = resp("MGET", "k1", "k2", "k3").getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer input = ByteBuffer.allocate(command.length);
+        Command parsed = null;
+        // one byte per read, compacting the buffer in between like a connection does
+        for (int i = 0; i < command.length; i++) {
+            assertNull(parsed);
+            input.put(command[i]).flip();
+            parsed = inputParser.parse(input, respFrame);
+            input.compact();
+        }
+
+        assertEquals(CommandType.MGET, parsed.getType());
+        assertEquals(List.of("k1", "k2", "k3"), parsed.getKeys());
+        assertEquals(0, input.position());
+        assertFalse(respFrame.isStarted());
+    }
+
+    @Test
+    void parsesPipelinedCommandsOfBothProtocols() throws Exception {
+        final ByteBuffer input = buffer(resp("DEL", "k1") + "EXISTS k1 k2\n" + resp("SCAN", "a", "b", "10"));
+
+        assertEquals(CommandType.DEL, inputParser.parse(input, respFrame).getType());
+        assertEquals(List.of("k1", "k2"), inputParser.parse(input, respFrame).getKeys());
+        final Command scan = inputParser.parse(input, respFrame);
+        assertEquals(List.of("a", "b"), scan.getKeys());
+        assertEquals(10, scan.getLimit());
+        assertNull(inputParser.parse(input, respFrame));
+    }
+
+    @Test
+    void rejectsUnknownCommandButKeepsReading() throws Exception {
+        final ByteBuffer input = buffer("FOO k1\nGET k1\n");
+
+        assertThrows(InvalidCommandException.class, () -> inputParser.parse(input, respFrame));
+        assertEquals(CommandType.GET, inputParser.parse(input, respFrame).getType());
+    }
+
+    @Test
+    void rejectsMalformedRespFraming() {
+        assertThrows(ProtocolException.class, () -> inputParser.parse(buffer("*1\r\n+GET\r\n"), new RespFrame()));
+        assertThrows(ProtocolException.class, () -> inputParser.parse(buffer("*1\r\n$3\r\nGETxx"), new RespFrame()));
+        assertThrows(ProtocolException.class, () -> inputParser.parse(buffer("*0\r\n"), new RespFrame()));
+        assertThrows(ProtocolException.class, () -> inputParser.parse(buffer("*1\r\n$-5\r\n"), new RespFrame()));
+    }
+
+    private static String resp(String... arguments) {
+        final StringBuilder command = new StringBuilder("*").append(arguments.length).append("\r\n");
+        for (String argument : arguments) {
+            command.append('$').append(bytes(argument).length).append("\r\n").append(argument).append("\r\n");
+        }
+        return command.toString();
+    }
+
+    private static ByteBuffer buffer(String input) {
+        return ByteBuffer.wrap(bytes(input));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
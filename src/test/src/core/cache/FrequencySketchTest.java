@@ -0,0 +1,64 @@
+package src.core.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+    @Test
+    void countsAccessesUpToFifteen() {
+        final FrequencySketch frequencySketch = new FrequencySketch(1024);
+
+        for (int i = 0; i < 5; i++) {
+            frequencySketch.increment("warm");
+        }
+        for (int i = 0; i < 40; i++) {
+            frequencySketch.increment("hot");
+        }
+
+        assertEquals(5, frequencySketch.frequency("warm"));
+        assertEquals(15, frequencySketch.frequency("hot"));
+        assertEquals(0, frequencySketch.frequency("cold"));
+    }
+
+    @Test
+    void halvesCountersOnceSampleIsFull() {
+        final FrequencySketch frequencySketch = new FrequencySketch(64);
+        for (int i = 0; i < 12; i++) {
+            frequencySketch.increment("hot");
+        }
+
+        // the table holds 64 counters per row, so 640 additions trigger a reset
+        for (int i = 0; i < 640; i++) {
+            frequencySketch.increment("key-" + i);
+        }
+
+        final int frequency = frequencySketch.frequency("hot");
+        assertTrue(frequency >= 5 && frequency <= 7, "frequency after reset : " + frequency);
+    }
+
+    @Test
+    void countsConcurrentIncrements() throws InterruptedException {
+        final FrequencySketch frequencySketch = new FrequencySketch(1 << 16);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 3; i++) {
+                    frequencySketch.increment("shared");
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(12, frequencySketch.frequency("shared"));
+    }
+}
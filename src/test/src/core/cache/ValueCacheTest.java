@@ -0,0 +1,93 @@
+package src.core.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueCacheTest {
+
+    private static final int VALUE_SIZE = 1000;
+
+    @Test
+    void staysWithinMaxWeight() {
+        final ValueCache valueCache = new ValueCache(20 * 1024);
+
+        for (int i = 0; i < 100; i++) {
+            valueCache.put("key-" + i, value(i));
+        }
+
+        assertTrue(valueCache.getWeight() <= 20 * 1024);
+        assertTrue(valueCache.getWeight() > 0);
+    }
+
+    @Test
+    void returnsDuplicateOfCachedValue() {
+        final ValueCache valueCache = new ValueCache(64 * 1024);
+        valueCache.put("key", value(1));
+
+        final ByteBuffer firstRead = valueCache.get("key");
+        firstRead.position(firstRead.limit());
+
+        assertEquals(VALUE_SIZE, valueCache.get("key").remaining());
+        assertNull(valueCache.get("absent"));
+    }
+
+    @Test
+    void keepsHotKeysDuringScanOfColdKeys() {
+        final ValueCache valueCache = new ValueCache(16 * 1024);
+        for (int i = 0; i < 10; i++) {
+            valueCache.put("hot-" + i, value(i));
+            for (int read = 0; read < 5; read++) {
+                valueCache.get("hot-" + i);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            final String coldKey = "cold-" + i;
+            if (valueCache.get(coldKey) == null) {
+                valueCache.putIfAbsent(coldKey, value(i));
+            }
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(valueCache.get("hot-" + i), "hot-" + i);
+        }
+    }
+
+    @Test
+    void removesOnlyExpectedValue() {
+        final ValueCache valueCache = new ValueCache(64 * 1024);
+        final ByteBuffer staleValue = value(1);
+        assertTrue(valueCache.putIfAbsent("key", staleValue));
+        valueCache.put("key", value(2));
+
+        valueCache.remove("key", staleValue);
+        assertNotNull(valueCache.get("key"));
+
+        valueCache.remove("key");
+        assertNull(valueCache.get("key"));
+        assertEquals(0, valueCache.getWeight());
+    }
+
+    @Test
+    void rejectsValueLargerThanCache() {
+        final ValueCache valueCache = new ValueCache(512);
+
+        assertFalse(valueCache.putIfAbsent("key", value(1)));
+        assertNull(valueCache.get("key"));
+    }
+
+    private static ByteBuffer value(int fill) {
+        final ByteBuffer value = ByteBuffer.allocate(VALUE_SIZE);
+        for (int i = 0; i < VALUE_SIZE; i++) {
+            value.put(i, (byte) fill);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,161 @@
+package src.core.config;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.core.index.Expiration;
+import src.core.index.IndexType;
+import src.core.index.RecordIndex;
+import src.files.HintFileManager;
+import src.files.RecordCodec;
+import src.files.SegmentRegistry;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryMapPopulatorTest {
+
+    @TempDir
+    File directory;
+
+    private final SegmentRegistry segmentRegistry = new SegmentRegistry();
+    private final RecordIndex index = IndexType.HEAP.createIndex(16);
+    private final ConcurrentMap<String, Expiration> expirations = new ConcurrentHashMap<>();
+    private final HintFileManager hintFileManager = new HintFileManager();
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.RECOVERY_THREADS, "4");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.RECOVERY_THREADS);
+    }
+
+    @AfterEach
+    void waitForHintFiles() {
+        hintFileManager.close();
+    }
+
+    @Test
+    void mergesSegmentsRecoveredInParallel() throws Exception {
+        final long nowMillis = System.currentTimeMillis();
+        writeSegment(1, record("a", "1"), record("b", "1"), record("c", "1"), expiringRecord("d", nowMillis - 1000), expiringRecord("e", nowMillis + 60_000));
+        writeSegment(2, record("a", "2"), tombstone("b"), record("f", "1"), tombstone("f"));
+        writeSegment(3, record("a", "3"), record("b", "3"));
+        final File activeSegment = segmentFile(3);
+        final long activeSegmentLength = activeSegment.length();
+        Files.write(activeSegment.toPath(), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        populate();
+
+        assertEquals(segmentRegistry.register(activeSegment), index.get("a").getSegmentId());
+        assertEquals(segmentRegistry.register(activeSegment), index.get("b").getSegmentId());
+        assertTrue(index.containsKey("c"));
+        assertFalse(index.containsKey("d"));
+        assertTrue(index.containsKey("e"));
+        assertFalse(index.containsKey("f"));
+        assertEquals(4, index.size());
+        assertEquals(1, expirations.size());
+        assertEquals(activeSegmentLength, activeSegment.length());
+    }
+
+    @Test
+    void tombstoneOnlyRemovesOlderRecords() throws Exception {
+        writeSegment(1, tombstone("a"));
+        writeSegment(2, record("a", "2"));
+        writeSegment(3, record("b", "1"));
+
+        populate();
+
+        assertEquals(segmentRegistry.register(segmentFile(2)), index.get("a").getSegmentId());
+    }
+
+    @Test
+    void recoversSealedSegmentsFromHintFiles() throws Throwable {
+        writeSegment(1, record("a", "1"), record("b", "1"));
+        writeSegment(2, record("a", "2"), tombstone("b"));
+        writeSegment(3, record("c", "1"));
+        hintFileManager.writeHintFile(segmentFile(1));
+        hintFileManager.writeHintFile(segmentFile(2));
+        // values of hinted segments are never read, so garbage in them goes unnoticed
+        corruptByte(segmentFile(1), RecordCodec.SEGMENT_HEADER_SIZE + RecordCodec.RECORD_HEADER_SIZE + 1);
+
+        populate();
+
+        assertEquals(segmentRegistry.register(segmentFile(2)), index.get("a").getSegmentId());
+        assertNull(index.get("b"));
+        assertTrue(index.containsKey("c"));
+    }
+
+    @Test
+    void failsOnCorruptedSealedSegment() throws Exception {
+        writeSegment(1, record("a", "1"), record("b", "1"));
+        writeSegment(2, record("c", "1"));
+        final long length = segmentFile(1).length();
+        corruptByte(segmentFile(1), (int) length - 1);
+
+        assertThrows(RuntimeException.class, this::populate);
+        assertEquals(length, segmentFile(1).length());
+    }
+
+    private void populate() {
+        new InMemoryMapPopulator(hintFileManager).populateIndexWithDataFromDirectory(directory, segmentRegistry, index, expirations);
+    }
+
+    private File segmentFile(int sequenceNumber) {
+        return new File(directory, CacheConfigConstants.DATA_FILE_NAME_PREFIX + "-" + sequenceNumber + ".dat");
+    }
+
+    private void writeSegment(int sequenceNumber, ByteBuffer... records) throws Exception {
+        try (FileChannel channel = FileChannel.open(segmentFile(sequenceNumber).toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(RecordCodec.segmentHeader());
+            for (ByteBuffer record : records) {
+                channel.write(record);
+            }
+        }
+    }
+
+    private static ByteBuffer record(String key, String value) {
+        return RecordCodec.encode(key, value, System.currentTimeMillis(), (byte) 0);
+    }
+
+    private static ByteBuffer tombstone(String key) {
+        return RecordCodec.encode(key, "", System.currentTimeMillis(), RecordCodec.TOMBSTONE_FLAG);
+    }
+
+    private static ByteBuffer expiringRecord(String key, long expiresAtMillis) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(RecordCodec.encodedSize(keyBytes.length, value.length, RecordCodec.EXPIRES_FLAG));
+        RecordCodec.encode(record, keyBytes, value, System.currentTimeMillis(), RecordCodec.EXPIRES_FLAG, expiresAtMillis);
+        return record.flip();
+    }
+
+    private static void corruptByte(File file, int position) throws Exception {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(position);
+            final int value = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(value ^ 0xFF);
+        }
+    }
+}
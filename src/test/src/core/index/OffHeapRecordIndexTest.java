@@ -0,0 +1,57 @@
+package src.core.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapRecordIndexTest {
+
+    @Test
+    void putsAndRemovesKeys() {
+        final OffHeapRecordIndex index = new OffHeapRecordIndex(16);
+        final RecordLocation first = new RecordLocation(1, 4, 30);
+        final RecordLocation second = new RecordLocation(2, 100, 40);
+
+        assertNull(index.put("key", first));
+        assertEquals(first, index.put("key", second));
+        assertEquals(second, index.get("key"));
+        assertEquals(1, index.size());
+
+        assertFalse(index.remove("key", first));
+        assertTrue(index.replace("key", second, first));
+        assertEquals(first, index.remove("key"));
+        assertNull(index.get("key"));
+        assertFalse(index.containsKey("key"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void keepsAllKeysWhileGrowing() {
+        final OffHeapRecordIndex index = new OffHeapRecordIndex(1);
+        final int keys = 100_000;
+        for (int i = 0; i < keys; i++) {
+            index.put("key-" + i, new RecordLocation(i % 1000, i * 64L, 64));
+        }
+        for (int i = 0; i < keys; i += 2) {
+            assertEquals(new RecordLocation(i % 1000, i * 64L, 64), index.remove("key-" + i));
+        }
+        for (int i = 0; i < keys; i++) {
+            index.put("other-" + i, new RecordLocation(1, i, 8));
+        }
+
+        assertEquals(keys / 2 + keys, index.size());
+        for (int i = 0; i < keys; i++) {
+            assertEquals(i % 2 == 0 ? null : new RecordLocation(i % 1000, i * 64L, 64), index.get("key-" + i));
+            assertEquals(new RecordLocation(1, i, 8), index.get("other-" + i));
+        }
+        final Map<String, RecordLocation> visited = new HashMap<>();
+        index.forEach(visited::put);
+        assertEquals(index.size(), visited.size());
+    }
+}
@@ -0,0 +1,52 @@
+package src.core.lsm;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    private static final int KEYS = 10_000;
+
+    @Test
+    void hasNoFalseNegativesAndFewFalsePositives() {
+        final BloomFilter bloomFilter = new BloomFilter(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            bloomFilter.add(key("present-" + i));
+        }
+
+        for (int i = 0; i < KEYS; i++) {
+            assertTrue(bloomFilter.mightContain(key("present-" + i)));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < KEYS; i++) {
+            if (bloomFilter.mightContain(key("absent-" + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < KEYS * 3 / 100, "false positives : " + falsePositives);
+    }
+
+    @Test
+    void readsBackWrittenFilter() {
+        final BloomFilter bloomFilter = new BloomFilter(100);
+        for (int i = 0; i < 100; i++) {
+            bloomFilter.add(key("key-" + i));
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(bloomFilter.serializedSize());
+        bloomFilter.writeTo(buffer);
+
+        final BloomFilter readFilter = BloomFilter.readFrom(buffer.flip());
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(readFilter.mightContain(key("key-" + i)));
+        }
+    }
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,107 @@
+package src.core.lsm;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LsmStorageTest {
+
+    private static final int KEYS = 300;
+
+    @TempDir
+    File directory;
+
+    private LsmStorage storage;
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "4");
+        System.setProperty(CacheConfigConstants.LSM_MEMTABLE_MAX_KILOBYTES, "1");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+        System.clearProperty(CacheConfigConstants.LSM_MEMTABLE_MAX_KILOBYTES);
+        System.clearProperty(CacheConfigConstants.LSM_COMPACTION_TABLES);
+    }
+
+    @AfterEach
+    void closeStorage() {
+        storage.close();
+    }
+
+    @Test
+    void servesLatestValuesAcrossFlushesAndRestarts() throws Exception {
+        load(2);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < KEYS; i++) {
+                storage.put(List.of(new Record(key(i), ("value-" + round + "-" + i).getBytes(StandardCharsets.UTF_8)))).get(10, TimeUnit.SECONDS);
+            }
+        }
+        assertEquals(2, storage.delete(List.of(key(1), key(2), "absent")).get(10, TimeUnit.SECONDS));
+
+        assertLatestValues();
+        storage.close();
+        load(2);
+        assertLatestValues();
+    }
+
+    @Test
+    void flushedRecordsKeepTheirWriteTimestamp() throws Exception {
+        load(100);
+        storage.put(List.of(new Record("key", "value".getBytes(StandardCharsets.UTF_8)))).get(10, TimeUnit.SECONDS);
+        final long writtenBeforeMillis = System.currentTimeMillis();
+        Thread.sleep(50);
+
+        storage.snapshot().get(10, TimeUnit.SECONDS);
+
+        final File[] tableFiles = directory.listFiles((dir, name) -> name.endsWith(".sst"));
+        assertEquals(1, tableFiles.length);
+        final SSTable table = SSTable.open(tableFiles[0], 1);
+        final Record record = table.find("key", "key".getBytes(StandardCharsets.UTF_8));
+        table.close();
+        assertTrue(record.getTimestampMillis() > 0 && record.getTimestampMillis() <= writtenBeforeMillis,
+                "timestamp " + record.getTimestampMillis() + " is after " + writtenBeforeMillis);
+    }
+
+    private void assertLatestValues() throws Exception {
+        assertNull(storage.get(key(1)));
+        assertFalse(storage.containsKey(key(2)));
+        assertEquals("value-2-150", StandardCharsets.UTF_8.decode(storage.get(key(150))).toString());
+        final List<String> scannedKeys = new ArrayList<>();
+        for (Map.Entry<String, ByteBuffer> entry : storage.scan(key(0), key(5), 10)) {
+            scannedKeys.add(entry.getKey());
+        }
+        assertEquals(List.of(key(0), key(3), key(4)), scannedKeys);
+    }
+
+    private void load(int compactionTables) throws Exception {
+        System.setProperty(CacheConfigConstants.LSM_COMPACTION_TABLES, String.valueOf(compactionTables));
+        storage = new LsmStorage(directory);
+        storage.load();
+    }
+
+    private static String key(int i) {
+        return String.format("key-%04d", i);
+    }
+}
@@ -0,0 +1,54 @@
+package src.core.lsm;
+
+import org.junit.jupiter.api.Test;
+import src.Record;
+import src.files.RecordCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemtableTest {
+
+    @Test
+    void sizesKeysByTheirUtf8Bytes() {
+        final Memtable memtable = new Memtable();
+        long expectedSize = 0;
+        for (String key : List.of("ascii", "\u00e9t\u00e9", "\u6f22\u5b57", "\uD83D\uDE00")) {
+            final Record record = new Record(key, new byte[10]);
+            memtable.put(record);
+            expectedSize += RecordCodec.encodedSize(key.getBytes(StandardCharsets.UTF_8).length, 10, RecordCodec.flags(record));
+        }
+
+        assertEquals(expectedSize, memtable.getSizeInBytes());
+    }
+
+    @Test
+    void replacesSizeOfOverwrittenRecord() {
+        final Memtable memtable = new Memtable();
+        memtable.put(new Record("key", new byte[100]));
+        memtable.put(Record.tombstone("key"));
+
+        assertEquals(RecordCodec.encodedSize(3, 0, RecordCodec.TOMBSTONE_FLAG), memtable.getSizeInBytes());
+        assertTrue(memtable.get("key").isTombstone());
+        assertNull(memtable.get("other"));
+    }
+
+    @Test
+    void iteratesInKeyOrderFromStartKey() {
+        final Memtable memtable = new Memtable();
+        for (String key : List.of("c", "a", "d", "b")) {
+            memtable.put(new Record(key, new byte[0]));
+        }
+
+        final List<String> keys = new ArrayList<>();
+        final Iterator<Record> records = memtable.iterator("b");
+        records.forEachRemaining(record -> keys.add(record.getKey()));
+        assertEquals(List.of("b", "c", "d"), keys);
+    }
+}
@@ -0,0 +1,33 @@
+package src.core.lsm;
+
+import org.junit.jupiter.api.Test;
+import src.Record;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MergingIteratorTest {
+
+    @Test
+    void returnsRecordOfNewestSourcePerKey() {
+        final List<Record> newest = List.of(record("b", "new"), Record.tombstone("c"));
+        final List<Record> oldest = List.of(record("a", "old"), record("b", "old"), record("c", "old"), record("d", "old"));
+
+        final MergingIterator records = new MergingIterator(List.of(newest.iterator(), List.<Record>of().iterator(), oldest.iterator()));
+
+        final List<String> merged = new ArrayList<>();
+        records.forEachRemaining(record -> merged.add(record.getKey() + "=" + (record.isTombstone()
+                ? "tombstone" : new String(record.getValue(), StandardCharsets.UTF_8))));
+        assertEquals(List.of("a=old", "b=new", "c=tombstone", "d=old"), merged);
+        assertThrows(NoSuchElementException.class, records::next);
+    }
+
+    private static Record record(String key, String value) {
+        return new Record(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,80 @@
+package src.core.lsm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SSTableTest {
+
+    private static final int KEYS = 1000;
+    private static final long TIMESTAMP = 1_600_000_000_000L;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void findsRecordsWithTheirTimestamps() throws Exception {
+        final SSTable table = write(records(), false);
+
+        final Record record = table.find("key-0500", "key-0500".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals("value-500".getBytes(StandardCharsets.UTF_8), record.getValue());
+        assertEquals(TIMESTAMP + 500, record.getTimestampMillis());
+        assertTrue(table.find("key-0007", "key-0007".getBytes(StandardCharsets.UTF_8)).isTombstone());
+        assertNull(table.find("absent", "absent".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(KEYS, table.getRecordCount());
+        table.close();
+    }
+
+    @Test
+    void iteratesOverBlocksFromStartKey() throws Exception {
+        final SSTable table = write(records(), false);
+
+        final List<String> keys = new ArrayList<>();
+        table.iterator("key-0990").forEachRemaining(record -> keys.add(record.getKey()));
+        assertEquals(List.of("key-0990", "key-0991", "key-0992", "key-0993", "key-0994",
+                "key-0995", "key-0996", "key-0997", "key-0998", "key-0999"), keys);
+        table.close();
+    }
+
+    @Test
+    void dropsTombstonesAndExpiredRecordsIfAsked() throws Exception {
+        final List<Record> records = records();
+        records.get(1).setExpiresAtMillis(System.currentTimeMillis() - 1);
+
+        final SSTable table = write(records, true);
+
+        assertEquals(KEYS - KEYS / 7 - 2, table.getRecordCount());
+        assertNull(table.find("key-0001", "key-0001".getBytes(StandardCharsets.UTF_8)));
+        assertNull(table.find("key-0007", "key-0007".getBytes(StandardCharsets.UTF_8)));
+        table.close();
+    }
+
+    private SSTable write(List<Record> records, boolean dropDeleted) throws Exception {
+        SSTableWriter.write(new File(directory, "table.sst"), 1, records.iterator(), records.size(), 1, 1, dropDeleted).close();
+        return SSTable.open(new File(directory, "table.sst"), 1);
+    }
+
+    /**
+     * Every 7th key is a tombstone, every record has its own timestamp.
+     */
+    private static List<Record> records() {
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            final String key = String.format("key-%04d", i);
+            final Record record = i % 7 == 0 ? Record.tombstone(key) : new Record(key, ("value-" + i).getBytes(StandardCharsets.UTF_8));
+            record.setTimestampMillis(TIMESTAMP + i);
+            records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,68 @@
+package src.core.storage;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpirySweeperTest {
+
+    @TempDir
+    File directory;
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "1024");
+        System.setProperty(CacheConfigConstants.EXPIRY_SWEEP_INTERVAL_MILLIS, "10");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+        System.clearProperty(CacheConfigConstants.EXPIRY_SWEEP_INTERVAL_MILLIS);
+    }
+
+    @Test
+    void reclaimsExpiredKeysThatAreNeverRead() throws Exception {
+        final HashIndexStorage storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+        final ExpirySweeper expirySweeper = new ExpirySweeper(storage);
+        try {
+            final List<Record> records = new ArrayList<>();
+            final long expiresAtMillis = System.currentTimeMillis() + 50;
+            for (int i = 0; i < 2000; i++) {
+                final Record record = new Record("key-" + i, "value".getBytes(StandardCharsets.UTF_8));
+                record.setExpiresAtMillis(i % 2 == 0 ? expiresAtMillis : 0);
+                records.add(record);
+            }
+            storage.put(records).get(10, TimeUnit.SECONDS);
+            expirySweeper.start();
+
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (storage.getExpiringKeys() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(0, storage.getExpiringKeys());
+            assertEquals(1000, storage.size());
+            assertTrue(storage.containsKey("key-1"));
+        } finally {
+            expirySweeper.stop();
+            storage.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package src.core.storage;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+import src.metrics.Metrics;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashIndexStorageTest {
+
+    @TempDir
+    File directory;
+
+    private HashIndexStorage storage;
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "1024");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+    }
+
+    @BeforeEach
+    void loadStorage() throws Exception {
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+    }
+
+    @AfterEach
+    void closeStorage() {
+        storage.close();
+    }
+
+    @Test
+    void countsOnlyKeysThatExistedAsDeleted() throws Exception {
+        storage.put(List.of(record("a", "1"), record("b", "1"))).get(10, TimeUnit.SECONDS);
+        final long deletedRecords = Metrics.DELETED_RECORDS.sum();
+
+        assertEquals(2, storage.delete(List.of("a", "b", "absent")).get(10, TimeUnit.SECONDS));
+        assertEquals(0, storage.delete(List.of("a")).get(10, TimeUnit.SECONDS));
+
+        assertEquals(deletedRecords + 2, Metrics.DELETED_RECORDS.sum());
+        assertFalse(storage.containsKey("a"));
+    }
+
+    @Test
+    void expiresKeyLazilyOnRead() throws Exception {
+        final long expiredKeys = Metrics.EXPIRED_KEYS.sum();
+        storage.put(List.of(expiringRecord("a", 50))).get(10, TimeUnit.SECONDS);
+        assertNotNull(storage.get("a"));
+
+        Thread.sleep(100);
+
+        assertNull(storage.get("a"));
+        assertFalse(storage.containsKey("a"));
+        assertEquals(0, storage.size());
+        assertEquals(expiredKeys + 1, Metrics.EXPIRED_KEYS.sum());
+    }
+
+    @Test
+    void writeWithoutExpiryClearsPreviousOne() throws Exception {
+        storage.put(List.of(expiringRecord("a", 50))).get(10, TimeUnit.SECONDS);
+        storage.put(List.of(record("a", "2"))).get(10, TimeUnit.SECONDS);
+
+        Thread.sleep(100);
+
+        assertEquals("2", StandardCharsets.UTF_8.decode(storage.get("a")).toString());
+        assertEquals(0, storage.getExpiringKeys());
+    }
+
+    @Test
+    void sweepRemovesExpiredKeysWithoutReads() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            storage.put(List.of(expiringRecord("expiring-" + i, 50), record("durable-" + i, "1"))).get(10, TimeUnit.SECONDS);
+        }
+
+        Thread.sleep(100);
+
+        assertEquals(10, storage.sweepExpiredKeys(100));
+        assertEquals(10, storage.size());
+        assertEquals(0, storage.getExpiringKeys());
+    }
+
+    @Test
+    void dropsKeysThatExpiredWhileClosed() throws Exception {
+        storage.put(List.of(expiringRecord("short", 50), expiringRecord("long", 60_000))).get(10, TimeUnit.SECONDS);
+        storage.close();
+
+        Thread.sleep(100);
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+
+        assertFalse(storage.containsKey("short"));
+        assertTrue(storage.containsKey("long"));
+        assertEquals(1, storage.getExpiringKeys());
+    }
+
+    private static Record expiringRecord(String key, long ttlMillis) {
+        final Record record = record(key, "expiring");
+        record.setExpiresAtMillis(System.currentTimeMillis() + ttlMillis);
+        return record;
+    }
+
+    private static Record record(String key, String value) {
+        return new Record(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,98 @@
+package src.core.storage;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedStorageTest {
+
+    private static final int KEYS = 200;
+
+    @TempDir
+    File directory;
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "1024");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+    }
+
+    @Test
+    void spreadsKeysOverShardsAndReloadsThem() throws Exception {
+        ShardedStorage storage = load(4);
+        storage.put(records()).get(10, TimeUnit.SECONDS);
+
+        for (HashIndexStorage shard : storage.getShards()) {
+            assertTrue(shard.size() > 0 && shard.size() < KEYS, "keys of " + shard.getDataDirectory() + " : " + shard.size());
+        }
+        assertEquals(2, storage.delete(List.of("key-1", "key-2", "absent")).get(10, TimeUnit.SECONDS));
+        storage.close();
+
+        storage = load(4);
+        assertEquals(KEYS - 2, storage.size());
+        assertFalse(storage.containsKey("key-1"));
+        assertEquals("value-3", StandardCharsets.UTF_8.decode(storage.get("key-3")).toString());
+        storage.close();
+    }
+
+    @Test
+    void refusesOtherNumberOfShards() throws Exception {
+        final ShardedStorage storage = load(4);
+        storage.put(records()).get(10, TimeUnit.SECONDS);
+        storage.close();
+
+        assertThrows(IllegalStateException.class, () -> new ShardedStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 2).load());
+        assertThrows(IllegalStateException.class, () -> new ShardedStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1).load());
+    }
+
+    @Test
+    void clearDeletesOnlyStoreFiles() throws Exception {
+        final ShardedStorage storage = load(2);
+        storage.put(records()).get(10, TimeUnit.SECONDS);
+        storage.close();
+        final File foreignFile = new File(directory, "shard-0/notes.txt");
+        Files.writeString(foreignFile.toPath(), "kept");
+
+        new ShardedStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 2).clear();
+
+        assertTrue(foreignFile.isFile());
+        assertEquals(List.of("notes.txt"), List.of(new File(directory, "shard-0").list()));
+        assertEquals(0, new File(directory, "shard-1").list().length);
+    }
+
+    private ShardedStorage load(int shards) throws Exception {
+        final ShardedStorage storage = new ShardedStorage(StorageMode.OFFSET, IndexType.HEAP, directory, shards);
+        storage.load();
+        return storage;
+    }
+
+    private static List<Record> records() {
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            records.add(new Record("key-" + i, ("value-" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        return records;
+    }
+}
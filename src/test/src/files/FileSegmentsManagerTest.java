@@ -0,0 +1,115 @@
+package src.files;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+import src.core.storage.HashIndexStorage;
+import src.core.storage.StorageMode;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileSegmentsManagerTest {
+
+    private static final int KEYS = 20;
+
+    @TempDir
+    File directory;
+
+    private final DataFilesProcessingHelper dataFilesProcessingHelper = new DataFilesProcessingHelper();
+    private HashIndexStorage storage;
+    private FileSegmentsManager fileSegmentsManager;
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "1");
+        System.setProperty(CacheConfigConstants.COMPACTION_CHECK_INTERVAL_MILLIS, "20");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+        System.clearProperty(CacheConfigConstants.COMPACTION_CHECK_INTERVAL_MILLIS);
+        System.clearProperty(CacheConfigConstants.MAX_DATA_FILES_AMOUNT);
+    }
+
+    @AfterEach
+    void stop() {
+        fileSegmentsManager.stop();
+        storage.close();
+    }
+
+    @Test
+    void squashesOldestSegmentsOnceThereAreTooMany() throws Exception {
+        start(4);
+
+        for (int round = 0; round < 10; round++) {
+            writeAllKeys(round);
+        }
+
+        awaitUntil(() -> dataFilesProcessingHelper.listSortedDataFiles(directory).size() <= 4);
+        assertAllKeysHaveValue(9);
+    }
+
+    @Test
+    void rewritesSegmentsMostlyHoldingGarbage() throws Exception {
+        start(1000);
+
+        for (int round = 0; round < 10; round++) {
+            writeAllKeys(round);
+        }
+
+        // every round overwrites the previous one, so sealed segments end up being garbage only
+        awaitUntil(() -> totalSize() < 4 * 1024 + KEYS * 128);
+        assertAllKeysHaveValue(9);
+    }
+
+    private void start(int maxDataFiles) throws Exception {
+        System.setProperty(CacheConfigConstants.MAX_DATA_FILES_AMOUNT, String.valueOf(maxDataFiles));
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+        fileSegmentsManager = new FileSegmentsManager(storage);
+        fileSegmentsManager.startCompactionScheduler();
+    }
+
+    private void writeAllKeys(int round) throws Exception {
+        for (int key = 0; key < KEYS; key++) {
+            final byte[] value = ("value-" + round + "-" + "x".repeat(64)).getBytes(StandardCharsets.UTF_8);
+            storage.put(List.of(new Record("key-" + key, value))).get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private void assertAllKeysHaveValue(int round) throws Exception {
+        for (int key = 0; key < KEYS; key++) {
+            final ByteBuffer value = storage.get("key-" + key);
+            assertTrue(StandardCharsets.UTF_8.decode(value).toString().startsWith("value-" + round + "-"));
+        }
+        assertEquals(KEYS, storage.size());
+    }
+
+    private long totalSize() {
+        return dataFilesProcessingHelper.listSortedDataFiles(directory).stream().mapToLong(File::length).sum();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+}
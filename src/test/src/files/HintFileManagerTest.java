@@ -0,0 +1,115 @@
+package src.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.core.index.RecordLocation;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HintFileManagerTest {
+
+    private static final long EXPIRES_AT = 4_102_444_800_000L;
+
+    @TempDir
+    File directory;
+
+    private final HintFileManager hintFileManager = new HintFileManager();
+
+    @AfterEach
+    void closeHintFileManager() {
+        hintFileManager.close();
+    }
+
+    @Test
+    void hintListsEveryRecordOfSegment() throws Throwable {
+        final File segment = writeSegment();
+        final List<String> scannedRecords = new ArrayList<>();
+        new SegmentScanner().scan(segment, 7, (buffer, position, location) -> scannedRecords.add(describe(
+                RecordCodec.decodeKey(buffer, position), location, RecordCodec.isTombstone(buffer, position), RecordCodec.getExpiresAt(buffer, position))));
+
+        hintFileManager.writeHintFile(segment);
+
+        assertEquals(new File(directory, "cache-data-1.hint"), hintFileManager.getHintFile(segment));
+        assertEquals(scannedRecords, readHint(segment));
+        assertTrue(scannedRecords.get(1).endsWith(" b (tombstone)"));
+        assertTrue(scannedRecords.get(2).endsWith(" c expires " + EXPIRES_AT));
+    }
+
+    @Test
+    void ignoresHintOfSegmentThatChangedSince() throws Throwable {
+        final File segment = writeSegment();
+        hintFileManager.writeHintFile(segment);
+
+        Files.write(segment.toPath(), RecordCodec.encode("d", "4", 1, (byte) 0).array(), StandardOpenOption.APPEND);
+
+        assertFalse(hintFileManager.readHintFile(segment, 7, (key, location, timestamp, tombstone, expiresAt) -> {
+        }));
+    }
+
+    @Test
+    void ignoresCorruptedHint() throws Throwable {
+        final File segment = writeSegment();
+        hintFileManager.writeHintFile(segment);
+        final File hintFile = hintFileManager.getHintFile(segment);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(hintFile, "rw")) {
+            randomAccessFile.seek(hintFile.length() / 2);
+            final int value = randomAccessFile.read();
+            randomAccessFile.seek(hintFile.length() / 2);
+            randomAccessFile.write(value ^ 0xFF);
+        }
+
+        assertFalse(hintFileManager.readHintFile(segment, 7, (key, location, timestamp, tombstone, expiresAt) -> {
+        }));
+    }
+
+    @Test
+    void deletesHintFile() throws Throwable {
+        final File segment = writeSegment();
+        hintFileManager.writeHintFile(segment);
+        assertTrue(hintFileManager.getHintFile(segment).isFile());
+
+        hintFileManager.deleteHintFile(segment);
+
+        assertFalse(hintFileManager.getHintFile(segment).exists());
+        assertTrue(segment.isFile());
+    }
+
+    private List<String> readHint(File segment) {
+        final List<String> hintedRecords = new ArrayList<>();
+        assertTrue(hintFileManager.readHintFile(segment, 7, (key, location, timestamp, tombstone, expiresAt) -> hintedRecords.add(describe(key, location, tombstone, expiresAt))));
+        return hintedRecords;
+    }
+
+    private static String describe(String key, RecordLocation location, boolean tombstone, long expiresAt) {
+        return location.getSegmentId() + ":" + location.getOffset() + ":" + location.getLength() + " " + key
+                + (tombstone ? " (tombstone)" : "") + (expiresAt != 0 ? " expires " + expiresAt : "");
+    }
+
+    private File writeSegment() throws Exception {
+        final File segment = new File(directory, "cache-data-1.dat");
+        final byte[] key = "c".getBytes(StandardCharsets.UTF_8);
+        final byte[] value = "3".getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer expiringRecord = ByteBuffer.allocate(RecordCodec.encodedSize(key.length, value.length, RecordCodec.EXPIRES_FLAG));
+        RecordCodec.encode(expiringRecord, key, value, 1, RecordCodec.EXPIRES_FLAG, EXPIRES_AT);
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(RecordCodec.segmentHeader());
+            channel.write(RecordCodec.encode("a", "1", 1, (byte) 0));
+            channel.write(RecordCodec.encode("b", "", 1, RecordCodec.TOMBSTONE_FLAG));
+            channel.write(expiringRecord.flip());
+        }
+        return segment;
+    }
+}
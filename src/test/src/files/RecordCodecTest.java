@@ -0,0 +1,74 @@
+package src.files;
+
+import org.junit.jupiter.api.Test;
+import src.Record;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordCodecTest {
+
+    @Test
+    void decodesWhatWasEncoded() {
+        final Record record = new Record("key", "value".getBytes(StandardCharsets.UTF_8));
+        record.setExpiresAtMillis(1_700_000_000_000L);
+        record.setCompressed(true);
+        final ByteBuffer buffer = encode(record);
+
+        assertEquals(buffer.limit(), RecordCodec.checkRecord(buffer, 0, buffer.limit()));
+        assertEquals(42L, RecordCodec.getTimestamp(buffer, 0));
+        final Record decoded = RecordCodec.decodeRecord(buffer, 0);
+        assertEquals("key", decoded.getKey());
+        assertArrayEquals(record.getValue(), decoded.getValue());
+        assertEquals(record.getExpiresAtMillis(), decoded.getExpiresAtMillis());
+        assertTrue(decoded.isCompressed());
+        assertFalse(decoded.isTombstone());
+    }
+
+    @Test
+    void decodesTombstone() {
+        final ByteBuffer buffer = encode(Record.tombstone("gone"));
+
+        assertEquals(RecordCodec.encodedSize(4, 0), RecordCodec.checkRecord(buffer, 0, buffer.limit()));
+        assertTrue(RecordCodec.isTombstone(buffer, 0));
+        assertEquals(0, RecordCodec.getExpiresAt(buffer, 0));
+        assertEquals("gone", RecordCodec.decodeRecord(buffer, 0).getKey());
+    }
+
+    @Test
+    void reportsTruncatedRecordAsIncomplete() {
+        final ByteBuffer buffer = encode(new Record("key", "value".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(RecordCodec.INCOMPLETE, RecordCodec.checkRecord(buffer, 0, buffer.limit() - 1));
+        assertEquals(RecordCodec.INCOMPLETE, RecordCodec.checkRecord(buffer, 0, RecordCodec.RECORD_HEADER_SIZE - 1));
+    }
+
+    @Test
+    void detectsCorruptedValue() {
+        final ByteBuffer buffer = encode(new Record("key", "value".getBytes(StandardCharsets.UTF_8)));
+        buffer.put(buffer.limit() - 1, (byte) (buffer.get(buffer.limit() - 1) ^ 1));
+
+        assertEquals(RecordCodec.CORRUPTED, RecordCodec.checkRecord(buffer, 0, buffer.limit()));
+    }
+
+    @Test
+    void detectsNegativeLength() {
+        final ByteBuffer buffer = encode(new Record("key", "value".getBytes(StandardCharsets.UTF_8)));
+        buffer.putInt(13, -1);
+
+        assertEquals(RecordCodec.CORRUPTED, RecordCodec.checkRecord(buffer, 0, buffer.limit()));
+    }
+
+    private static ByteBuffer encode(Record record) {
+        final byte[] key = record.getKey().getBytes(StandardCharsets.UTF_8);
+        final byte flags = RecordCodec.flags(record);
+        final ByteBuffer buffer = ByteBuffer.allocate(RecordCodec.encodedSize(key.length, record.getValue().length, flags));
+        RecordCodec.encode(buffer, key, record.getValue(), 42L, flags, record.getExpiresAtMillis());
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,152 @@
+package src.files;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+import src.core.storage.HashIndexStorage;
+import src.core.storage.StorageMode;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentCompactorTest {
+
+    @TempDir
+    File directory;
+
+    private final DataFilesProcessingHelper dataFilesProcessingHelper = new DataFilesProcessingHelper();
+    private HashIndexStorage storage;
+    private int fillers;
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "1");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+    }
+
+    @BeforeEach
+    void loadStorage() throws Exception {
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+        put("a", "1");
+        put("b", "1");
+        sealSegment();
+        put("a", "2");
+        storage.delete(List.of("b")).get(10, TimeUnit.SECONDS);
+        sealSegment();
+    }
+
+    @AfterEach
+    void closeStorage() {
+        storage.close();
+    }
+
+    @Test
+    void keepsNewestRecordsAndTombstones() throws Throwable {
+        final File output = compact(false);
+
+        assertEquals("2", get("a"));
+        assertNull(get("b"));
+        final List<String> keys = scanKeys(output);
+        assertEquals(1, keys.stream().filter("a"::equals).count());
+        assertTrue(keys.contains("b (tombstone)"));
+        assertEquals(List.of(output), sealedSegments());
+    }
+
+    @Test
+    void dropsTombstonesWhenNoOlderSegmentExists() throws Throwable {
+        final File output = compact(true);
+
+        final List<String> keys = scanKeys(output);
+        assertFalse(keys.contains("b") || keys.contains("b (tombstone)"));
+        assertEquals("2", get("a"));
+        assertNull(get("b"));
+    }
+
+    @Test
+    void writesHintOfOutputAndRecoversFromIt() throws Throwable {
+        final File output = compact(true);
+
+        final List<String> hintKeys = new ArrayList<>();
+        assertTrue(storage.getHintFileManager().readHintFile(output, 0, (key, location, timestamp, tombstone, expiresAt) -> hintKeys.add(key)));
+        assertEquals(scanKeys(output), hintKeys);
+
+        storage.close();
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+        assertEquals("2", get("a"));
+        assertNull(get("b"));
+        assertEquals("filler", get("filler-2"));
+    }
+
+    private File compact(boolean dropTombstones) throws Throwable {
+        final List<File> segments = sealedSegments();
+        assertEquals(2, segments.size());
+        // hint files of sealed segments are written asynchronously, wait for them so none is written concurrently
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!segments.stream().allMatch(segment -> storage.getHintFileManager().getHintFile(segment).isFile())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        new SegmentCompactor(storage, storage.getHintFileManager(), new IoRateLimiter(0)).compact(segments, key -> !dropTombstones);
+        return segments.get(1);
+    }
+
+    private List<File> sealedSegments() {
+        return dataFilesProcessingHelper.listSortedDataFiles(directory).stream()
+                .filter(segment -> !segment.equals(storage.getActiveSegment()))
+                .collect(Collectors.toList());
+    }
+
+    private List<String> scanKeys(File segment) throws Throwable {
+        final List<String> keys = new ArrayList<>();
+        new SegmentScanner().scan(segment, 0, (buffer, position, location) -> keys.add(
+                RecordCodec.decodeKey(buffer, position) + (RecordCodec.isTombstone(buffer, position) ? " (tombstone)" : "")));
+        return keys;
+    }
+
+    private void sealSegment() throws Exception {
+        final File activeSegment = storage.getActiveSegment();
+        final Record filler = new Record("filler-" + ++fillers, "filler".getBytes(StandardCharsets.UTF_8));
+        final Record padding = new Record("padding-" + fillers, new byte[1024]);
+        storage.put(List.of(filler, padding)).get(10, TimeUnit.SECONDS);
+        // the writer rolls over right after completing the batch
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (storage.getActiveSegment().equals(activeSegment) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotEquals(activeSegment, storage.getActiveSegment());
+    }
+
+    private void put(String key, String value) throws Exception {
+        storage.put(List.of(new Record(key, value.getBytes(StandardCharsets.UTF_8)))).get(10, TimeUnit.SECONDS);
+    }
+
+    private String get(String key) throws Exception {
+        final ByteBuffer value = storage.get(key);
+        return value == null ? null : StandardCharsets.UTF_8.decode(value).toString();
+    }
+}
@@ -0,0 +1,93 @@
+package src.files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentScannerTest {
+
+    private static final int RECORDS = 5;
+
+    @TempDir
+    File directory;
+
+    private final SegmentScanner segmentScanner = new SegmentScanner();
+
+    @Test
+    void truncatesTornTailOfActiveSegment() throws Throwable {
+        final File segment = writeSegment();
+        final long validLength = segment.length();
+        Files.write(segment.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, StandardOpenOption.APPEND);
+
+        final List<String> keys = new ArrayList<>();
+        final long recoveredLength = segmentScanner.recover(segment, 1, true, (buffer, position, location) -> keys.add(RecordCodec.decodeKey(buffer, position)));
+
+        assertEquals(validLength, recoveredLength);
+        assertEquals(validLength, segment.length());
+        assertEquals(List.of("key0", "key1", "key2", "key3", "key4"), keys);
+    }
+
+    @Test
+    void failsOnCorruptionFollowedByValidRecords() throws Exception {
+        final File segment = writeSegment();
+        final long length = segment.length();
+        corruptByte(segment, RecordCodec.SEGMENT_HEADER_SIZE + recordSize() + RecordCodec.RECORD_HEADER_SIZE);
+
+        assertThrows(IOException.class, () -> segmentScanner.recover(segment, 1, true, (buffer, position, location) -> {
+        }));
+        assertEquals(length, segment.length());
+    }
+
+    @Test
+    void failsOnTornTailOfSealedSegment() throws Exception {
+        final File segment = writeSegment();
+        Files.write(segment.toPath(), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        final long length = segment.length();
+
+        assertThrows(IOException.class, () -> segmentScanner.recover(segment, 1, false, (buffer, position, location) -> {
+        }));
+        assertEquals(length, segment.length());
+    }
+
+    @Test
+    void scanLeavesTornTailInPlace() throws Throwable {
+        final File segment = writeSegment();
+        final long validLength = segment.length();
+        Files.write(segment.toPath(), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        assertEquals(validLength, segmentScanner.scan(segment, 1, (buffer, position, location) -> {
+        }));
+        assertEquals(validLength + 3, segment.length());
+    }
+
+    private File writeSegment() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(RecordCodec.SEGMENT_HEADER_SIZE + RECORDS * recordSize());
+        buffer.put(RecordCodec.segmentHeader());
+        for (int i = 0; i < RECORDS; i++) {
+            buffer.put(RecordCodec.encode("key" + i, "value" + i, i, (byte) 0));
+        }
+        final File segment = new File(directory, "cache-data-1.dat");
+        Files.write(segment.toPath(), buffer.array());
+        return segment;
+    }
+
+    private static int recordSize() {
+        return RecordCodec.encodedSize("key0".length(), "value0".length());
+    }
+
+    private static void corruptByte(File file, int position) throws IOException {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[position] ^= 0x5A;
+        Files.write(file.toPath(), bytes);
+    }
+}
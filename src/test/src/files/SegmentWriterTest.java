@@ -0,0 +1,139 @@
+package src.files;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.RecordLocation;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentWriterTest {
+
+    @TempDir
+    File directory;
+
+    private static final SegmentWriter.AppendListener NO_OP_LISTENER = new SegmentWriter.AppendListener() {
+        @Override
+        public boolean onAppended(Record record, RecordLocation location) {
+            return false;
+        }
+
+        @Override
+        public void onSegmentSealed(File segmentFile) {
+        }
+    };
+
+    private final SegmentRegistry segmentRegistry = new SegmentRegistry();
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "65536");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+    }
+
+    @Test
+    void cutsFailedBatchOffBeforeNextOne() throws Throwable {
+        final SegmentWriter segmentWriter = startWriter(NO_OP_LISTENER);
+        // the large record is written right away, the failing one then aborts the batch
+        final Record largeRecord = new Record("large", new byte[512 * 1024]);
+        final Record failingRecord = new Record("failing", new byte[0]) {
+            @Override
+            public byte[] getValue() {
+                throw new IllegalStateException("injected write failure");
+            }
+        };
+        final CompletableFuture<Integer> failedBatch = segmentWriter.append(List.of(largeRecord, failingRecord));
+        assertThrows(ExecutionException.class, () -> failedBatch.get(10, TimeUnit.SECONDS));
+
+        segmentWriter.append(List.of(new Record("key", "value".getBytes(StandardCharsets.UTF_8)))).get(10, TimeUnit.SECONDS);
+        segmentWriter.stop();
+
+        final File segment = segmentWriter.getActiveSegment();
+        final List<String> keys = new ArrayList<>();
+        final long validLength = new SegmentScanner().scan(segment, 1, (buffer, position, location) -> keys.add(RecordCodec.decodeKey(buffer, position)));
+        assertEquals(List.of("key"), keys);
+        assertEquals(segment.length(), validLength);
+    }
+
+    @Test
+    void commitsPositionOnlyAfterSuccessfulBatch() throws Exception {
+        final SegmentWriter segmentWriter = startWriter(NO_OP_LISTENER);
+        final long headerEnd = segmentWriter.getCommittedPosition().getEnd();
+        final Record failingRecord = new Record("failing", new byte[0]) {
+            @Override
+            public byte[] getValue() {
+                throw new IllegalStateException("injected write failure");
+            }
+        };
+        final CompletableFuture<Integer> failedBatch = segmentWriter.append(List.of(new Record("large", new byte[512 * 1024]), failingRecord));
+        assertThrows(ExecutionException.class, () -> failedBatch.get(10, TimeUnit.SECONDS));
+
+        assertEquals(headerEnd, segmentWriter.getCommittedPosition().getEnd());
+        segmentWriter.append(List.of(new Record("key", "value".getBytes(StandardCharsets.UTF_8)))).get(10, TimeUnit.SECONDS);
+        final SegmentWriter.CommittedPosition committedPosition = segmentWriter.getCommittedPosition();
+        assertEquals(segmentWriter.getActiveSegment(), committedPosition.getSegment());
+        assertEquals(committedPosition.getSegment().length(), committedPosition.getEnd());
+        segmentWriter.stop();
+    }
+
+    @Test
+    void failsOnlyRequestWhoseListenerThrows() throws Exception {
+        final SegmentWriter segmentWriter = startWriter(new SegmentWriter.AppendListener() {
+            @Override
+            public boolean onAppended(Record record, RecordLocation location) {
+                if (record.getKey().equals("failing")) {
+                    throw new IllegalStateException("injected index failure");
+                }
+                return true;
+            }
+
+            @Override
+            public void onSegmentSealed(File segmentFile) {
+            }
+        });
+
+        final CompletableFuture<Integer> failingAppend = segmentWriter.append(List.of(new Record("failing", new byte[1])));
+        final CompletableFuture<Integer> otherAppend = segmentWriter.append(List.of(new Record("other", new byte[1])));
+
+        final ExecutionException failure = assertThrows(ExecutionException.class, () -> failingAppend.get(10, TimeUnit.SECONDS));
+        assertEquals("injected index failure", failure.getCause().getMessage());
+        assertEquals(1, otherAppend.get(10, TimeUnit.SECONDS));
+        assertEquals(1, segmentWriter.append(List.of(new Record("later", new byte[1]))).get(10, TimeUnit.SECONDS));
+        segmentWriter.stop();
+    }
+
+    @Test
+    void rejectsAppendAfterStop() throws Exception {
+        final SegmentWriter segmentWriter = startWriter(NO_OP_LISTENER);
+        segmentWriter.stop();
+
+        final CompletableFuture<Integer> append = segmentWriter.append(List.of(new Record("key", "value".getBytes(StandardCharsets.UTF_8))));
+
+        assertTrue(append.isCompletedExceptionally());
+    }
+
+    private SegmentWriter startWriter(SegmentWriter.AppendListener appendListener) throws Exception {
+        final SegmentWriter segmentWriter = new SegmentWriter(directory, segmentRegistry, WriteDurability.BATCH, 1000, appendListener);
+        segmentWriter.start();
+        return segmentWriter;
+    }
+}
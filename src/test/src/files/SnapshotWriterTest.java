@@ -0,0 +1,158 @@
+package src.files;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+import src.core.storage.HashIndexStorage;
+import src.core.storage.StorageMode;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotWriterTest {
+
+    @TempDir
+    File directory;
+
+    private final DataFilesProcessingHelper dataFilesProcessingHelper = new DataFilesProcessingHelper();
+    private HashIndexStorage storage;
+    private int fillers;
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "1");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+    }
+
+    @BeforeEach
+    void loadStorage() throws Exception {
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+        put("a", "1");
+        put("b", "1");
+        sealSegment();
+    }
+
+    @AfterEach
+    void closeStorage() {
+        storage.close();
+    }
+
+    @Test
+    void replacesSealedSegmentsAndRecoversFromSnapshot() throws Exception {
+        put("a", "2");
+
+        assertEquals(3, storage.snapshot());
+
+        assertNotNull(dataFilesProcessingHelper.findSnapshotFile(directory));
+        assertEquals(List.of(storage.getActiveSegment()), dataFilesProcessingHelper.listSortedDataFiles(directory));
+        storage.close();
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+        assertEquals("2", get("a"));
+        assertEquals("1", get("b"));
+        assertEquals("filler", get("filler-1"));
+    }
+
+    @Test
+    void compactionKeepsOnlyTombstonesOfSnapshotKeys() throws Throwable {
+        storage.snapshot();
+        storage.delete(List.of("a", "absent")).get(10, TimeUnit.SECONDS);
+        storage.put(List.of(expiringRecord("b"), expiringRecord("expiring"))).get(10, TimeUnit.SECONDS);
+        sealSegment();
+        Thread.sleep(100);
+
+        final File output = compactSealedSegment();
+
+        final List<String> keys = scanKeys(output);
+        assertTrue(keys.contains("a (tombstone)"));
+        assertTrue(keys.contains("b (tombstone)"));
+        assertFalse(keys.contains("absent (tombstone)"));
+        assertFalse(keys.contains("expiring") || keys.contains("expiring (tombstone)"));
+        storage.close();
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+        assertNull(get("a"));
+        assertNull(get("b"));
+        assertEquals("filler", get("filler-1"));
+    }
+
+    private File compactSealedSegment() throws Throwable {
+        final List<File> segments = dataFilesProcessingHelper.listSortedDataFiles(directory).stream()
+                .filter(segment -> !segment.equals(storage.getActiveSegment()))
+                .collect(Collectors.toList());
+        assertEquals(1, segments.size());
+        // the hint file of the sealed segment is written asynchronously, wait for it so it is not written concurrently
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!storage.getHintFileManager().getHintFile(segments.get(0)).isFile() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        storage.getCompactionLock().lock();
+        try {
+            new SegmentCompactor(storage, storage.getHintFileManager(), new IoRateLimiter(0))
+                    .compact(segments, new SnapshotKeyFilter(storage).get());
+        } finally {
+            storage.getCompactionLock().unlock();
+        }
+        return segments.get(0);
+    }
+
+    private List<String> scanKeys(File segment) throws Throwable {
+        final List<String> keys = new ArrayList<>();
+        new SegmentScanner().scan(segment, 0, (buffer, position, location) -> keys.add(
+                RecordCodec.decodeKey(buffer, position) + (RecordCodec.isTombstone(buffer, position) ? " (tombstone)" : "")));
+        return keys;
+    }
+
+    private void sealSegment() throws Exception {
+        final File activeSegment = storage.getActiveSegment();
+        final Record filler = new Record("filler-" + ++fillers, "filler".getBytes(StandardCharsets.UTF_8));
+        final Record padding = new Record("padding-" + fillers, new byte[1024]);
+        storage.put(List.of(filler, padding)).get(10, TimeUnit.SECONDS);
+        // the writer rolls over right after completing the batch
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (storage.getActiveSegment().equals(activeSegment) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotEquals(activeSegment, storage.getActiveSegment());
+    }
+
+    private static Record expiringRecord(String key) {
+        final Record record = new Record(key, "expiring".getBytes(StandardCharsets.UTF_8));
+        record.setExpiresAtMillis(System.currentTimeMillis() + 50);
+        return record;
+    }
+
+    private void put(String key, String value) throws Exception {
+        storage.put(List.of(new Record(key, value.getBytes(StandardCharsets.UTF_8)))).get(10, TimeUnit.SECONDS);
+    }
+
+    private String get(String key) throws Exception {
+        final ByteBuffer value = storage.get(key);
+        return value == null ? null : StandardCharsets.UTF_8.decode(value).toString();
+    }
+}
@@ -0,0 +1,111 @@
+package src.files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+import src.core.storage.HashIndexStorage;
+import src.core.storage.StorageMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValueCompressionTest {
+
+    private static final byte[] COMPRESSIBLE_VALUE = "value ".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    File directory;
+
+    @AfterEach
+    void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+        System.clearProperty(CacheConfigConstants.VALUE_COMPRESSION);
+    }
+
+    @Test
+    void decompressesCompressedValue() throws Exception {
+        final Record record = new Record("key", COMPRESSIBLE_VALUE.clone());
+
+        ValueCompression.DEFLATE.compress(record, 64);
+
+        assertTrue(record.isCompressed());
+        assertTrue(record.getValue().length < COMPRESSIBLE_VALUE.length);
+        assertArrayEquals(COMPRESSIBLE_VALUE, ValueCompression.decompress(ByteBuffer.wrap(record.getValue())));
+    }
+
+    @Test
+    void leavesSmallAndIncompressibleValuesAlone() {
+        final byte[] randomValue = new byte[1024];
+        new Random(42).nextBytes(randomValue);
+        final Record smallRecord = new Record("small", "value value value".getBytes(StandardCharsets.UTF_8));
+        final Record randomRecord = new Record("random", randomValue.clone());
+
+        ValueCompression.DEFLATE.compress(smallRecord, 64);
+        ValueCompression.DEFLATE.compress(randomRecord, 64);
+        ValueCompression.DEFLATE.compress(Record.tombstone("deleted"), 0);
+
+        assertFalse(smallRecord.isCompressed());
+        assertFalse(randomRecord.isCompressed());
+        assertArrayEquals(randomValue, randomRecord.getValue());
+    }
+
+    @Test
+    void restoresValueFromMemoryForm() throws Exception {
+        final Record record = new Record("key", COMPRESSIBLE_VALUE.clone());
+        ValueCompression.DEFLATE.compress(record, 0);
+
+        final byte[] compressedMemoryValue = ValueCompression.DEFLATE.toMemoryValue(record.getValue(), true);
+        final byte[] rawMemoryValue = ValueCompression.DEFLATE.toMemoryValue(COMPRESSIBLE_VALUE, false);
+
+        assertEquals(ByteBuffer.wrap(COMPRESSIBLE_VALUE), ValueCompression.DEFLATE.fromMemoryValue(ByteBuffer.wrap(compressedMemoryValue)));
+        assertEquals(ByteBuffer.wrap(COMPRESSIBLE_VALUE), ValueCompression.DEFLATE.fromMemoryValue(ByteBuffer.wrap(rawMemoryValue)));
+        assertSame(COMPRESSIBLE_VALUE, ValueCompression.NONE.toMemoryValue(COMPRESSIBLE_VALUE, false));
+        assertArrayEquals(COMPRESSIBLE_VALUE, ValueCompression.NONE.toMemoryValue(record.getValue(), true));
+    }
+
+    @Test
+    void rejectsCorruptedValue() {
+        final Record record = new Record("key", COMPRESSIBLE_VALUE.clone());
+        ValueCompression.DEFLATE.compress(record, 0);
+        final byte[] truncatedValue = Arrays.copyOf(record.getValue(), record.getValue().length / 2);
+
+        assertThrows(IOException.class, () -> ValueCompression.decompress(ByteBuffer.wrap(truncatedValue)));
+        assertThrows(IOException.class, () -> ValueCompression.decompress(ByteBuffer.wrap(new byte[]{-1, -1, -1, -1, 0})));
+    }
+
+    @Test
+    void readsCompressedValuesBackAfterReopeningWithoutCompression() throws Exception {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "1024");
+        System.setProperty(CacheConfigConstants.VALUE_COMPRESSION, "deflate");
+        HashIndexStorage storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+        storage.put(List.of(new Record("key", COMPRESSIBLE_VALUE.clone()))).get(10, TimeUnit.SECONDS);
+        assertEquals(ByteBuffer.wrap(COMPRESSIBLE_VALUE), storage.get("key"));
+        assertTrue(storage.getActiveSegment().length() < COMPRESSIBLE_VALUE.length);
+        storage.close();
+
+        System.clearProperty(CacheConfigConstants.VALUE_COMPRESSION);
+        storage = new HashIndexStorage(StorageMode.OFFSET, IndexType.HEAP, directory, 1);
+        storage.load();
+        assertEquals(ByteBuffer.wrap(COMPRESSIBLE_VALUE), storage.get("key"));
+        storage.close();
+    }
+}
@@ -0,0 +1,89 @@
+package src.replication;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import src.Record;
+import src.core.config.CacheConfigConstants;
+import src.core.index.IndexType;
+import src.core.storage.ShardedStorage;
+import src.core.storage.StorageMode;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicationTest {
+
+    private static final int SHARDS = 2;
+
+    @TempDir
+    File directory;
+
+    @BeforeAll
+    static void setProperties() {
+        System.setProperty(CacheConfigConstants.DATA_FILES_EXTENSION, "dat");
+        System.setProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES, "1024");
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty(CacheConfigConstants.DATA_FILES_EXTENSION);
+        System.clearProperty(CacheConfigConstants.DATA_FILES_MAX_SIZE_IN_KILOBYTES);
+    }
+
+    @Test
+    void copiesLeaderAndStreamsLaterWrites() throws Exception {
+        final ShardedStorage leader = new ShardedStorage(StorageMode.OFFSET, IndexType.HEAP, new File(directory, "leader"), SHARDS);
+        leader.load();
+        leader.put(records(0, 100)).get(10, TimeUnit.SECONDS);
+        final int port = freePort();
+        final ReplicationServer replicationServer = new ReplicationServer(leader, port);
+        replicationServer.start();
+
+        final ShardedStorage follower = new ShardedStorage(StorageMode.OFFSET, IndexType.HEAP, new File(directory, "follower"), SHARDS);
+        new ReplicationFollower(follower, "localhost", port).start();
+        assertTrue(follower.isReadOnly());
+        assertEquals(100, follower.size());
+
+        leader.put(records(100, 200)).get(10, TimeUnit.SECONDS);
+        leader.delete(List.of("key-0")).get(10, TimeUnit.SECONDS);
+        awaitSize(follower, 199);
+
+        assertFalse(follower.containsKey("key-0"));
+        assertEquals("value-150", StandardCharsets.UTF_8.decode(follower.get("key-150")).toString());
+        replicationServer.stop();
+        leader.close();
+        follower.close();
+    }
+
+    private static void awaitSize(ShardedStorage storage, int size) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (storage.size() != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, storage.size());
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static List<Record> records(int from, int to) {
+        final List<Record> records = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            records.add(new Record("key-" + i, ("value-" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        return records;
+    }
+}